@@ -0,0 +1,108 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.sps.AddParticipantRequest;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading an add-participant body into a Participant: the previous line-by-line copy and org.json
+ * tree against the streaming AddParticipantRequest. Compare gc.alloc.rate.norm for bytes allocated
+ * per request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AddParticipantRequestBenchmark {
+
+  private static final String BODY =
+      "{\"formDetails\":{\"endTimeAvailable\":1577911200000,\"duration\":30,"
+          + "\"role\":\"Software engineer\",\"productArea\":\"Ads\","
+          + "\"interests\":[\"Books\",\"Music\",\"Hiking\",\"Cooking\"],"
+          + "\"savePreference\":true,\"matchPreference\":\"any\"}}";
+  private static final String USERNAME = "persona";
+  private static final long NOW = 1_577_905_200_000L;
+
+  /** Reader over the body, like the servlet container's, rewound for each request */
+  private BufferedReader reader;
+
+  @Setup
+  public void setUp() throws IOException {
+    reader = new BufferedReader(new StringReader(BODY));
+    reader.mark(BODY.length() + 1);
+  }
+
+  @Benchmark
+  public Participant jsonTree() throws IOException {
+    reader.reset();
+    StringBuilder requestBuffer = new StringBuilder();
+    String currentLine;
+    while ((currentLine = reader.readLine()) != null) {
+      requestBuffer.append(currentLine);
+    }
+    JSONObject formDetails =
+        new JSONObject(requestBuffer.toString()).getJSONObject("formDetails");
+    formDetails.getBoolean("savePreference");
+    JSONArray interestsArray = formDetails.getJSONArray("interests");
+    List<String> interests = new ArrayList<>();
+    for (int i = 0; i < interestsArray.length(); i++) {
+      interests.add(interestsArray.getString(i));
+    }
+    return new Participant(
+        USERNAME,
+        NOW,
+        formDetails.getLong("endTimeAvailable"),
+        formDetails.getInt("duration"),
+        formDetails.getString("role"),
+        formDetails.getString("productArea"),
+        interests,
+        MatchPreference.forStringValue(formDetails.getString("matchPreference")),
+        /* matchId= */ 0,
+        MatchStatus.UNMATCHED,
+        NOW);
+  }
+
+  @Benchmark
+  public Participant streaming() throws IOException {
+    reader.reset();
+    AddParticipantRequest request =
+        AddParticipantRequest.read(reader, AddParticipantRequest.MAX_BODY_CHARS);
+    request.getSavePreference();
+    return request.toParticipant(USERNAME, NOW, NOW);
+  }
+}
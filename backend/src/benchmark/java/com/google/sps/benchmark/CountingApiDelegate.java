@@ -0,0 +1,96 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.ApiConfig;
+import com.google.apphosting.api.ApiProxy.Delegate;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.apphosting.api.ApiProxy.LogRecord;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+
+/**
+ * ApiProxy delegate that counts the API calls made by the current thread, by service and method
+ * (e.g. datastore_v3.RunQuery), then passes them on. Every call is one round trip in production.
+ */
+public final class CountingApiDelegate implements Delegate<Environment> {
+
+  /** Delegate calls are passed on to */
+  private final Delegate<Environment> delegate;
+
+  /** Calls made by the current thread since the last takeCounts */
+  private final ThreadLocal<Map<String, Integer>> counts = ThreadLocal.withInitial(TreeMap::new);
+
+  /** Constructor */
+  private CountingApiDelegate(Delegate<Environment> delegate) {
+    this.delegate = delegate;
+  }
+
+  /** Install a counting delegate in front of the current ApiProxy delegate */
+  @SuppressWarnings("unchecked")
+  public static CountingApiDelegate install() {
+    CountingApiDelegate countingDelegate = new CountingApiDelegate(ApiProxy.getDelegate());
+    ApiProxy.setDelegate(countingDelegate);
+    return countingDelegate;
+  }
+
+  /** @return calls made by the current thread since the last call, and reset them */
+  public Map<String, Integer> takeCounts() {
+    Map<String, Integer> taken = counts.get();
+    counts.remove();
+    return taken;
+  }
+
+  /** Count call by the current thread */
+  private void count(String packageName, String methodName) {
+    counts.get().merge(packageName + "." + methodName, 1, Integer::sum);
+  }
+
+  @Override
+  public byte[] makeSyncCall(
+      Environment environment, String packageName, String methodName, byte[] request) {
+    count(packageName, methodName);
+    return delegate.makeSyncCall(environment, packageName, methodName, request);
+  }
+
+  @Override
+  public Future<byte[]> makeAsyncCall(
+      Environment environment,
+      String packageName,
+      String methodName,
+      byte[] request,
+      ApiConfig apiConfig) {
+    count(packageName, methodName);
+    return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+  }
+
+  @Override
+  public void log(Environment environment, LogRecord record) {
+    delegate.log(environment, record);
+  }
+
+  @Override
+  public void flushLogs(Environment environment) {
+    delegate.flushLogs(environment);
+  }
+
+  @Override
+  public List<Thread> getRequestThreads(Environment environment) {
+    return delegate.getRequestThreads(environment);
+  }
+}
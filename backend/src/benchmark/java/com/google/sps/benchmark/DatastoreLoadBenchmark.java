@@ -0,0 +1,256 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import com.google.apphosting.api.ApiProxy.Environment;
+import com.google.common.base.Ticker;
+import com.google.sps.AddParticipantHelper;
+import com.google.sps.SearchMatchHelper;
+import com.google.sps.UsernameService;
+import com.google.sps.benchmark.SyntheticParticipants.PreferenceMix;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.CachingMatchDatastore;
+import com.google.sps.datastore.CachingParticipantDatastore;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.UserDatastore;
+import com.google.sps.matching.MatchWaiters;
+import com.google.sps.matching.MatchingPool;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.json.JSONObject;
+
+/**
+ * Load benchmark that drives AddParticipantHelper.doPost and SearchMatchHelper.doGet from
+ * concurrent simulated users against the local Datastore stub, wired like the servlets. Reports
+ * latency percentiles and API calls (round trips) per request for each endpoint.
+ *
+ * <p>Each user adds themself to the queue and then searches for their match a few times. Searches
+ * aren't parked, so latency is the datastore work alone.
+ *
+ * <p>Run with `mvn -P benchmark test-compile exec:exec@load-benchmark`, optionally with
+ * -Dload.threads=N -Dload.users=N.
+ */
+public final class DatastoreLoadBenchmark {
+
+  /** Endpoint names */
+  private static final String ADD_PARTICIPANT = "add-participant";
+  private static final String SEARCH_MATCH = "search-match";
+
+  /** Searches each user makes after being added */
+  private static final int SEARCHES_PER_USER = 3;
+  /** Users run before measuring, to warm up the JIT and the matching pool */
+  private static final int WARMUP_USERS = 200;
+
+  /** Username of the simulated user on the current thread */
+  private static final ThreadLocal<String> currentUsername = new ThreadLocal<>();
+
+  private final CountingApiDelegate apiCalls;
+  private final AddParticipantHelper addParticipantHelper;
+  private final SearchMatchHelper searchMatchHelper;
+
+  /** Endpoint -> latencies in nanoseconds of measured requests */
+  private final Map<String, List<Long>> latencies = new TreeMap<>();
+  /** Endpoint -> API call -> total calls by measured requests */
+  private final Map<String, Map<String, Long>> callTotals = new TreeMap<>();
+
+  /** Constructor */
+  private DatastoreLoadBenchmark(CountingApiDelegate apiCalls) {
+    this.apiCalls = apiCalls;
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    UsernameService usernameService = mock(UsernameService.class);
+    when(usernameService.getUsername()).thenAnswer(invocation -> currentUsername.get());
+    MatchWaiters matchWaiters = new MatchWaiters();
+    addParticipantHelper =
+        new AddParticipantHelper(
+            Clock.systemUTC(),
+            new MatchDatastore(datastore),
+            new ParticipantDatastore(datastore),
+            new UserDatastore(datastore),
+            usernameService,
+            new MatchingPool(Clock.systemUTC(), MatchingPool.DEFAULT_MAX_STALENESS_MILLIS),
+            matchWaiters);
+    searchMatchHelper =
+        new SearchMatchHelper(
+            new CachingMatchDatastore(datastore, CachingMatchDatastore.DEFAULT_MAX_SIZE),
+            new CachingParticipantDatastore(
+                datastore,
+                Ticker.systemTicker(),
+                CachingParticipantDatastore.DEFAULT_TTL_MILLIS,
+                CachingParticipantDatastore.DEFAULT_MAX_SIZE),
+            usernameService,
+            matchWaiters,
+            /* maxWaitMillis= */ 0);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    int numUsers = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+    LocalServiceTestHelper helper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+    helper.setUp();
+    try {
+      DatastoreLoadBenchmark benchmark = new DatastoreLoadBenchmark(CountingApiDelegate.install());
+      long now = System.currentTimeMillis();
+      benchmark.run(
+          numThreads,
+          SyntheticParticipants.generate(
+              "warmup-", WARMUP_USERS, 16, PreferenceMix.MIXED, now, /* seed= */ 1),
+          /* measure= */ false);
+      long start = System.nanoTime();
+      benchmark.run(
+          numThreads,
+          SyntheticParticipants.generate(
+              "user-", numUsers, 16, PreferenceMix.MIXED, now, /* seed= */ 2),
+          /* measure= */ true);
+      long elapsedNanos = System.nanoTime() - start;
+      benchmark.report(numThreads, numUsers, elapsedNanos);
+    } finally {
+      helper.tearDown();
+    }
+  }
+
+  /** Run each user's requests on a pool of numThreads threads */
+  private void run(int numThreads, List<Participant> users, boolean measure) throws Exception {
+    // Local services are reached through the environment of the thread that set them up
+    Environment environment = ApiProxy.getCurrentEnvironment();
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (Participant user : users) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  ApiProxy.setEnvironmentForCurrentThread(environment);
+                  runUser(user, measure);
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Add user to the queue, then search for their match */
+  private void runUser(Participant user, boolean measure) throws IOException {
+    currentUsername.set(user.getUsername());
+    HttpServletRequest addRequest = mock(HttpServletRequest.class);
+    when(addRequest.getReader())
+        .thenReturn(new BufferedReader(new StringReader(getRequestBody(user))));
+    timeRequest(
+        ADD_PARTICIPANT,
+        measure,
+        response -> addParticipantHelper.doPost(addRequest, response));
+    for (int i = 0; i < SEARCHES_PER_USER; i++) {
+      HttpServletRequest searchRequest = mock(HttpServletRequest.class);
+      timeRequest(
+          SEARCH_MATCH, measure, response -> searchMatchHelper.doGet(searchRequest, response));
+    }
+  }
+
+  /** A request to an endpoint's helper */
+  private interface Request {
+    void send(HttpServletResponse response) throws IOException;
+  }
+
+  /** Send request and, if measuring, record its latency and API calls under endpoint */
+  private void timeRequest(String endpoint, boolean measure, Request request) throws IOException {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+    apiCalls.takeCounts();
+    long start = System.nanoTime();
+    request.send(response);
+    long latencyNanos = System.nanoTime() - start;
+    Map<String, Integer> calls = apiCalls.takeCounts();
+    if (!measure) {
+      return;
+    }
+    synchronized (this) {
+      latencies.computeIfAbsent(endpoint, e -> new ArrayList<>()).add(latencyNanos);
+      Map<String, Long> totals = callTotals.computeIfAbsent(endpoint, e -> new TreeMap<>());
+      calls.forEach((call, count) -> totals.merge(call, (long) count, Long::sum));
+    }
+  }
+
+  /** Print latency percentiles and mean API calls per request for each endpoint */
+  private void report(int numThreads, int numUsers, long elapsedNanos) {
+    System.out.printf(
+        "%d users on %d threads in %.2f s%n",
+        numUsers, numThreads, elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+    for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+      long[] sorted = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+      Arrays.sort(sorted);
+      System.out.printf(
+          "%n%s: %d requests, p50 %.3f ms, p99 %.3f ms, p999 %.3f ms%n",
+          entry.getKey(),
+          sorted.length,
+          getPercentileMillis(sorted, 0.50),
+          getPercentileMillis(sorted, 0.99),
+          getPercentileMillis(sorted, 0.999));
+      for (Map.Entry<String, Long> call : callTotals.get(entry.getKey()).entrySet()) {
+        System.out.printf(
+            "  %-32s %.2f per request%n", call.getKey(), call.getValue() / (double) sorted.length);
+      }
+    }
+  }
+
+  /** @return percentile of sorted latencies in milliseconds */
+  private static double getPercentileMillis(long[] sortedNanos, double percentile) {
+    int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+    return sortedNanos[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /** @return add-participant request body with user's form details */
+  private static String getRequestBody(Participant user) {
+    JSONObject formDetails = new JSONObject();
+    formDetails.put("endTimeAvailable", user.getEndTimeAvailable());
+    formDetails.put("duration", user.getDuration());
+    formDetails.put("role", user.getRole());
+    formDetails.put("productArea", user.getProductArea());
+    formDetails.put("interests", user.getInterests());
+    formDetails.put("savePreference", false);
+    formDetails.put("matchPreference", user.getMatchPreference().name().toLowerCase());
+    JSONObject body = new JSONObject();
+    body.put("formDetails", formDetails);
+    return body.toString();
+  }
+}
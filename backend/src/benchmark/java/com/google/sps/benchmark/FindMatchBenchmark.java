@@ -0,0 +1,97 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.sps.FindMatchQuery;
+import com.google.sps.benchmark.SyntheticParticipants.PreferenceMix;
+import com.google.sps.data.Match;
+import com.google.sps.data.Participant;
+import com.google.sps.matching.MatchingPool;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end findMatch for a new arrival against a waiting pool */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FindMatchBenchmark {
+
+  /** Number of distinct arrivals cycled through, power of 2 */
+  private static final int NUM_ARRIVALS = 1024;
+
+  /** Reference time of 1/1/20 2pm ET */
+  private static final long NOW = Instant.parse("2020-01-01T19:00:00Z").toEpochMilli();
+
+  /** Number of waiting participants */
+  @Param({"100", "1000", "10000"})
+  public int poolSize;
+
+  /** Number of distinct interests */
+  @Param({"8", "64"})
+  public int interestCardinality;
+
+  /** Mix of match preferences among waiting participants and arrivals */
+  @Param({"MIXED", "SIMILAR", "ANY"})
+  public PreferenceMix preferenceMix;
+
+  /** Where candidates come from: the resident matching pool or the datastore query path */
+  @Param({"pool", "datastore"})
+  public String source;
+
+  private FindMatchQuery query;
+  private Participant[] arrivals;
+  private int nextArrival;
+
+  @Setup
+  public void setUp() {
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+    List<Participant> waiting =
+        SyntheticParticipants.generate(
+            "waiting-", poolSize, interestCardinality, preferenceMix, NOW, /* seed= */ 1);
+    arrivals =
+        SyntheticParticipants.generate(
+                "arrival-", NUM_ARRIVALS, interestCardinality, preferenceMix, NOW, /* seed= */ 2)
+            .toArray(new Participant[0]);
+    if (source.equals("pool")) {
+      MatchingPool matchingPool = new MatchingPool(clock, Long.MAX_VALUE);
+      waiting.forEach(matchingPool::add);
+      query = new FindMatchQuery(clock, matchingPool);
+    } else {
+      query = new FindMatchQuery(clock, new InMemoryParticipantDatastore(waiting));
+    }
+  }
+
+  @Benchmark
+  public Match findMatch() {
+    return query.findMatch(arrivals[nextArrival++ & (NUM_ARRIVALS - 1)]);
+  }
+}
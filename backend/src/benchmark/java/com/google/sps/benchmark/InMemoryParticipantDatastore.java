@@ -0,0 +1,102 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.ParticipantDatastore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * ParticipantDatastore stand-in backed by a map, so benchmarks measure matching rather than the
+ * Datastore stub. Queries return the same candidates, in the same order, as the real queries, read
+ * from an index by duration and endTimeAvailable like the composite index would.
+ */
+public class InMemoryParticipantDatastore extends ParticipantDatastore {
+
+  /** Participants by username */
+  private final Map<String, Participant> participantsByUsername = new LinkedHashMap<>();
+  /** Duration -> unmatched participants by endTimeAvailable, or null if rebuild needed */
+  @Nullable private Map<Integer, List<Participant>> index = null;
+
+  /** Constructor */
+  public InMemoryParticipantDatastore(List<Participant> participants) {
+    // No DatastoreService, every method that would use it is overridden
+    super(/* datastore= */ null);
+    participants.forEach(this::addParticipant);
+  }
+
+  @Override
+  public void addParticipant(Participant participant) {
+    participantsByUsername.put(participant.getUsername(), participant);
+    index = null;
+  }
+
+  @Override
+  @Nullable
+  public Participant getParticipantFromUsername(String username) {
+    return participantsByUsername.get(username);
+  }
+
+  @Override
+  public List<Participant> getUnmatchedParticipantsWithDuration(
+      int duration, long minEndTimeAvailable) {
+    return new ArrayList<>(iterateUnmatchedParticipantsWithDuration(duration, minEndTimeAvailable));
+  }
+
+  @Override
+  public List<Participant> iterateUnmatchedParticipantsWithDuration(
+      int duration, long minEndTimeAvailable) {
+    if (index == null) {
+      index =
+          getUnmatchedParticipants().stream()
+              .sorted(Comparator.comparingLong(Participant::getEndTimeAvailable))
+              .collect(Collectors.groupingBy(Participant::getDuration));
+    }
+    List<Participant> sameDuration = index.getOrDefault(duration, Collections.emptyList());
+    // First participant with endTimeAvailable after minEndTimeAvailable
+    int low = 0;
+    int high = sameDuration.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sameDuration.get(mid).getEndTimeAvailable() > minEndTimeAvailable) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return sameDuration.subList(low, sameDuration.size());
+  }
+
+  @Override
+  public List<Participant> getUnmatchedParticipants() {
+    return participantsByUsername.values().stream()
+        .filter(p -> p.getMatchStatus() == MatchStatus.UNMATCHED)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void removeParticipant(String username) {
+    participantsByUsername.remove(username);
+    index = null;
+  }
+}
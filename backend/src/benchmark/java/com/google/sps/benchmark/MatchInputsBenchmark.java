@@ -0,0 +1,93 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.sps.benchmark.SyntheticParticipants.PreferenceMix;
+import com.google.sps.data.InputDictionary;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.Participant;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Per-candidate checks of the matching loop: combined preference and shared filled inputs */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MatchInputsBenchmark {
+
+  /** Number of distinct participants cycled through, power of 2 */
+  private static final int NUM_PARTICIPANTS = 1024;
+
+  /** Number of distinct interests */
+  @Param({"8", "64"})
+  public int interestCardinality;
+
+  private Participant[] participants;
+  private MatchPreference[] preferences;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    long now = Instant.parse("2020-01-01T19:00:00Z").toEpochMilli();
+    participants =
+        SyntheticParticipants.generate(
+                "participant-",
+                NUM_PARTICIPANTS,
+                interestCardinality,
+                PreferenceMix.MIXED,
+                now,
+                /* seed= */ 1)
+            .toArray(new Participant[0]);
+    preferences = new MatchPreference[NUM_PARTICIPANTS];
+    for (int i = 0; i < NUM_PARTICIPANTS; i++) {
+      preferences[i] = participants[i].getMatchPreference();
+    }
+  }
+
+  @Benchmark
+  public MatchPreference combinedMatchPreference() {
+    int i = next++;
+    return MatchPreference.getCombinedMatchPreference(
+        preferences[i & (NUM_PARTICIPANTS - 1)], preferences[(i + 1) & (NUM_PARTICIPANTS - 1)]);
+  }
+
+  @Benchmark
+  public int sharedFilledInputs() {
+    int i = next++;
+    return participants[i & (NUM_PARTICIPANTS - 1)].getNumSharedFilledInputs(
+        participants[(i + 1) & (NUM_PARTICIPANTS - 1)]);
+  }
+
+  @Benchmark
+  public long[] encodeFilledInputs() {
+    Participant participant = participants[next++ & (NUM_PARTICIPANTS - 1)];
+    return InputDictionary.encode(
+        participant.getRole(), participant.getProductArea(), participant.getInterests());
+  }
+}
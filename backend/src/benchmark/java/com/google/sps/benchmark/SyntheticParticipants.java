@@ -0,0 +1,101 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmark;
+
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Generates reproducible unmatched participants for benchmarks */
+public final class SyntheticParticipants {
+
+  /** Meeting durations participants choose from */
+  private static final int[] DURATIONS = {15, 30, 45, 60};
+  /** Number of distinct roles */
+  private static final int NUM_ROLES = 6;
+  /** Number of distinct product areas */
+  private static final int NUM_PRODUCT_AREAS = 10;
+  /** Most interests one participant picks */
+  private static final int MAX_INTERESTS = 4;
+
+  /** Mix of match preferences among generated participants */
+  public enum PreferenceMix {
+    /** Equal share of each preference */
+    MIXED,
+    ANY,
+    SIMILAR,
+    DIFFERENT
+  }
+
+  private SyntheticParticipants() {}
+
+  /**
+   * @return count participants with usernames prefix + index, interests drawn from
+   *     interestCardinality values, available from now for 1 to 4 hours
+   */
+  public static List<Participant> generate(
+      String prefix,
+      int count,
+      int interestCardinality,
+      PreferenceMix preferenceMix,
+      long now,
+      long seed) {
+    Random random = new Random(seed);
+    List<Participant> participants = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      List<String> interests = new ArrayList<>();
+      int numInterests = 1 + random.nextInt(MAX_INTERESTS);
+      for (int j = 0; j < numInterests; j++) {
+        String interest = "interest-" + random.nextInt(interestCardinality);
+        if (!interests.contains(interest)) {
+          interests.add(interest);
+        }
+      }
+      participants.add(
+          new Participant(
+              prefix + i,
+              now,
+              now + TimeUnit.MINUTES.toMillis(60 + random.nextInt(180)),
+              DURATIONS[random.nextInt(DURATIONS.length)],
+              "role-" + random.nextInt(NUM_ROLES),
+              "product-area-" + random.nextInt(NUM_PRODUCT_AREAS),
+              interests,
+              getMatchPreference(preferenceMix, random),
+              /* matchId= */ 0,
+              MatchStatus.UNMATCHED,
+              /* timestamp= */ i));
+    }
+    return participants;
+  }
+
+  /** @return preference for the mix, drawn at random for MIXED */
+  private static MatchPreference getMatchPreference(PreferenceMix preferenceMix, Random random) {
+    switch (preferenceMix) {
+      case ANY:
+        return MatchPreference.ANY;
+      case SIMILAR:
+        return MatchPreference.SIMILAR;
+      case DIFFERENT:
+        return MatchPreference.DIFFERENT;
+      default:
+        MatchPreference[] values = MatchPreference.values();
+        return values[random.nextInt(values.length)];
+    }
+  }
+}
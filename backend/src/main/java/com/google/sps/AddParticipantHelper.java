@@ -15,34 +15,30 @@
 package com.google.sps;
 
 import com.google.sps.data.Match;
-import com.google.sps.data.MatchPreference;
-import com.google.sps.data.MatchStatus;
 import com.google.sps.data.Participant;
 import com.google.sps.data.User;
 import com.google.sps.datastore.MatchDatastore;
 import com.google.sps.datastore.ParticipantDatastore;
 import com.google.sps.datastore.UserDatastore;
-import java.io.BufferedReader;
+import com.google.sps.matching.MatchWaiters;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
 import java.io.IOException;
 import java.time.Clock;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 public class AddParticipantHelper {
 
-  // HTTP Request JSON key constants
-  private static final String REQUEST_FORM_DETAILS = "formDetails";
-  private static final String REQUEST_END_TIME_AVAILABLE = "endTimeAvailable";
-  private static final String REQUEST_DURATION = "duration";
-  private static final String REQUEST_ROLE = "role";
-  private static final String REQUEST_PRODUCT_AREA = "productArea";
-  private static final String REQUEST_INTERESTS = "interests";
-  private static final String REQUEST_SAVE_PREFERENCE = "savePreference";
-  private static final String REQUEST_MATCH_PREFERENCE = "matchPreference";
+  private static final Logger logger = Logger.getLogger(AddParticipantHelper.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
+  /** Most candidates tried when a claimed candidate was taken or changed by another request */
+  private static final int MAX_CLAIM_ATTEMPTS = 3;
 
   /** Reference clock */
   private final Clock clock;
@@ -54,6 +50,27 @@ public class AddParticipantHelper {
 
   private final UsernameService usernameService;
 
+  /** Resident pool of unmatched Participants, or null to query datastore on every request */
+  @Nullable private final MatchingPool matchingPool;
+  /** Parked search requests to wake when a match is made, or null if requests aren't parked */
+  @Nullable private final MatchWaiters matchWaiters;
+
+  /**
+   * Constructor that takes its datastores, matching pool and match waiters from the application
+   * context. Participants are written through the caching datastore so polls see them; reads after
+   * a failed claim still reach datastore, since the match commit invalidated the claimed one.
+   */
+  public AddParticipantHelper(AppContext context) {
+    this(
+        context.getClock(),
+        context.getMatchDatastore(),
+        context.getCachingParticipantDatastore(),
+        context.getUserDatastore(),
+        context.getUsernameService(),
+        context.getMatchingPool(),
+        context.getMatchWaiters());
+  }
+
   /** Constructor */
   public AddParticipantHelper(
       Clock clock,
@@ -61,22 +78,74 @@ public class AddParticipantHelper {
       ParticipantDatastore participantDatastore,
       UserDatastore userDatastore,
       UsernameService usernameService) {
+    this(
+        clock,
+        matchDatastore,
+        participantDatastore,
+        userDatastore,
+        usernameService,
+        /* matchingPool= */ null);
+  }
+
+  /** Constructor that finds matches in a resident matching pool */
+  public AddParticipantHelper(
+      Clock clock,
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      UserDatastore userDatastore,
+      UsernameService usernameService,
+      @Nullable MatchingPool matchingPool) {
+    this(
+        clock,
+        matchDatastore,
+        participantDatastore,
+        userDatastore,
+        usernameService,
+        matchingPool,
+        /* matchWaiters= */ null);
+  }
+
+  /**
+   * Constructor that finds matches in a resident matching pool and wakes search requests parked on
+   * matchWaiters
+   */
+  public AddParticipantHelper(
+      Clock clock,
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      UserDatastore userDatastore,
+      UsernameService usernameService,
+      @Nullable MatchingPool matchingPool,
+      @Nullable MatchWaiters matchWaiters) {
     this.clock = clock;
     this.matchDatastore = matchDatastore;
     this.participantDatastore = participantDatastore;
     this.userDatastore = userDatastore;
     this.usernameService = usernameService;
+    this.matchingPool = matchingPool;
+    this.matchWaiters = matchWaiters;
   }
 
   /** Add participant to datastore and try to find match immediately */
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Retrieve JSON object request
-    JSONObject obj = retrieveRequestBody(request);
-    if (obj == null) {
+    // Reject oversized bodies before reading them, and the rest as soon as they are too long
+    if (request.getContentLength() > AddParticipantRequest.MAX_BODY_BYTES) {
+      response.sendError(
+          HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large.");
+      return;
+    }
+    AddParticipantRequest formDetails;
+    try {
+      formDetails =
+          AddParticipantRequest.read(request.getReader(), AddParticipantRequest.MAX_BODY_CHARS);
+    } catch (AddParticipantRequest.TooLargeException e) {
+      response.sendError(
+          HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large.");
+      return;
+    } catch (IOException e) {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
       return;
     }
-    JSONObject formDetails = obj.getJSONObject(REQUEST_FORM_DETAILS);
 
     // Get new Participant from input parameters
     Participant newParticipant = getParticipantFromInputs(response, formDetails);
@@ -87,31 +156,31 @@ public class AddParticipantHelper {
     }
 
     // Add User to datastore if opted to save preferences
-    boolean savePreference = formDetails.getBoolean(REQUEST_SAVE_PREFERENCE);
-    if (savePreference) {
+    if (formDetails.getSavePreference()) {
       userDatastore.addUser(getUserFromParticipant(newParticipant));
     }
 
-    // Find immediate match if possible
-    FindMatchQuery query = new FindMatchQuery(clock, participantDatastore);
-    Match match = query.findMatch(newParticipant);
-
-    if (match != null) {
-      // Match found, add to match datastore, update participant datastore
-      long matchId = matchDatastore.addMatch(match);
-
-      // Update current participant entity with new matchId and null availability
-      Participant secondParticipant =
-          participantDatastore.getParticipantFromUsername(match.getSecondParticipantUsername());
-      participantDatastore.addParticipant(secondParticipant.foundMatch(matchId));
-
-      // Add new participant to datastore with new matchId and null availability
-      participantDatastore.addParticipant(newParticipant.foundMatch(matchId));
-      System.out.println("found match");
+    // Find immediate match if possible, otherwise wait for one
+    boolean matched;
+    long startNanos = System.nanoTime();
+    if (matchingPool == null) {
+      matched = matchOrWait(newParticipant);
+    } else {
+      // Same-duration requests on this instance take turns, so they neither race for the same
+      // candidate nor both wait without seeing each other
+      Lock claimLock = matchingPool.getClaimLock(newParticipant.getDuration());
+      claimLock.lock();
+      try {
+        matched = matchOrWait(newParticipant);
+      } finally {
+        claimLock.unlock();
+      }
+    }
+    metrics.recordSince(Metrics.ADD_PARTICIPANT_LATENCY, startNanos);
+    if (matched) {
+      logger.fine(() -> "found match for " + newParticipant.getUsername());
     } else {
-      // Match not found, add participant to datastore
-      participantDatastore.addParticipant(newParticipant);
-      System.out.println("match not found");
+      logger.fine(() -> "match not found for " + newParticipant.getUsername());
     }
 
     // Confirm received form input
@@ -120,22 +189,75 @@ public class AddParticipantHelper {
   }
 
   /**
-   * Retrieve JSON body payload and convert to a JSONObject for parsing purposes
+   * Match newParticipant with a waiting participant if one can be claimed, otherwise add it to the
+   * waiting participants
    *
-   * @return null if IOException
+   * @return true if matched
    */
-  private JSONObject retrieveRequestBody(HttpServletRequest request) {
-    StringBuilder requestBuffer = new StringBuilder();
-    try {
-      BufferedReader reader = request.getReader();
-      String currentLine;
-      while ((currentLine = reader.readLine()) != null) {
-        requestBuffer.append(currentLine);
+  private boolean matchOrWait(Participant newParticipant) {
+    FindMatchQuery query;
+    if (matchingPool == null) {
+      query = new FindMatchQuery(clock, participantDatastore);
+    } else {
+      matchingPool.refreshIfStale(participantDatastore);
+      query = new FindMatchQuery(clock, matchingPool);
+    }
+    Match match = null;
+    Participant waitingParticipant = null;
+    Long matchId = null;
+    for (int attempt = 0; attempt < MAX_CLAIM_ATTEMPTS && matchId == null; attempt++) {
+      match = query.findMatch(newParticipant);
+      if (match == null) {
+        break;
       }
-    } catch (IOException e) {
-      return null;
+      String waitingUsername = match.getSecondParticipantUsername();
+      waitingParticipant =
+          matchingPool == null
+              ? participantDatastore.getParticipantFromUsername(waitingUsername)
+              : matchingPool.get(waitingUsername);
+      if (waitingParticipant != null) {
+        // Claim waiting participant and commit match and both participants in one transaction
+        matchId = matchDatastore.commitMatch(match, newParticipant, waitingParticipant);
+      }
+      if (matchId == null && matchingPool != null) {
+        // Pool was behind datastore, replace with latest version (dropped if no longer waiting)
+        Participant latestParticipant =
+            participantDatastore.getParticipantFromUsername(waitingUsername);
+        if (latestParticipant == null) {
+          matchingPool.remove(waitingUsername);
+        } else {
+          matchingPool.add(latestParticipant);
+        }
+      }
+    }
+
+    if (matchId != null) {
+      // Match and both participants were written by the commit
+      metrics.increment(Metrics.MATCHES_MADE);
+      recordMatchWait(waitingParticipant);
+      if (matchingPool != null) {
+        matchingPool.remove(match.getSecondParticipantUsername());
+        matchingPool.remove(newParticipant.getUsername());
+      }
+      if (matchWaiters != null) {
+        matchWaiters.notifyMatched(match.getSecondParticipantUsername(), matchId);
+        matchWaiters.notifyMatched(newParticipant.getUsername(), matchId);
+      }
+      return true;
+    }
+
+    // Match not found, add participant to datastore
+    participantDatastore.addParticipant(newParticipant);
+    if (matchingPool != null) {
+      matchingPool.add(newParticipant);
     }
-    return new JSONObject(requestBuffer.toString());
+    return false;
+  }
+
+  /** Record how long waitingParticipant waited in the queue before being matched */
+  private void recordMatchWait(Participant waitingParticipant) {
+    long waitMillis = clock.millis() - waitingParticipant.getStartTimeAvailable();
+    metrics.recordNanos(Metrics.MATCH_WAIT, TimeUnit.MILLISECONDS.toNanos(waitMillis));
   }
 
   /**
@@ -143,8 +265,8 @@ public class AddParticipantHelper {
    *
    * @return null if invalid email
    */
-  private Participant getParticipantFromInputs(HttpServletResponse response, JSONObject formDetails)
-      throws IOException {
+  private Participant getParticipantFromInputs(
+      HttpServletResponse response, AddParticipantRequest formDetails) throws IOException {
     // Get username from email
     String username = usernameService.getUsername();
     if (username == null) {
@@ -152,50 +274,14 @@ public class AddParticipantHelper {
       return null;
     }
 
-    // Get endTimeAvailable and startTimeAvailable in milliseconds
-    long endTimeAvailable = formDetails.getLong(REQUEST_END_TIME_AVAILABLE);
-    long startTimeAvailable = clock.millis();
-
     // Get desired meeting duration
-    int duration = formDetails.getInt(REQUEST_DURATION);
-    if (duration <= 0) {
+    if (formDetails.getDuration() <= 0) {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid duration.");
       return null;
     }
 
-    // Get personal preference fields
-    String role = formDetails.getString(REQUEST_ROLE);
-    String productArea = formDetails.getString(REQUEST_PRODUCT_AREA);
-    JSONArray interestsJsonArray = formDetails.getJSONArray(REQUEST_INTERESTS);
-    List<String> interests = getListFromJsonArray(interestsJsonArray);
-    MatchPreference matchPreference =
-        MatchPreference.forStringValue(formDetails.getString(REQUEST_MATCH_PREFERENCE));
-
-    long timestamp = System.currentTimeMillis();
-
-    // Create and return new Participant from input parameters
-    return new Participant(
-        username,
-        startTimeAvailable,
-        endTimeAvailable,
-        duration,
-        role,
-        productArea,
-        interests,
-        matchPreference,
-        /* matchId= */ 0,
-        MatchStatus.UNMATCHED,
-        timestamp);
-  }
-
-  /** Get list of Strings from JSONArray */
-  public static List<String> getListFromJsonArray(JSONArray array) {
-    int length = array.length();
-    List<String> list = new ArrayList<String>();
-    for (int i = 0; i < length; i++) {
-      list.add(array.getString(i));
-    }
-    return list;
+    // Create and return new Participant from input parameters, available from now
+    return formDetails.toParticipant(username, clock.millis(), System.currentTimeMillis());
   }
 
   /** Extract and return user fields from participant */
@@ -0,0 +1,271 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.sps.data.FormOptions;
+import com.google.sps.data.InputDictionary;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Form details of an add-participant request, read straight off the request body with a streaming
+ * parser, so no JSON tree or body string is built, and a body is rejected as soon as it is too long
+ * or malformed. Role, product area and interests must be the form's options, or blank, so clients
+ * can't fill InputDictionary with made-up values, and are only interned by toParticipant once the
+ * whole request was read.
+ */
+public final class AddParticipantRequest {
+
+  /** Longest body accepted, in chars, far more than any form fills */
+  public static final int MAX_BODY_CHARS = 16 * 1024;
+  /** Longest body accepted, in UTF-8 bytes, which encodes each char in at most 3 bytes */
+  public static final int MAX_BODY_BYTES = 3 * MAX_BODY_CHARS;
+
+  // HTTP Request JSON key constants
+  private static final String REQUEST_FORM_DETAILS = "formDetails";
+  private static final String REQUEST_END_TIME_AVAILABLE = "endTimeAvailable";
+  private static final String REQUEST_DURATION = "duration";
+  private static final String REQUEST_ROLE = "role";
+  private static final String REQUEST_PRODUCT_AREA = "productArea";
+  private static final String REQUEST_INTERESTS = "interests";
+  private static final String REQUEST_SAVE_PREFERENCE = "savePreference";
+  private static final String REQUEST_MATCH_PREFERENCE = "matchPreference";
+
+  // Bits of fieldsRead, one per form field
+  private static final int FIELD_END_TIME_AVAILABLE = 1;
+  private static final int FIELD_DURATION = 1 << 1;
+  private static final int FIELD_ROLE = 1 << 2;
+  private static final int FIELD_PRODUCT_AREA = 1 << 3;
+  private static final int FIELD_INTERESTS = 1 << 4;
+  private static final int FIELD_SAVE_PREFERENCE = 1 << 5;
+  private static final int FIELD_MATCH_PREFERENCE = 1 << 6;
+  private static final int ALL_FIELDS = (1 << 7) - 1;
+
+  private long endTimeAvailable;
+  private int duration;
+  private String role;
+  private String productArea;
+  private List<String> interests;
+  private boolean savePreference;
+  private MatchPreference matchPreference;
+
+  /** Fields read so far, one bit per field, to tell a missing field from a default value */
+  private int fieldsRead;
+
+  private AddParticipantRequest() {}
+
+  /**
+   * Read the form details of an add-participant request body. Fields other than formDetails and its
+   * known fields are skipped.
+   *
+   * @throws TooLargeException as soon as more than maxChars are read
+   * @throws IOException if the body is malformed, misses a field or has a value that is not one of
+   *     the form's options, or cannot be read
+   */
+  public static AddParticipantRequest read(Reader body, int maxChars) throws IOException {
+    AddParticipantRequest request = null;
+    JsonReader reader = new JsonReader(new LimitedReader(body, maxChars));
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals(REQUEST_FORM_DETAILS)) {
+          request = readFormDetails(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new IOException("Unexpected content after request");
+      }
+    } catch (IllegalStateException | NumberFormatException e) {
+      // Thrown by JsonReader for a value of the wrong type
+      throw new IOException("Malformed request: " + e.getMessage(), e);
+    }
+    if (request == null) {
+      throw new IOException("Missing " + REQUEST_FORM_DETAILS);
+    }
+    return request;
+  }
+
+  private static AddParticipantRequest readFormDetails(JsonReader reader) throws IOException {
+    AddParticipantRequest request = new AddParticipantRequest();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case REQUEST_END_TIME_AVAILABLE:
+          request.endTimeAvailable = reader.nextLong();
+          request.fieldsRead |= FIELD_END_TIME_AVAILABLE;
+          break;
+        case REQUEST_DURATION:
+          request.duration = reader.nextInt();
+          request.fieldsRead |= FIELD_DURATION;
+          break;
+        case REQUEST_ROLE:
+          request.role = readValue(reader);
+          request.fieldsRead |= FIELD_ROLE;
+          break;
+        case REQUEST_PRODUCT_AREA:
+          request.productArea = readValue(reader);
+          request.fieldsRead |= FIELD_PRODUCT_AREA;
+          break;
+        case REQUEST_INTERESTS:
+          request.interests = readInterests(reader);
+          request.fieldsRead |= FIELD_INTERESTS;
+          break;
+        case REQUEST_SAVE_PREFERENCE:
+          request.savePreference = reader.nextBoolean();
+          request.fieldsRead |= FIELD_SAVE_PREFERENCE;
+          break;
+        case REQUEST_MATCH_PREFERENCE:
+          request.matchPreference = readMatchPreference(reader);
+          request.fieldsRead |= FIELD_MATCH_PREFERENCE;
+          break;
+        default:
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (request.fieldsRead != ALL_FIELDS) {
+      throw new IOException("Missing fields in " + REQUEST_FORM_DETAILS);
+    }
+    if (!FormOptions.isRole(request.role)) {
+      throw new IOException("Unknown " + REQUEST_ROLE);
+    }
+    if (!FormOptions.isProductArea(request.productArea)) {
+      throw new IOException("Unknown " + REQUEST_PRODUCT_AREA);
+    }
+    if (!FormOptions.areInterests(request.interests)) {
+      throw new IOException("Unknown " + REQUEST_INTERESTS);
+    }
+    return request;
+  }
+
+  /** @return the array of interests */
+  private static List<String> readInterests(JsonReader reader) throws IOException {
+    List<String> interests = new ArrayList<>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      interests.add(readValue(reader));
+    }
+    reader.endArray();
+    return interests;
+  }
+
+  /**
+   * @return the match preference
+   * @throws IOException if it is not one of the form's options
+   */
+  private static MatchPreference readMatchPreference(JsonReader reader) throws IOException {
+    String value = reader.nextString();
+    try {
+      return MatchPreference.forStringValue(value);
+    } catch (IllegalStateException e) {
+      throw new IOException("Unknown " + REQUEST_MATCH_PREFERENCE, e);
+    }
+  }
+
+  /**
+   * @return the string value of a role, product area or interest
+   * @throws IOException if it is longer than any of the form's options
+   */
+  private static String readValue(JsonReader reader) throws IOException {
+    String value = reader.nextString();
+    if (value.length() > InputDictionary.MAX_VALUE_LENGTH) {
+      throw new IOException("Value longer than " + InputDictionary.MAX_VALUE_LENGTH + " chars");
+    }
+    return value;
+  }
+
+  public long getEndTimeAvailable() {
+    return endTimeAvailable;
+  }
+
+  public int getDuration() {
+    return duration;
+  }
+
+  public boolean getSavePreference() {
+    return savePreference;
+  }
+
+  /** @return unmatched participant with the form details, interning its inputs */
+  public Participant toParticipant(String username, long startTimeAvailable, long timestamp) {
+    return new Participant(
+        username,
+        startTimeAvailable,
+        endTimeAvailable,
+        duration,
+        role,
+        productArea,
+        interests,
+        matchPreference,
+        /* matchId= */ 0,
+        MatchStatus.UNMATCHED,
+        timestamp);
+  }
+
+  /** Thrown when a request body is longer than the limit */
+  public static final class TooLargeException extends IOException {
+    TooLargeException(int maxChars) {
+      super("Request body longer than " + maxChars + " chars");
+    }
+  }
+
+  /** Reader that throws TooLargeException once more than maxChars were read */
+  private static final class LimitedReader extends FilterReader {
+
+    private final int maxChars;
+    private int numRead = 0;
+
+    LimitedReader(Reader in, int maxChars) {
+      super(in);
+      this.maxChars = maxChars;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) {
+        count(1);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int n = super.read(buffer, offset, length);
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    private void count(int n) throws TooLargeException {
+      numRead += n;
+      if (numRead > maxChars) {
+        throw new TooLargeException(maxChars);
+      }
+    }
+  }
+}
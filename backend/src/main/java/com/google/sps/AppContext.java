@@ -0,0 +1,166 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.users.UserService;
+import com.google.common.base.Ticker;
+import com.google.sps.datastore.CachingMatchDatastore;
+import com.google.sps.datastore.CachingParticipantDatastore;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.OutboxDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.PoolSnapshotDatastore;
+import com.google.sps.datastore.UserDatastore;
+import com.google.sps.matching.MatchWaiters;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.notifs.GmailBatchSender;
+import java.time.Clock;
+import javax.annotation.Nullable;
+import javax.servlet.ServletContext;
+
+/**
+ * Everything servlets of this instance share: datastore wrappers, caches, the matching pool, parked
+ * search requests and the Gmail client. Created once by AppContextListener and stored in the
+ * ServletContext, so every endpoint sees the same caches and pool.
+ */
+public final class AppContext {
+
+  /** ServletContext attribute the application context is stored under */
+  public static final String ATTRIBUTE_NAME = AppContext.class.getName();
+
+  /** Reference clock */
+  private final Clock clock;
+
+  // Datastore wrappers, plain ones for queries and readers that must see the latest version
+  private final MatchDatastore matchDatastore;
+  private final ParticipantDatastore participantDatastore;
+  private final UserDatastore userDatastore;
+  private final PoolSnapshotDatastore poolSnapshotDatastore;
+  private final OutboxDatastore outboxDatastore;
+
+  // Caching datastore wrappers, read by every poll
+  private final CachingMatchDatastore cachingMatchDatastore;
+  private final CachingParticipantDatastore cachingParticipantDatastore;
+
+  private final UsernameService usernameService;
+  private final MatchingPool matchingPool;
+  private final MatchWaiters matchWaiters;
+
+  // Email, null if Gmail cannot be authorized without user interaction
+  private final GmailFactory gmailFactory;
+  @Nullable private final GmailBatchSender gmailSender;
+
+  /** Constructor with Gmail configured by system properties */
+  public AppContext(Clock clock, DatastoreService datastore, UserService userService) {
+    this(clock, datastore, userService, GmailFactory.fromSystemProperties());
+  }
+
+  /** Constructor, sends email only if gmailFactory has a service account */
+  public AppContext(
+      Clock clock, DatastoreService datastore, UserService userService, GmailFactory gmailFactory) {
+    this.clock = clock;
+    this.cachingMatchDatastore =
+        new CachingMatchDatastore(datastore, CachingMatchDatastore.DEFAULT_MAX_SIZE);
+    this.cachingParticipantDatastore =
+        new CachingParticipantDatastore(
+            datastore,
+            Ticker.systemTicker(),
+            CachingParticipantDatastore.DEFAULT_TTL_MILLIS,
+            CachingParticipantDatastore.DEFAULT_MAX_SIZE);
+    // Match commits claim participants, so they invalidate the cached ones
+    this.matchDatastore =
+        new MatchDatastore(
+            datastore, MatchDatastore.DEFAULT_MAX_COMMIT_ATTEMPTS, cachingParticipantDatastore);
+    this.participantDatastore = new ParticipantDatastore(datastore);
+    this.userDatastore = new UserDatastore(datastore);
+    this.poolSnapshotDatastore = new PoolSnapshotDatastore(datastore);
+    this.outboxDatastore = new OutboxDatastore(datastore);
+    this.usernameService = new UsernameService(userService);
+    this.matchingPool =
+        new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS, poolSnapshotDatastore);
+    this.matchWaiters = new MatchWaiters();
+    this.gmailFactory = gmailFactory;
+    this.gmailSender = gmailFactory.hasServiceAccount() ? new GmailBatchSender(gmailFactory) : null;
+  }
+
+  /**
+   * @return application context stored in servletContext
+   * @throws IllegalStateException if AppContextListener has not initialized it
+   */
+  public static AppContext get(ServletContext servletContext) {
+    AppContext context = (AppContext) servletContext.getAttribute(ATTRIBUTE_NAME);
+    if (context == null) {
+      throw new IllegalStateException("Application context not initialized");
+    }
+    return context;
+  }
+
+  public Clock getClock() {
+    return clock;
+  }
+
+  /** @return match datastore whose commits invalidate the caching participant datastore */
+  public MatchDatastore getMatchDatastore() {
+    return matchDatastore;
+  }
+
+  public ParticipantDatastore getParticipantDatastore() {
+    return participantDatastore;
+  }
+
+  public UserDatastore getUserDatastore() {
+    return userDatastore;
+  }
+
+  public PoolSnapshotDatastore getPoolSnapshotDatastore() {
+    return poolSnapshotDatastore;
+  }
+
+  public OutboxDatastore getOutboxDatastore() {
+    return outboxDatastore;
+  }
+
+  public CachingMatchDatastore getCachingMatchDatastore() {
+    return cachingMatchDatastore;
+  }
+
+  /** @return caching participant datastore, participant writes must go through it */
+  public CachingParticipantDatastore getCachingParticipantDatastore() {
+    return cachingParticipantDatastore;
+  }
+
+  public UsernameService getUsernameService() {
+    return usernameService;
+  }
+
+  public MatchingPool getMatchingPool() {
+    return matchingPool;
+  }
+
+  public MatchWaiters getMatchWaiters() {
+    return matchWaiters;
+  }
+
+  public GmailFactory getGmailFactory() {
+    return gmailFactory;
+  }
+
+  /** @return sender of batches of emails, or null if email is not configured */
+  @Nullable
+  public GmailBatchSender getGmailSender() {
+    return gmailSender;
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.sps.data.Match;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchWaiters;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Helper for BatchMatchServlet, pairs the whole waiting pool in one pass */
+public class BatchMatchHelper {
+
+  private static final Metrics metrics = Metrics.shared();
+
+  /** Reference clock */
+  private final Clock clock;
+
+  // Match and Participant Datastores
+  private final MatchDatastore matchDatastore;
+  private final ParticipantDatastore participantDatastore;
+
+  /** Parked search requests to wake when a match is made, or null if requests aren't parked */
+  @Nullable private final MatchWaiters matchWaiters;
+  /** Resident pool of unmatched participants to drop matched ones from, or null if none */
+  @Nullable private final MatchingPool matchingPool;
+
+  /** Constructor that takes its dependencies from the application context */
+  public BatchMatchHelper(AppContext context) {
+    this(
+        context.getClock(),
+        context.getMatchDatastore(),
+        context.getParticipantDatastore(),
+        context.getMatchWaiters(),
+        context.getMatchingPool());
+  }
+
+  /** Constructor */
+  public BatchMatchHelper(
+      Clock clock, MatchDatastore matchDatastore, ParticipantDatastore participantDatastore) {
+    this(clock, matchDatastore, participantDatastore, /* matchWaiters= */ null);
+  }
+
+  /** Constructor that wakes search requests parked on matchWaiters */
+  public BatchMatchHelper(
+      Clock clock,
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      @Nullable MatchWaiters matchWaiters) {
+    this(clock, matchDatastore, participantDatastore, matchWaiters, /* matchingPool= */ null);
+  }
+
+  /**
+   * Constructor that wakes search requests parked on matchWaiters and drops matched participants
+   * from matchingPool
+   */
+  public BatchMatchHelper(
+      Clock clock,
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      @Nullable MatchWaiters matchWaiters,
+      @Nullable MatchingPool matchingPool) {
+    this.clock = clock;
+    this.matchDatastore = matchDatastore;
+    this.participantDatastore = participantDatastore;
+    this.matchWaiters = matchWaiters;
+    this.matchingPool = matchingPool;
+  }
+
+  /** Match all compatible unmatched participants, called periodically by cron */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!CronRequests.isFromCron(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can run batch matching.");
+      return;
+    }
+
+    int numMatches = matchAll();
+
+    response.setContentType("text/plain;charset=UTF-8");
+    response.getWriter().println("Batch matched " + numMatches + " pairs.");
+  }
+
+  /**
+   * Load all unmatched participants once, pair them, and commit the matches and matched
+   * participants in batched transactions. A pair is skipped if either participant was matched or
+   * changed by another request since it was loaded.
+   *
+   * @return number of matches made
+   */
+  public int matchAll() {
+    List<Participant> unmatchedParticipants = participantDatastore.getUnmatchedParticipants();
+    List<Match> matches =
+        new FindMatchQuery(clock, participantDatastore).findAllMatches(unmatchedParticipants);
+    if (matches.isEmpty()) {
+      return 0;
+    }
+
+    Map<String, Participant> participantsByUsername =
+        unmatchedParticipants.stream()
+            .collect(Collectors.toMap(Participant::getUsername, Function.identity()));
+    List<Participant> firstParticipants = new ArrayList<Participant>();
+    List<Participant> secondParticipants = new ArrayList<Participant>();
+    for (Match match : matches) {
+      firstParticipants.add(participantsByUsername.get(match.getFirstParticipantUsername()));
+      secondParticipants.add(participantsByUsername.get(match.getSecondParticipantUsername()));
+    }
+    List<Long> matchIds =
+        matchDatastore.commitMatches(matches, firstParticipants, secondParticipants);
+    int numMatches = 0;
+    for (int i = 0; i < matches.size(); i++) {
+      Long matchId = matchIds.get(i);
+      if (matchId == null) {
+        continue;
+      }
+      numMatches++;
+      metrics.increment(Metrics.MATCHES_MADE);
+      if (matchingPool != null) {
+        matchingPool.remove(matches.get(i).getFirstParticipantUsername());
+        matchingPool.remove(matches.get(i).getSecondParticipantUsername());
+      }
+      if (matchWaiters != null) {
+        matchWaiters.notifyMatched(matches.get(i).getFirstParticipantUsername(), matchId);
+        matchWaiters.notifyMatched(matches.get(i).getSecondParticipantUsername(), matchId);
+      }
+    }
+    return numMatches;
+  }
+}
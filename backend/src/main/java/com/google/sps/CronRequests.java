@@ -0,0 +1,31 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import javax.servlet.http.HttpServletRequest;
+
+/** Checks shared by the endpoints that only App Engine cron may call */
+public final class CronRequests {
+
+  /** Header App Engine sets on cron requests, and strips from external requests */
+  private static final String HEADER_APPENGINE_CRON = "X-Appengine-Cron";
+
+  private CronRequests() {}
+
+  /** @return whether request was sent by App Engine cron */
+  public static boolean isFromCron(HttpServletRequest request) {
+    return request.getHeader(HEADER_APPENGINE_CRON) != null;
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.api.services.gmail.model.Message;
+import com.google.sps.data.Notification;
+import com.google.sps.datastore.OutboxDatastore;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.notifs.BatchSender;
+import com.google.sps.notifs.EmailNotifier;
+import com.google.sps.notifs.GmailBatchSender;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.mail.MessagingException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Helper for DrainOutboxServlet, sends the notifications written to the outbox with matches and
+ * with removals of expired participants. A notification is leased before it is sent and marked sent
+ * after, so a drain that dies midway leaves it to be sent again once the lease expires, with the
+ * same Message-ID.
+ */
+public class DrainOutboxHelper {
+
+  private static final Logger logger = Logger.getLogger(DrainOutboxHelper.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
+  /** Domain of usernames' email addresses */
+  private static final String EMAIL_DOMAIN = "@google.com";
+
+  /** Lease on a notification's first send, doubled on each send after */
+  private static final long LEASE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  /** Notifications leased and sent per batch */
+  private static final int BATCH_SIZE = GmailBatchSender.MAX_BATCH_SIZE;
+  /** Most batches per drain, the rest are left for the next drain */
+  private static final int MAX_BATCHES_PER_DRAIN = 10;
+  /** Most sends of one notification before it is marked failed */
+  private static final int MAX_ATTEMPTS = 5;
+  /** Time sent notifications are kept after their last lease expired */
+  private static final long SENT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+  /** Most sent notifications deleted per drain */
+  private static final int MAX_DELETIONS_PER_DRAIN = 500;
+  /** Most pending notifications counted for the outbox_pending gauge */
+  private static final int MAX_PENDING_COUNTED = 1_000;
+
+  /** Reference clock */
+  private final Clock clock;
+
+  private final OutboxDatastore outboxDatastore;
+  /** Sender of leased notifications, or null if email is not configured */
+  @Nullable private final BatchSender sender;
+
+  /** Constructor that takes its dependencies from the application context */
+  public DrainOutboxHelper(AppContext context) {
+    this(context.getClock(), context.getOutboxDatastore(), context.getGmailSender());
+  }
+
+  /** Constructor */
+  public DrainOutboxHelper(
+      Clock clock, OutboxDatastore outboxDatastore, @Nullable BatchSender sender) {
+    this.clock = clock;
+    this.outboxDatastore = outboxDatastore;
+    this.sender = sender;
+  }
+
+  /** Send pending notifications, called periodically by cron */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!CronRequests.isFromCron(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can drain the outbox.");
+      return;
+    }
+
+    response.setContentType("text/plain;charset=UTF-8");
+    if (sender == null) {
+      recordPending();
+      response.getWriter().println("Email is not configured, notifications left pending.");
+      return;
+    }
+    int numSent = drain();
+    int numDeleted =
+        outboxDatastore.deleteSentBefore(
+            clock.millis() - SENT_RETENTION_MILLIS, MAX_DELETIONS_PER_DRAIN);
+    long numPending = recordPending();
+    response
+        .getWriter()
+        .println(
+            "Sent "
+                + numSent
+                + " notifications, deleted "
+                + numDeleted
+                + " old ones, "
+                + numPending
+                + " pending.");
+  }
+
+  /**
+   * Set the outbox_pending gauge to the notifications still pending after this drain, so a backlog
+   * that drains can't keep up with shows on /api/v1/metrics
+   *
+   * @return number of pending notifications, at most MAX_PENDING_COUNTED
+   */
+  private long recordPending() {
+    int numPending = outboxDatastore.countPending(MAX_PENDING_COUNTED);
+    metrics.setGauge(Metrics.OUTBOX_PENDING, numPending);
+    return numPending;
+  }
+
+  /**
+   * Lease and send pending notifications in batches
+   *
+   * @return number of notifications sent
+   */
+  public int drain() {
+    int numSent = 0;
+    for (int batch = 0; batch < MAX_BATCHES_PER_DRAIN; batch++) {
+      List<Notification> notifications =
+          outboxDatastore.leasePending(clock.millis(), LEASE_MILLIS, BATCH_SIZE);
+      numSent += send(notifications);
+      if (notifications.size() < BATCH_SIZE) {
+        break;
+      }
+    }
+    return numSent;
+  }
+
+  /**
+   * Send leased notifications in one batch, then mark those sent as sent, and those rejected or out
+   * of attempts as failed. The rest stay pending until their lease expires.
+   *
+   * @return number of notifications sent
+   */
+  private int send(List<Notification> notifications) {
+    if (notifications.isEmpty()) {
+      return 0;
+    }
+    Map<Message, Notification> notificationsByMessage = new IdentityHashMap<>();
+    List<Notification> failed = new ArrayList<>();
+    for (Notification notification : notifications) {
+      try {
+        notificationsByMessage.put(createMessage(notification), notification);
+      } catch (MessagingException | IOException e) {
+        logger.log(Level.WARNING, e, () -> "Could not create email for " + notification);
+        failed.add(notification);
+      }
+    }
+
+    List<Message> messages = new ArrayList<>(notificationsByMessage.keySet());
+    BatchSender.Result result;
+    long startNanos = System.nanoTime();
+    try {
+      result = sender.send(messages);
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "Could not send batch of " + messages.size() + " emails", e);
+      result = new BatchSender.Result();
+      messages.forEach(result::addRetryable);
+    }
+    metrics.recordSince(Metrics.EMAIL_BATCH_SEND, startNanos);
+
+    // Rejected messages fail however often they are sent, so they are not retried
+    for (Message message : result.getRejected()) {
+      failed.add(notificationsByMessage.remove(message));
+    }
+    for (Message message : result.getRetryable()) {
+      Notification notification = notificationsByMessage.remove(message);
+      if (notification.getAttempts() >= MAX_ATTEMPTS) {
+        failed.add(notification);
+      } else {
+        metrics.increment(Metrics.EMAIL_RETRIES);
+      }
+    }
+    List<Notification> sent = new ArrayList<>(notificationsByMessage.values());
+    outboxDatastore.markSent(sent);
+    outboxDatastore.markFailed(failed);
+    metrics.add(Metrics.EMAILS_SENT, sent.size());
+    metrics.add(Metrics.EMAILS_FAILED, failed.size());
+    return sent.size();
+  }
+
+  /** Return the email telling notification's recipient they were matched or expired */
+  private static Message createMessage(Notification notification)
+      throws MessagingException, IOException {
+    String recipientEmail = notification.getRecipientUsername() + EMAIL_DOMAIN;
+    switch (notification.getType()) {
+      case MATCHED:
+        return EmailNotifier.createMatchMessage(
+            notification.getMatchedUsername(), recipientEmail, notification.getDedupeKey());
+      case EXPIRED:
+        return EmailNotifier.createExpiredMessage(
+            notification.getRecipientUsername(), recipientEmail, notification.getDedupeKey());
+      default:
+        throw new IllegalArgumentException("Unknown notification type: " + notification);
+    }
+  }
+}
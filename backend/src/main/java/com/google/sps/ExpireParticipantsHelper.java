@@ -0,0 +1,109 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Helper for ExpireParticipantsServlet, sweeps expired participants out of the queue */
+public class ExpireParticipantsHelper {
+
+  private static final Metrics metrics = Metrics.shared();
+
+  /**
+   * Time past expiry before a participant is swept. Polling participants are told they expired by
+   * search-match within a poll, so only participants who left are swept.
+   */
+  private static final long SWEEP_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  /** Expired participants queried and removed per batch */
+  private static final int SWEEP_BATCH_SIZE = 500;
+  /** Most batches per sweep, the rest are left for the next sweep */
+  private static final int MAX_BATCHES_PER_SWEEP = 10;
+
+  /** Reference clock */
+  private final Clock clock;
+
+  private final ParticipantDatastore participantDatastore;
+
+  /** Resident pool of unmatched participants to drop removed ones from, or null if none */
+  @Nullable private final MatchingPool matchingPool;
+
+  /** Constructor that takes its dependencies from the application context */
+  public ExpireParticipantsHelper(AppContext context) {
+    // Removal must invalidate the participant cached for search-match
+    this(context.getClock(), context.getCachingParticipantDatastore(), context.getMatchingPool());
+  }
+
+  /** Constructor */
+  public ExpireParticipantsHelper(Clock clock, ParticipantDatastore participantDatastore) {
+    this(clock, participantDatastore, /* matchingPool= */ null);
+  }
+
+  /** Constructor that also drops removed participants from matchingPool */
+  public ExpireParticipantsHelper(
+      Clock clock, ParticipantDatastore participantDatastore, @Nullable MatchingPool matchingPool) {
+    this.clock = clock;
+    this.participantDatastore = participantDatastore;
+    this.matchingPool = matchingPool;
+  }
+
+  /** Remove expired participants, called periodically by cron */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!CronRequests.isFromCron(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can expire participants.");
+      return;
+    }
+
+    int numExpired = expireAll();
+
+    response.setContentType("text/plain;charset=UTF-8");
+    response.getWriter().println("Expired " + numExpired + " participants.");
+  }
+
+  /**
+   * Remove unmatched participants that expired more than the sweep grace period ago, in batches,
+   * and queue an email in the outbox to each one removed, sent by the drain-outbox cron
+   *
+   * @return number of participants removed
+   */
+  public int expireAll() {
+    long sweepBeforeMillis = clock.millis() - SWEEP_GRACE_MILLIS;
+    int numExpired = 0;
+    for (int batch = 0; batch < MAX_BATCHES_PER_SWEEP; batch++) {
+      List<String> usernames =
+          participantDatastore.getExpiredUsernames(sweepBeforeMillis, SWEEP_BATCH_SIZE);
+      List<Participant> removed =
+          participantDatastore.removeExpiredParticipants(usernames, sweepBeforeMillis);
+      numExpired += removed.size();
+      if (matchingPool != null) {
+        removed.forEach(participant -> matchingPool.remove(participant.getUsername()));
+      }
+      metrics.add(Metrics.PARTICIPANTS_EXPIRED, removed.size());
+      if (usernames.size() < SWEEP_BATCH_SIZE) {
+        break;
+      }
+    }
+    return numExpired;
+  }
+}
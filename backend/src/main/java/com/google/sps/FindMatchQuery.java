@@ -14,163 +14,273 @@
 
 package com.google.sps;
 
+import com.google.common.base.Ticker;
+import com.google.sps.data.InputDictionary;
 import com.google.sps.data.Match;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.Participant;
 import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchScorer;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.matching.OverlapMatchScorer;
+import com.google.sps.matching.WeightedMatcher;
+import com.google.sps.metrics.Metrics;
 import java.time.Clock;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /** Class used to find a match for new Participant with unmatched Participants in datastore */
 public final class FindMatchQuery {
 
+  private static final Logger logger = Logger.getLogger(FindMatchQuery.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
   /** Extra padding time in minutes to ensure large enough meeting time block */
-  private static final int PADDING_MINUTES = 10;
+  private static final int PADDING_MINUTES = Participant.PADDING_MINUTES;
+  /** Compatible candidates scored before picking the best one for a new participant */
+  private static final int MAX_CANDIDATES_SCORED = 32;
+  /** CPU time budget for pairing the whole waiting pool in findAllMatches */
+  public static final long DEFAULT_BATCH_BUDGET_MILLIS = 5_000;
+
   /** Reference clock */
   private final Clock clock;
-  /** Datastore of Participants */
-  private final ParticipantDatastore participantDatastore;
+  /** Datastore of Participants, used when there is no resident pool */
+  @Nullable private final ParticipantDatastore participantDatastore;
+  /** Resident pool of unmatched Participants, or null to query datastore directly */
+  @Nullable private final MatchingPool matchingPool;
+  /** Scorer used to pick the best of several compatible candidates */
+  private final MatchScorer scorer;
 
-  /** Constructor */
+  /** Constructor that queries datastore for candidates on every match attempt */
   public FindMatchQuery(Clock clock, ParticipantDatastore participantDatastore) {
     this.clock = clock;
     this.participantDatastore = participantDatastore;
+    this.matchingPool = null;
+    this.scorer = new OverlapMatchScorer();
+  }
+
+  /** Constructor that only looks at compatible candidates in a resident pool */
+  public FindMatchQuery(Clock clock, MatchingPool matchingPool) {
+    this(clock, matchingPool, new OverlapMatchScorer());
+  }
+
+  /** Constructor that looks at candidates in a resident pool and ranks them with scorer */
+  public FindMatchQuery(Clock clock, MatchingPool matchingPool, MatchScorer scorer) {
+    this.clock = clock;
+    this.participantDatastore = null;
+    this.matchingPool = matchingPool;
+    this.scorer = scorer;
   }
 
   /**
-   * @return Match of new participant with unmatched participants by comparing duration and
-   *     availibility, or null if no match yet
+   * @return Match of new participant with the best scoring of the first compatible unmatched
+   *     participants by comparing duration and availibility, or null if no match yet
    */
   @Nullable
   public Match findMatch(Participant newParticipant) {
+    long startNanos = System.nanoTime();
     Participant firstParticipant = newParticipant;
     int duration = firstParticipant.getDuration();
+    long minEndTimeAvailable = getMinEndTimeAvailable(clock.millis(), duration);
 
-    // Get list of unmatched participants with same duration as and compatible time availaiblity
-    // with firstParticipant
-    List<Participant> compatibleTimeAvailabilityParticipants =
-        participantDatastore.getUnmatchedParticipantsWithDuration(duration);
-
-    // Compare first participant preferences with other participants to find match
-    for (Participant secondParticipant : compatibleTimeAvailabilityParticipants) {
-      // Make sure the first participant is not the same as the second
-      if (firstParticipant.getUsername().equals(secondParticipant.getUsername())) {
-        continue;
+    BestCandidate bestCandidate = new BestCandidate();
+    int[] numScanned = new int[1];
+    Predicate<Participant> visitor =
+        candidate -> {
+          numScanned[0]++;
+          if (isCompatible(firstParticipant, candidate, minEndTimeAvailable)) {
+            bestCandidate.offer(candidate, scorer.score(firstParticipant, candidate));
+          }
+          return bestCandidate.numScored < MAX_CANDIDATES_SCORED;
+        };
+    if (matchingPool != null) {
+      // Check match preference inputs against the pool's columns before building candidates
+      long[] firstFilledInputBits = firstParticipant.getFilledInputBits();
+      MatchingPool.CandidateFilter filter =
+          (username, matchPreference, filledInputBits, numFilledInputs) -> {
+            MatchPreference combinedMatchPreference =
+                MatchPreference.getCombinedMatchPreference(
+                    firstParticipant.getMatchPreference(), matchPreference);
+            return !username.equals(firstParticipant.getUsername())
+                && combinedMatchPreference != null
+                && isCombinedMatchPreferenceSatisfied(
+                    combinedMatchPreference,
+                    InputDictionary.countShared(firstFilledInputBits, filledInputBits),
+                    Math.max(firstParticipant.getNumFilledInputs(), numFilledInputs));
+          };
+      matchingPool.visitCandidates(
+          duration, firstParticipant.getMatchPreference(), minEndTimeAvailable, filter, visitor);
+    } else {
+      // Stream unmatched participants with same duration and enough time left, fetching stops
+      // once the visitor is done
+      for (Participant candidate :
+          participantDatastore.iterateUnmatchedParticipantsWithDuration(
+              duration, minEndTimeAvailable)) {
+        if (!visitor.test(candidate)) {
+          break;
+        }
       }
+    }
 
-      // Check endTimeAvailable compatibility
-      boolean compatibleTime =
-          secondParticipant.getEndTimeAvailable()
-              > clock.millis() + TimeUnit.MINUTES.toMillis(duration + PADDING_MINUTES);
-      if (!compatibleTime) {
-        continue;
-      }
+    metrics.add(Metrics.CANDIDATES_SCANNED, numScanned[0]);
+    metrics.recordSince(Metrics.FIND_MATCH_LATENCY, startNanos);
 
-      // Check match preference compatibility and get combined preference if compatible
-      MatchPreference combinedMatchPreference =
-          getCombinedMatchPreference(
-              firstParticipant.getMatchPreference(), secondParticipant.getMatchPreference());
-      if (combinedMatchPreference == null) {
-        // Not compatible match pref
-        continue;
-      }
-      // Check if combined match preference is satisfied depending on number of same inputs
-      if (!isCombinedMatchPreferenceSatisfied(
-          combinedMatchPreference, firstParticipant, secondParticipant)) {
-        continue;
-      }
+    Participant secondParticipant = bestCandidate.participant;
+    if (secondParticipant == null) {
+      // No inital match found
+      return null;
+    }
+
+    logger.fine(
+        () ->
+            "match found: "
+                + firstParticipant.getUsername()
+                + " and "
+                + secondParticipant.getUsername());
+    // Found a match
+    return new Match(
+        firstParticipant.getUsername(), secondParticipant.getUsername(), duration, clock.millis());
+  }
+
+  /**
+   * Pair up the unmatched participants in one pass within the default CPU budget
+   *
+   * @see #findAllMatches(List, Ticker, long)
+   */
+  public List<Match> findAllMatches(List<Participant> unmatchedParticipants) {
+    return findAllMatches(
+        unmatchedParticipants,
+        Ticker.systemTicker(),
+        TimeUnit.MILLISECONDS.toNanos(DEFAULT_BATCH_BUDGET_MILLIS));
+  }
 
-      System.out.println(
-          "match found: "
-              + firstParticipant.getUsername()
-              + " and "
-              + secondParticipant.getUsername());
-      // Found a match
-      return new Match(
-          firstParticipant.getUsername(),
-          secondParticipant.getUsername(),
-          duration,
-          clock.millis());
+  /**
+   * Pair up the unmatched participants in one pass, so participants that were each rejected on
+   * arrival can still be matched with each other. Pairs are chosen to maximize the number of
+   * matches, then their total score, with participants with the soonest endTimeAvailable preferred
+   * on ties. Stops improving the pairing once budgetNanos of ticker time has passed.
+   *
+   * @return matches found, with each participant in at most one match
+   */
+  public List<Match> findAllMatches(
+      List<Participant> unmatchedParticipants, Ticker ticker, long budgetNanos) {
+    long deadlineNanos = ticker.read() + budgetNanos;
+    long currentTimeMillis = clock.millis();
+
+    // Group participants that are still available by duration, earliest endTimeAvailable first
+    Map<Integer, List<Participant>> participantsByDuration =
+        unmatchedParticipants.stream()
+            .filter(
+                p ->
+                    p.getEndTimeAvailable()
+                        > getMinEndTimeAvailable(currentTimeMillis, p.getDuration()))
+            .sorted(Comparator.comparingLong(Participant::getEndTimeAvailable))
+            .collect(Collectors.groupingBy(Participant::getDuration));
+
+    WeightedMatcher matcher = new WeightedMatcher(scorer, ticker);
+    List<Match> matches = new ArrayList<Match>();
+    for (List<Participant> sameDurationParticipants : participantsByDuration.values()) {
+      // Every participant left is available long enough, so only check the other inputs
+      int[] partners =
+          matcher.match(
+              sameDurationParticipants,
+              (first, second) -> isCompatible(first, second, Long.MIN_VALUE),
+              deadlineNanos);
+      for (int i = 0; i < partners.length; i++) {
+        if (partners[i] > i) {
+          Participant firstParticipant = sameDurationParticipants.get(i);
+          matches.add(
+              new Match(
+                  firstParticipant.getUsername(),
+                  sameDurationParticipants.get(partners[i]).getUsername(),
+                  firstParticipant.getDuration(),
+                  currentTimeMillis));
+        }
+      }
     }
-    // No inital match found
-    return null;
+    return matches;
+  }
+
+  /** @return time a participant must be available past to fit a meeting of duration from now */
+  private static long getMinEndTimeAvailable(long currentTimeMillis, int duration) {
+    return currentTimeMillis + TimeUnit.MINUTES.toMillis(duration + PADDING_MINUTES);
   }
 
   /**
-   * @return combined MatchPreference SIMILAR = both are SIMILAR OR one is SIMILAR and one is ANY;
-   *     ANY = both are ANY; DIFFERENT = both are DIFFERENT = one is DIFFERENT and one is ANY. or
-   *     null if match preferences are not compatible
+   * @return true if second participant is someone else, is available until after
+   *     minEndTimeAvailable, and has a match preference compatible with the first participant
    */
-  private MatchPreference getCombinedMatchPreference(
-      MatchPreference firstMatchPreference, MatchPreference secondMatchPreference) {
-    if (firstMatchPreference == secondMatchPreference) {
-      return firstMatchPreference;
+  private boolean isCompatible(
+      Participant firstParticipant, Participant secondParticipant, long minEndTimeAvailable) {
+    // Make sure the first participant is not the same as the second
+    if (firstParticipant.getUsername().equals(secondParticipant.getUsername())) {
+      return false;
     }
-    if (firstMatchPreference == MatchPreference.ANY) {
-      return secondMatchPreference;
+
+    // Check endTimeAvailable compatibility
+    if (secondParticipant.getEndTimeAvailable() <= minEndTimeAvailable) {
+      return false;
     }
-    if (secondMatchPreference == MatchPreference.ANY) {
-      return firstMatchPreference;
+
+    // Check match preference compatibility and get combined preference if compatible
+    MatchPreference combinedMatchPreference =
+        MatchPreference.getCombinedMatchPreference(
+            firstParticipant.getMatchPreference(), secondParticipant.getMatchPreference());
+    if (combinedMatchPreference == null) {
+      // Not compatible match pref
+      return false;
     }
-    return null;
+    // Check if combined match preference is satisfied depending on number of same inputs, counted
+    // with a popcount over interned role, product area, interests
+    return combinedMatchPreference == MatchPreference.ANY
+        || isCombinedMatchPreferenceSatisfied(
+            combinedMatchPreference,
+            firstParticipant.getNumSharedFilledInputs(secondParticipant),
+            Math.max(
+                firstParticipant.getNumFilledInputs(), secondParticipant.getNumFilledInputs()));
   }
 
   /**
-   * @return true if the participants are a match based on their combinedMatchPreference and the
-   *     number of inputs that are the same, false if not a match
+   * @return true if participants with numSameInputs of their inputs the same, and at most
+   *     maxNumFilledInputs filled inputs each, are a match based on their combinedMatchPreference
    */
-  private boolean isCombinedMatchPreferenceSatisfied(
-      MatchPreference combinedMatchPreference,
-      Participant firstParticipant,
-      Participant secondParticipant) {
+  private static boolean isCombinedMatchPreferenceSatisfied(
+      MatchPreference combinedMatchPreference, int numSameInputs, int maxNumFilledInputs) {
     if (combinedMatchPreference == MatchPreference.ANY) {
       // both ANY, doesn't matter how many same inputs
       return true;
     }
 
-    // Get lists of combined role, product area, interests for first and second participant
-    List<String> firstFilledInputs = getAllFilledInputs(firstParticipant);
-    List<String> secondFilledInputs = getAllFilledInputs(secondParticipant);
-    System.out.println("First filled inputs: " + firstFilledInputs.toString());
-    System.out.println("Second filled inputs: " + secondFilledInputs.toString());
-
-    // Count number of shared inputs by finding size of intersection
-    firstFilledInputs.retainAll(secondFilledInputs);
-    int numSameInputs = firstFilledInputs.size();
-    System.out.println("numSameInputs: " + numSameInputs);
-
     // Check if match based on preference and number of same inputs
-    int maxNumFilledInputs = Math.max(firstFilledInputs.size(), secondFilledInputs.size());
     int minSameInputs = (maxNumFilledInputs + 1) / 2;
-    System.out.println(minSameInputs);
     if (combinedMatchPreference == MatchPreference.SIMILAR && numSameInputs < minSameInputs) {
       return false;
     }
     if (combinedMatchPreference == MatchPreference.DIFFERENT && numSameInputs >= minSameInputs) {
       return false;
     }
-    System.out.println("combined match pref satisfied");
     return true;
   }
 
-  /**
-   * @return all filled inputs of participant in one string delimited by a comma Assumes no role,
-   *     PA, or interests have the same options
-   */
-  private List<String> getAllFilledInputs(Participant participant) {
-    List<String> allFilledInputs = new ArrayList<String>();
-    String role = participant.getRole();
-    if (!role.equals("")) {
-      allFilledInputs.add(role);
-    }
-    String productArea = participant.getProductArea();
-    if (!productArea.equals("")) {
-      allFilledInputs.add(productArea);
+  /** Highest scoring candidate offered so far, earliest offered wins ties */
+  private static final class BestCandidate {
+    @Nullable private Participant participant = null;
+    private double score = Double.NEGATIVE_INFINITY;
+    private int numScored = 0;
+
+    private void offer(Participant candidate, double candidateScore) {
+      numScored++;
+      if (candidateScore > score) {
+        participant = candidate;
+        score = candidateScore;
+      }
     }
-    allFilledInputs.addAll(participant.getInterests());
-    return allFilledInputs;
   }
 }
@@ -5,6 +5,7 @@ import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInsta
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
 import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
@@ -20,9 +21,24 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.security.GeneralSecurityException;
 import java.util.List;
+import javax.annotation.Nullable;
 
+/**
+ * Holds a Gmail client, built on first use and shared after that, so credentials are loaded once,
+ * the access token is reused until shortly before it expires, and every request goes through one
+ * HTTP transport and its kept-alive connections. Authorizes with a service account key when one is
+ * configured, otherwise with the interactive installed-app flow, which is only fit for local
+ * development.
+ */
 public class GmailFactory {
 
+  /** System property with the path of a service account key, enables non-interactive auth */
+  public static final String PROPERTY_SERVICE_ACCOUNT_KEY = "adlib.gmail.serviceAccountKey";
+  /** System property with the user a service account sends as, through domain-wide delegation */
+  public static final String PROPERTY_SENDER = "adlib.gmail.sender";
+  /** System property replacing Gmail's root URL, to point the client at a fake endpoint */
+  public static final String PROPERTY_ROOT_URL = "adlib.gmail.rootUrl";
+
   /**
    * Global instance of the scopes required by this quickstart. If modifying these scopes, delete
    * your previously saved tokens/ folder.
@@ -37,6 +53,47 @@ public class GmailFactory {
   private static final String ACCESS_TYPE = "offline";
   private static final int PORT_NUM = 8000;
 
+  /** HTTP transport shared by all Gmail clients, loading its trust store is slow */
+  private static volatile NetHttpTransport httpTransport;
+
+  /** Path of the service account key, or null to authorize interactively */
+  @Nullable private final String serviceAccountKeyPath;
+  /** User the service account sends as, or null to send as the service account */
+  @Nullable private final String sender;
+  /** Root URL of the Gmail API, or null for Gmail's own */
+  @Nullable private final String rootUrl;
+
+  /** Credential of the shared client, refreshes its access token when it is about to expire */
+  private volatile Credential credential;
+  /** Shared client, built on first use */
+  private volatile Gmail gmail;
+
+  /** Constructor for a factory authorizing interactively */
+  public GmailFactory() {
+    this(/* serviceAccountKeyPath= */ null, /* sender= */ null, /* rootUrl= */ null);
+  }
+
+  /** Constructor */
+  public GmailFactory(
+      @Nullable String serviceAccountKeyPath, @Nullable String sender, @Nullable String rootUrl) {
+    this.serviceAccountKeyPath = serviceAccountKeyPath;
+    this.sender = sender;
+    this.rootUrl = rootUrl;
+  }
+
+  /** @return factory configured by the PROPERTY_ system properties */
+  public static GmailFactory fromSystemProperties() {
+    return new GmailFactory(
+        System.getProperty(PROPERTY_SERVICE_ACCOUNT_KEY),
+        System.getProperty(PROPERTY_SENDER),
+        System.getProperty(PROPERTY_ROOT_URL));
+  }
+
+  /** @return whether clients are authorized with a service account, without user interaction */
+  public boolean hasServiceAccount() {
+    return serviceAccountKeyPath != null;
+  }
+
   /**
    * Creates an authorized Credential object.
    *
@@ -60,10 +117,91 @@ public class GmailFactory {
     return new AuthorizationCodeInstalledApp(flow, receiver).authorize(AUTH_USER);
   }
 
-  public Gmail build() throws GeneralSecurityException, IOException {
-    NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-    return new Gmail.Builder(httpTransport, JSON_FACTORY, getCredentials(httpTransport))
-        .setApplicationName(APPLICATION_NAME)
+  /**
+   * Creates a Credential from the service account key, sending as sender if there is one.
+   *
+   * @throws IOException if the key cannot be read
+   */
+  private Credential getServiceAccountCredentials(NetHttpTransport httpTransport)
+      throws IOException {
+    GoogleCredential key;
+    try (InputStream in = new FileInputStream(serviceAccountKeyPath)) {
+      key = GoogleCredential.fromStream(in, httpTransport, JSON_FACTORY);
+    }
+    return new GoogleCredential.Builder()
+        .setTransport(httpTransport)
+        .setJsonFactory(JSON_FACTORY)
+        .setTokenServerEncodedUrl(key.getTokenServerEncodedUrl())
+        .setServiceAccountId(key.getServiceAccountId())
+        .setServiceAccountPrivateKey(key.getServiceAccountPrivateKey())
+        .setServiceAccountPrivateKeyId(key.getServiceAccountPrivateKeyId())
+        .setServiceAccountScopes(SCOPES)
+        .setServiceAccountUser(sender)
         .build();
   }
+
+  /**
+   * @return HTTP transport shared by all Gmail clients, created on first use
+   * @throws GeneralSecurityException if the trust store cannot be loaded
+   */
+  private static NetHttpTransport getHttpTransport() throws GeneralSecurityException, IOException {
+    if (httpTransport == null) {
+      synchronized (GmailFactory.class) {
+        if (httpTransport == null) {
+          httpTransport = GoogleNetHttpTransport.newTrustedTransport();
+        }
+      }
+    }
+    return httpTransport;
+  }
+
+  /**
+   * Create the shared HTTP transport and JSON factory ahead of the first Gmail client, and with a
+   * service account also the client and its first access token
+   */
+  public void warmUp() throws GeneralSecurityException, IOException {
+    getHttpTransport();
+    JSON_FACTORY.createJsonParser("{}").close();
+    if (hasServiceAccount()) {
+      getGmail();
+      if (credential.getAccessToken() == null) {
+        credential.refreshToken();
+      }
+    }
+  }
+
+  /**
+   * @return Gmail client shared by every caller of this factory, built on first use
+   * @throws IOException if credentials cannot be loaded, or the trust store on first use
+   */
+  public Gmail getGmail() throws IOException {
+    if (gmail == null) {
+      synchronized (this) {
+        if (gmail == null) {
+          gmail = build();
+        }
+      }
+    }
+    return gmail;
+  }
+
+  private Gmail build() throws IOException {
+    NetHttpTransport httpTransport;
+    try {
+      httpTransport = getHttpTransport();
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Could not load trust store", e);
+    }
+    credential =
+        hasServiceAccount()
+            ? getServiceAccountCredentials(httpTransport)
+            : getCredentials(httpTransport);
+    Gmail.Builder builder =
+        new Gmail.Builder(httpTransport, JSON_FACTORY, credential)
+            .setApplicationName(APPLICATION_NAME);
+    if (rootUrl != null) {
+      builder.setRootUrl(rootUrl);
+    }
+    return builder.build();
+  }
 }
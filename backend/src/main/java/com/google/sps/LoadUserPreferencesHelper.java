@@ -18,6 +18,7 @@ import com.google.sps.data.MatchPreference;
 import com.google.sps.data.User;
 import com.google.sps.datastore.UserDatastore;
 import java.io.IOException;
+import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.json.JSONArray;
@@ -26,6 +27,8 @@ import org.json.JSONObject;
 /** Helper for LoadUserPreferencesServlet */
 public class LoadUserPreferencesHelper {
 
+  private static final Logger logger = Logger.getLogger(LoadUserPreferencesHelper.class.getName());
+
   // JSON key constants
   private static final String JSON_EXISTING = "existing";
   private static final String JSON_DURATION = "duration";
@@ -37,6 +40,11 @@ public class LoadUserPreferencesHelper {
   private final UserDatastore userDatastore;
   private final UsernameService usernameService;
 
+  /** Constructor that takes its dependencies from the application context */
+  public LoadUserPreferencesHelper(AppContext context) {
+    this(context.getUserDatastore(), context.getUsernameService());
+  }
+
   /** Constructor */
   public LoadUserPreferencesHelper(UserDatastore userDatastore, UsernameService usernameService) {
     this.userDatastore = userDatastore;
@@ -45,10 +53,9 @@ public class LoadUserPreferencesHelper {
 
   /** Returns a JSON object of the user's preferences */
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    System.out.println("Request received");
-
     // Find participant's match, if exists and not returned yet
     String username = usernameService.getUsername();
+    logger.fine(() -> "loading preferences for " + username);
     if (username == null) {
       response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not retrieve email");
       return;
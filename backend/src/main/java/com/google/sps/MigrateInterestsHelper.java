@@ -0,0 +1,65 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.UserDatastore;
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Helper for MigrateInterestsServlet, rewrites interests saved as comma-joined Strings as list
+ * properties
+ */
+public class MigrateInterestsHelper {
+
+  // Participant and User Datastores
+  private final ParticipantDatastore participantDatastore;
+  private final UserDatastore userDatastore;
+
+  /** Constructor that takes its dependencies from the application context */
+  public MigrateInterestsHelper(AppContext context) {
+    this(context.getParticipantDatastore(), context.getUserDatastore());
+  }
+
+  /** Constructor */
+  public MigrateInterestsHelper(
+      ParticipantDatastore participantDatastore, UserDatastore userDatastore) {
+    this.participantDatastore = participantDatastore;
+    this.userDatastore = userDatastore;
+  }
+
+  /** Migrate legacy interests of participants and users, called periodically by cron */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!CronRequests.isFromCron(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can migrate interests.");
+      return;
+    }
+
+    int numParticipants = participantDatastore.migrateLegacyInterests();
+    int numUsers = userDatastore.migrateLegacyInterests();
+
+    response.setContentType("text/plain;charset=UTF-8");
+    response
+        .getWriter()
+        .println(
+            "Migrated interests of "
+                + numParticipants
+                + " participants and "
+                + numUsers
+                + " users.");
+  }
+}
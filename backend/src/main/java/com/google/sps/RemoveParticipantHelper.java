@@ -15,7 +15,9 @@
 package com.google.sps;
 
 import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchingPool;
 import java.io.IOException;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -25,10 +27,31 @@ public final class RemoveParticipantHelper {
   private final ParticipantDatastore participantDatastore;
   private final UsernameService usernameService;
 
+  /** Resident pool of unmatched participants to drop removed ones from, or null if none */
+  @Nullable private final MatchingPool matchingPool;
+
+  /** Constructor that takes its dependencies from the application context */
+  public RemoveParticipantHelper(AppContext context) {
+    // Removal must invalidate the participant cached for search-match
+    this(
+        context.getCachingParticipantDatastore(),
+        context.getUsernameService(),
+        context.getMatchingPool());
+  }
+
   public RemoveParticipantHelper(
       ParticipantDatastore participantDatastore, UsernameService usernameService) {
+    this(participantDatastore, usernameService, /* matchingPool= */ null);
+  }
+
+  /** Constructor that also drops removed participants from matchingPool */
+  public RemoveParticipantHelper(
+      ParticipantDatastore participantDatastore,
+      UsernameService usernameService,
+      @Nullable MatchingPool matchingPool) {
     this.participantDatastore = participantDatastore;
     this.usernameService = usernameService;
+    this.matchingPool = matchingPool;
   }
 
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -42,6 +65,9 @@ public final class RemoveParticipantHelper {
 
     // Remove participant from datastore by username
     participantDatastore.removeParticipant(username);
+    if (matchingPool != null) {
+      matchingPool.remove(username);
+    }
 
     // Confirm participant exit queue request
     response.setContentType("text/plain;charset=UTF-8");
@@ -19,16 +19,39 @@ import com.google.sps.data.MatchStatus;
 import com.google.sps.data.Participant;
 import com.google.sps.datastore.MatchDatastore;
 import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchWaiters;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.json.simple.JSONObject;
 
 public class SearchMatchHelper {
 
-  /** Extra padding time in minutes to ensure large enough meeting time block */
-  private static final int PADDING_MINUTES = 10;
+  private static final Logger logger = Logger.getLogger(SearchMatchHelper.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
+  /**
+   * Default longest time a search request is parked waiting for a match. Each parked request holds
+   * one of the instance's concurrent requests (max-concurrent-requests in appengine-web.xml) while
+   * it waits.
+   */
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 15_000;
+  /**
+   * Default time between datastore rechecks of a parked request. No shorter than the max wait, so
+   * parked requests only wake on MatchWaiters and a match made on another instance is seen by the
+   * client's next search.
+   */
+  public static final long DEFAULT_RECHECK_MILLIS = DEFAULT_MAX_WAIT_MILLIS;
 
   // JSON key constants
   private static final String JSON_MATCH_STATUS = "matchStatus";
@@ -43,22 +66,126 @@ public class SearchMatchHelper {
 
   private final UsernameService usernameService;
 
+  /** Parked requests woken by matches made on this instance, or null to answer immediately */
+  @Nullable private final MatchWaiters matchWaiters;
+  /** Longest time a request is parked waiting for a match */
+  private final long maxWaitMillis;
+  /** Time between datastore rechecks of a parked request */
+  private final long recheckMillis;
+  /** Resident pool of unmatched participants to drop removed ones from, or null if none */
+  @Nullable private final MatchingPool matchingPool;
+
+  /**
+   * Constructor that takes its caching datastores and match waiters from the application context,
+   * parking unmatched requests up to the default max wait
+   */
+  public SearchMatchHelper(AppContext context) {
+    this(
+        context.getCachingMatchDatastore(),
+        context.getCachingParticipantDatastore(),
+        context.getUsernameService(),
+        context.getMatchWaiters(),
+        DEFAULT_MAX_WAIT_MILLIS,
+        DEFAULT_RECHECK_MILLIS,
+        context.getMatchingPool());
+  }
+
   /** Constructor */
   public SearchMatchHelper(
       MatchDatastore matchDatastore,
       ParticipantDatastore participantDatastore,
       UsernameService usernameService) {
+    this(
+        matchDatastore,
+        participantDatastore,
+        usernameService,
+        /* matchWaiters= */ null,
+        /* maxWaitMillis= */ 0);
+  }
+
+  /** Constructor that parks unmatched requests until a match is made or maxWaitMillis passes */
+  public SearchMatchHelper(
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      UsernameService usernameService,
+      @Nullable MatchWaiters matchWaiters,
+      long maxWaitMillis) {
+    this(
+        matchDatastore,
+        participantDatastore,
+        usernameService,
+        matchWaiters,
+        maxWaitMillis,
+        DEFAULT_RECHECK_MILLIS);
+  }
+
+  /**
+   * Constructor that parks unmatched requests until a match is made or maxWaitMillis passes,
+   * rechecking datastore every recheckMillis for matches made on other instances
+   */
+  public SearchMatchHelper(
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      UsernameService usernameService,
+      @Nullable MatchWaiters matchWaiters,
+      long maxWaitMillis,
+      long recheckMillis) {
+    this(
+        matchDatastore,
+        participantDatastore,
+        usernameService,
+        matchWaiters,
+        maxWaitMillis,
+        recheckMillis,
+        /* matchingPool= */ null);
+  }
+
+  /**
+   * Constructor that parks unmatched requests like the one above and drops participants it removes
+   * from matchingPool
+   */
+  public SearchMatchHelper(
+      MatchDatastore matchDatastore,
+      ParticipantDatastore participantDatastore,
+      UsernameService usernameService,
+      @Nullable MatchWaiters matchWaiters,
+      long maxWaitMillis,
+      long recheckMillis,
+      @Nullable MatchingPool matchingPool) {
     this.matchDatastore = matchDatastore;
     this.participantDatastore = participantDatastore;
     this.usernameService = usernameService;
+    this.matchWaiters = matchWaiters;
+    this.maxWaitMillis = maxWaitMillis;
+    this.recheckMillis = recheckMillis;
+    this.matchingPool = matchingPool;
   }
 
-  /** Search for the participant's current match and removes participant if expired */
+  /**
+   * Search for the participant's current match and removes participant if expired. If unmatched,
+   * waits for a match until the participant expires or the max wait passes.
+   */
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    System.out.println("Request received");
+    String username = usernameService.getUsername();
+    logger.fine(() -> "searching match for " + username);
+    if (matchWaiters == null) {
+      searchMatch(username, /* waiter= */ null, response);
+      return;
+    }
+    // Register before reading participant, so a match made in between isn't missed
+    CompletableFuture<Long> waiter = matchWaiters.register(username);
+    try {
+      searchMatch(username, waiter, response);
+    } finally {
+      matchWaiters.unregister(username, waiter);
+    }
+  }
 
+  /** Send participant's match, waiting on waiter if given and participant is unmatched */
+  private void searchMatch(
+      String username, @Nullable CompletableFuture<Long> waiter, HttpServletResponse response)
+      throws IOException {
     // Find participant's match, if exists and not returned yet
-    String username = usernameService.getUsername();
     Participant participant = participantDatastore.getParticipantFromUsername(username);
     if (participant == null) {
       response.sendError(
@@ -68,19 +195,46 @@ public class SearchMatchHelper {
     }
 
     // Check if match exists and not returned yet
+    long matchId;
     if (participant.getMatchStatus() == MatchStatus.UNMATCHED) {
-      if (isExpired(participant)) {
-        participantDatastore.removeParticipant(username);
-        sendExpiredResponse(response, participant);
+      Long notifiedMatchId = null;
+      if (waiter != null && !isExpired(participant)) {
+        notifiedMatchId = awaitMatch(waiter, participant);
+      }
+      if (notifiedMatchId == null && isExpired(participant)) {
+        // Participant may be a cached read, so only remove it if still unmatched in datastore
+        List<Participant> removed =
+            participantDatastore.removeExpiredParticipants(
+                Collections.singletonList(username), System.currentTimeMillis());
+        if (!removed.isEmpty()) {
+          removeFromPool(username);
+          metrics.increment(Metrics.PARTICIPANTS_EXPIRED);
+          sendExpiredResponse(response, removed.get(0));
+          return;
+        }
+        // Matched, changed or removed meanwhile, the removal invalidated any cached version
+        Participant latest = participantDatastore.getParticipantFromUsername(username);
+        if (latest == null) {
+          // Removed by the expiry sweep
+          removeFromPool(username);
+          sendExpiredResponse(response, participant);
+          return;
+        }
+        if (latest.getMatchStatus() == MatchStatus.MATCHED) {
+          notifiedMatchId = latest.getMatchId();
+        }
+      }
+      if (notifiedMatchId == null) {
+        // No match yet
+        sendNoMatchResponse(response);
         return;
       }
-      // No match yet
-      sendNoMatchResponse(response);
-      return;
+      matchId = notifiedMatchId;
+    } else {
+      // Match found (MatchStatus.MATCHED)
+      matchId = participant.getMatchId();
     }
 
-    // Match found (MatchStatus.MATCHED)
-    long matchId = participant.getMatchId();
     Match match = matchDatastore.getMatchFromId(matchId);
     if (match == null) {
       response.sendError(
@@ -91,10 +245,61 @@ public class SearchMatchHelper {
 
     // Remove matched participants from datastore
     participantDatastore.removeParticipant(username);
+    removeFromPool(username);
 
     sendMatchResponse(response, match);
   }
 
+  /**
+   * Wait for waiter to be notified of a match, until the max wait passes or participant expires.
+   * Waiters only hear of matches made on this instance, so datastore is rechecked every
+   * recheckMillis if that is shorter than the wait.
+   *
+   * @return match id, or null if not matched in time
+   */
+  @Nullable
+  private Long awaitMatch(CompletableFuture<Long> waiter, Participant participant) {
+    long deadlineMillis =
+        System.currentTimeMillis() + Math.min(maxWaitMillis, getMillisUntilExpired(participant));
+    long waitMillis;
+    while ((waitMillis = deadlineMillis - System.currentTimeMillis()) > 0) {
+      try {
+        return waiter.get(Math.min(waitMillis, recheckMillis), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        if (System.currentTimeMillis() >= deadlineMillis) {
+          // The client's next search reads datastore anyway
+          return null;
+        }
+        Participant current =
+            participantDatastore.getParticipantFromUsername(participant.getUsername());
+        if (current == null) {
+          return null;
+        }
+        if (current.getMatchStatus() == MatchStatus.MATCHED) {
+          return current.getMatchId();
+        }
+      } catch (ExecutionException e) {
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /** Drop username from the matching pool, if any, once it is no longer waiting */
+  private void removeFromPool(String username) {
+    if (matchingPool != null) {
+      matchingPool.remove(username);
+    }
+  }
+
+  /** @return time in milliseconds until participant is expired */
+  private long getMillisUntilExpired(Participant participant) {
+    return participant.getExpiryTime() - System.currentTimeMillis();
+  }
+
   /**
    * Check if participant is expired (not enough time before endTimeAvailable to have a meeting of
    * duration with padding time)
@@ -102,12 +307,9 @@ public class SearchMatchHelper {
    * @return true if expired and should be removed, false if still valid
    */
   private boolean isExpired(Participant participant) {
-    long currentTimeMillis = System.currentTimeMillis();
     // Participant is expired if the current time plus duration and padding time is after their
     // endTimeAvailable
-    return (currentTimeMillis
-            + TimeUnit.MINUTES.toMillis(participant.getDuration() + PADDING_MINUTES))
-        > participant.getEndTimeAvailable();
+    return System.currentTimeMillis() > participant.getExpiryTime();
   }
 
   /** Send JSON response for expired participant that has been removed from datastore */
@@ -0,0 +1,74 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.PoolSnapshotDatastore;
+import com.google.sps.matching.MatchingPool;
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Helper for SnapshotPoolServlet, saves a snapshot of the matching pool that cold instances restore
+ * instead of loading every waiting participant
+ */
+public class SnapshotPoolHelper {
+
+  private final MatchingPool matchingPool;
+  private final ParticipantDatastore participantDatastore;
+  private final PoolSnapshotDatastore snapshotDatastore;
+
+  /** Constructor that takes its dependencies from the application context */
+  public SnapshotPoolHelper(AppContext context) {
+    this(
+        context.getMatchingPool(),
+        context.getParticipantDatastore(),
+        context.getPoolSnapshotDatastore());
+  }
+
+  /** Constructor */
+  public SnapshotPoolHelper(
+      MatchingPool matchingPool,
+      ParticipantDatastore participantDatastore,
+      PoolSnapshotDatastore snapshotDatastore) {
+    this.matchingPool = matchingPool;
+    this.participantDatastore = participantDatastore;
+    this.snapshotDatastore = snapshotDatastore;
+  }
+
+  /** Reload the pool and save its snapshot, called periodically by cron */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!CronRequests.isFromCron(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can snapshot the pool.");
+      return;
+    }
+
+    // Full load so the snapshot has every waiting participant as of now
+    matchingPool.loadFrom(participantDatastore);
+    byte[] snapshot = matchingPool.toSnapshot();
+    snapshotDatastore.saveSnapshot(snapshot);
+
+    response.setContentType("text/plain;charset=UTF-8");
+    response
+        .getWriter()
+        .println(
+            "Saved snapshot of "
+                + matchingPool.size()
+                + " participants in "
+                + snapshot.length
+                + " bytes.");
+  }
+}
@@ -0,0 +1,100 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
+import java.io.IOException;
+import java.io.StringReader;
+import java.security.GeneralSecurityException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.json.JSONObject;
+
+/**
+ * Helper for WarmupServlet, brings a new instance to steady state before App Engine sends it user
+ * requests
+ */
+public class WarmupHelper {
+
+  private static final Logger logger = Logger.getLogger(WarmupHelper.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
+  /** Request shaped like add-participant's, parsed so the JSON parsers are loaded */
+  private static final String SAMPLE_REQUEST =
+      "{\"formDetails\":{\"endTimeAvailable\":0,\"duration\":30,\"role\":\"\","
+          + "\"productArea\":\"\",\"interests\":[\"Books\"],\"savePreference\":false,"
+          + "\"matchPreference\":\"any\"}}";
+
+  private final MatchingPool matchingPool;
+  private final ParticipantDatastore participantDatastore;
+  private final GmailFactory gmailFactory;
+
+  /** Constructor that takes its dependencies from the application context */
+  public WarmupHelper(AppContext context) {
+    this(context.getMatchingPool(), context.getParticipantDatastore(), context.getGmailFactory());
+  }
+
+  /** Constructor */
+  public WarmupHelper(
+      MatchingPool matchingPool,
+      ParticipantDatastore participantDatastore,
+      GmailFactory gmailFactory) {
+    this.matchingPool = matchingPool;
+    this.participantDatastore = participantDatastore;
+    this.gmailFactory = gmailFactory;
+  }
+
+  /** Warm up this instance, called by App Engine when the instance starts */
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    long startNanos = System.nanoTime();
+    warmUp();
+    metrics.recordSince(Metrics.WARMUP, startNanos);
+
+    response.setContentType("text/plain;charset=UTF-8");
+    response.getWriter().println("Warmed up with " + matchingPool.size() + " participants pooled.");
+  }
+
+  /**
+   * Load the matching pool and initialize the libraries the first requests use. A failure only
+   * leaves that part to be done by the first request.
+   */
+  public void warmUp() {
+    // Restore or load the pool, which builds its buckets and interns every pooled input
+    try {
+      matchingPool.refreshIfStale(participantDatastore);
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "Could not load matching pool", e);
+    }
+
+    // Load the JSON parser of add-participant, and the writers of load-user and search-match
+    try {
+      AddParticipantRequest.read(new StringReader(SAMPLE_REQUEST), SAMPLE_REQUEST.length());
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not parse sample add-participant request", e);
+    }
+    new JSONObject().toString();
+    new org.json.simple.JSONObject().toJSONString();
+
+    try {
+      gmailFactory.warmUp();
+    } catch (GeneralSecurityException | IOException e) {
+      logger.log(Level.WARNING, "Could not warm up Gmail client", e);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+
+/**
+ * Options of the form's role, product area and interests dropdowns, the only values add-participant
+ * accepts besides a blank role or product area. Must be kept in sync with RoleDropdown.js,
+ * ProductAreaDropdown.js and InterestsDropdown.js in the frontend.
+ */
+public final class FormOptions {
+
+  public static final ImmutableSet<String> ROLES =
+      ImmutableSet.of(
+          "Accountant",
+          "Administrative",
+          "Analyst",
+          "Attorney",
+          "Business strategy consultant",
+          "Communications",
+          "Coordinator",
+          "Corporate development/M&A",
+          "Corporate engineer",
+          "Creative editorial",
+          "Data warehousing",
+          "Developer relations",
+          "General program manager",
+          "Hardware",
+          "HR professional",
+          "Learning and development",
+          "Legal support",
+          "Marketing",
+          "Network engineer and ops",
+          "Ops - business processes",
+          "Ops - data center",
+          "Ops - hardware",
+          "Ops - supply chain and manufacturing",
+          "Partnerships and business development",
+          "Physical security",
+          "Policy",
+          "Product manager",
+          "Quant",
+          "Real estate",
+          "Research scientist",
+          "Sales - account executive",
+          "Sales - account management",
+          "Sales - enterprise",
+          "Sales - new client acquisition",
+          "Sales - services",
+          "Security engineer",
+          "Site reliability engineer",
+          "Software engineer",
+          "Software engineer, tools and infrastructure",
+          "Specialty roles",
+          "Staffing",
+          "System integrator",
+          "Technical client facing",
+          "Technical program manager",
+          "Technical writer",
+          "User experience",
+          "Web developer",
+          "Workplace services");
+
+  public static final ImmutableSet<String> PRODUCT_AREAS =
+      ImmutableSet.of(
+          "Ads",
+          "Area 120",
+          "Cloud",
+          "Commerce",
+          "Community Efforts",
+          "Core",
+          "Corporate Engineering",
+          "Devices and Services",
+          "Geo",
+          "Global Affairs",
+          "Global Business & Operations",
+          "Global Communications & Public Affairs",
+          "Google - advisors",
+          "Google Finance",
+          "Health",
+          "Jigsaw",
+          "Learning & Education",
+          "Marketing",
+          "Next Billion Users",
+          "Payments",
+          "People Operations",
+          "Platforms & Ecosystems",
+          "REWS (Real Estate & Workplace Services)",
+          "Research",
+          "Search",
+          "Waze",
+          "Youtube");
+
+  public static final ImmutableSet<String> INTERESTS =
+      ImmutableSet.of(
+          "Anime/Manga",
+          "Art & Design",
+          "Books",
+          "Current Events",
+          "Entertainment",
+          "Exercise/Fitness",
+          "Food",
+          "Gaming",
+          "Mental Health",
+          "Mindfulness",
+          "Music",
+          "Nature",
+          "Pets",
+          "Public Speaking",
+          "Shopping",
+          "Social Activism",
+          "Sports",
+          "Travel",
+          "Volunteering",
+          "Writing");
+
+  private FormOptions() {}
+
+  /** @return whether role is blank or one of the form's roles */
+  public static boolean isRole(String role) {
+    return role.isEmpty() || ROLES.contains(role);
+  }
+
+  /** @return whether productArea is blank or one of the form's product areas */
+  public static boolean isProductArea(String productArea) {
+    return productArea.isEmpty() || PRODUCT_AREAS.contains(productArea);
+  }
+
+  /** @return whether every one of interests is one of the form's interests */
+  public static boolean areInterests(List<String> interests) {
+    return INTERESTS.containsAll(interests);
+  }
+}
@@ -0,0 +1,168 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide dictionary that interns role, product area and interest values to small integer ids,
+ * so a participant's filled inputs can be stored as a bitset and compared with a popcount. Ids are
+ * only used for matching, participants keep their values as entered. The form's dropdown options
+ * are interned up front, and add-participant rejects any other value, so the dictionary stays
+ * small. Values read back from datastore are interned too, and since values are never evicted the
+ * dictionary is capped: values too long to be an option, or new values once it is full, match as
+ * blank.
+ */
+public final class InputDictionary {
+
+  /** Number of bits in each bitset word */
+  private static final int BITS_PER_WORD = Long.SIZE;
+
+  /** Most values interned, several times the number of dropdown options */
+  public static final int MAX_VALUES = 1024;
+  /** Longest value interned, longer than any dropdown option */
+  public static final int MAX_VALUE_LENGTH = 100;
+
+  /** Interned input value to id */
+  private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+  /** Id to interned input value, only appended to while holding the ids lock */
+  private static final List<String> values = new CopyOnWriteArrayList<>();
+
+  /** Id of the blank value, never set in a bitset */
+  private static final int BLANK_ID = getId("");
+
+  static {
+    FormOptions.ROLES.forEach(InputDictionary::getId);
+    FormOptions.PRODUCT_AREAS.forEach(InputDictionary::getId);
+    FormOptions.INTERESTS.forEach(InputDictionary::getId);
+  }
+
+  private InputDictionary() {}
+
+  /**
+   * @return id of input value, assigning the next free id if value not seen before, or the blank
+   *     value's id if value is longer than MAX_VALUE_LENGTH or the dictionary is full
+   */
+  public static int getId(String value) {
+    Integer id = ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    if (value.length() > MAX_VALUE_LENGTH) {
+      return BLANK_ID;
+    }
+    synchronized (ids) {
+      id = ids.get(value);
+      if (id != null) {
+        return id;
+      }
+      if (values.size() >= MAX_VALUES) {
+        return BLANK_ID;
+      }
+      values.add(value);
+      ids.put(value, values.size() - 1);
+      return values.size() - 1;
+    }
+  }
+
+  /** @return ids of input values, in order */
+  public static int[] getIds(List<String> values) {
+    int[] valueIds = new int[values.size()];
+    for (int i = 0; i < valueIds.length; i++) {
+      valueIds[i] = getId(values.get(i));
+    }
+    return valueIds;
+  }
+
+  /** @return interned input value with id */
+  public static String getValue(int id) {
+    return values.get(id);
+  }
+
+  /** @return unmodifiable list view of the interned input values with ids */
+  public static List<String> getValues(int[] ids) {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return getValue(ids[index]);
+      }
+
+      @Override
+      public int size() {
+        return ids.length;
+      }
+    };
+  }
+
+  /**
+   * @return bitset with one bit set for each non-blank role, product area and interest. Assumes no
+   *     role, PA, or interests have the same options
+   */
+  public static long[] encode(String role, String productArea, List<String> interests) {
+    return encode(getId(role), getId(productArea), getIds(interests));
+  }
+
+  /**
+   * @return bitset with one bit set for each non-blank role, product area and interest id. Assumes
+   *     no role, PA, or interests have the same options
+   */
+  public static long[] encode(int roleId, int productAreaId, int[] interestIds) {
+    long[] bits = new long[0];
+    bits = setBit(bits, roleId);
+    bits = setBit(bits, productAreaId);
+    for (int interestId : interestIds) {
+      bits = setBit(bits, interestId);
+    }
+    return bits;
+  }
+
+  /** @return number of bits set in both bitsets */
+  public static int countShared(long[] firstBits, long[] secondBits) {
+    int numWords = Math.min(firstBits.length, secondBits.length);
+    int count = 0;
+    for (int i = 0; i < numWords; i++) {
+      count += Long.bitCount(firstBits[i] & secondBits[i]);
+    }
+    return count;
+  }
+
+  /** @return number of bits set in bitset */
+  public static int count(long[] bits) {
+    int count = 0;
+    for (long word : bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /** @return bits with id set, grown if needed, or unchanged bits if id is the blank value's */
+  private static long[] setBit(long[] bits, int id) {
+    if (id == BLANK_ID) {
+      return bits;
+    }
+    int word = id / BITS_PER_WORD;
+    if (word >= bits.length) {
+      long[] grown = new long[word + 1];
+      System.arraycopy(bits, 0, grown, 0, bits.length);
+      bits = grown;
+    }
+    bits[word] |= 1L << (id % BITS_PER_WORD);
+    return bits;
+  }
+}
@@ -14,6 +14,8 @@
 
 package com.google.sps.data;
 
+import javax.annotation.Nullable;
+
 /** Represent whether or not a Participant is matched */
 public enum MatchPreference {
   /** Prefer to be matched with different Googler */
@@ -69,4 +71,24 @@ public enum MatchPreference {
         throw new IllegalStateException("Unknown enum String value.");
     }
   }
+
+  /**
+   * @return combined MatchPreference SIMILAR = both are SIMILAR OR one is SIMILAR and one is ANY;
+   *     ANY = both are ANY; DIFFERENT = both are DIFFERENT = one is DIFFERENT and one is ANY. or
+   *     null if match preferences are not compatible
+   */
+  @Nullable
+  public static MatchPreference getCombinedMatchPreference(
+      MatchPreference firstMatchPreference, MatchPreference secondMatchPreference) {
+    if (firstMatchPreference == secondMatchPreference) {
+      return firstMatchPreference;
+    }
+    if (firstMatchPreference == MatchPreference.ANY) {
+      return secondMatchPreference;
+    }
+    if (secondMatchPreference == MatchPreference.ANY) {
+      return firstMatchPreference;
+    }
+    return null;
+  }
 }
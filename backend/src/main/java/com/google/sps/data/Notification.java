@@ -0,0 +1,130 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.base.MoreObjects;
+import javax.annotation.Nullable;
+
+/**
+ * An email waiting in the outbox, telling a participant who they were matched with or that they
+ * expired without a match
+ */
+public final class Notification {
+
+  /** What the email tells its recipient */
+  public enum Type {
+    /** They were matched, with matchedUsername */
+    MATCHED,
+    /** They expired from the queue without a match */
+    EXPIRED
+  }
+
+  private final Type type;
+  /** Match key id, 0 unless MATCHED */
+  private final long matchId;
+  /** Timestamp of the expired participant's form, 0 unless EXPIRED */
+  private final long participantTimestamp;
+  /** Username of the participant emailed */
+  private final String recipientUsername;
+  /** Username of the participant they were matched with, null unless MATCHED */
+  @Nullable private final String matchedUsername;
+  /** Number of times the notification was leased to be sent */
+  private final int attempts;
+
+  private Notification(
+      Type type,
+      long matchId,
+      long participantTimestamp,
+      String recipientUsername,
+      @Nullable String matchedUsername,
+      int attempts) {
+    this.type = type;
+    this.matchId = matchId;
+    this.participantTimestamp = participantTimestamp;
+    this.recipientUsername = recipientUsername;
+    this.matchedUsername = matchedUsername;
+    this.attempts = attempts;
+  }
+
+  /** @return notification telling recipientUsername they were matched with matchedUsername */
+  public static Notification matched(
+      long matchId, String recipientUsername, String matchedUsername, int attempts) {
+    return new Notification(
+        Type.MATCHED,
+        matchId,
+        /* participantTimestamp= */ 0,
+        recipientUsername,
+        matchedUsername,
+        attempts);
+  }
+
+  /**
+   * @return notification telling recipientUsername that their participation with
+   *     participantTimestamp expired
+   */
+  public static Notification expired(
+      String recipientUsername, long participantTimestamp, int attempts) {
+    return new Notification(
+        Type.EXPIRED,
+        /* matchId= */ 0,
+        participantTimestamp,
+        recipientUsername,
+        /* matchedUsername= */ null,
+        attempts);
+  }
+
+  /** @return key unique to this notification, the same however often it is written */
+  public String getDedupeKey() {
+    return type == Type.MATCHED
+        ? "match-" + matchId + "-" + recipientUsername
+        : "expired-" + recipientUsername + "-" + participantTimestamp;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public long getMatchId() {
+    return matchId;
+  }
+
+  public long getParticipantTimestamp() {
+    return participantTimestamp;
+  }
+
+  public String getRecipientUsername() {
+    return recipientUsername;
+  }
+
+  @Nullable
+  public String getMatchedUsername() {
+    return matchedUsername;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+        .add("type", type)
+        .add("matchId", matchId)
+        .add("participantTimestamp", participantTimestamp)
+        .add("recipientUsername", recipientUsername)
+        .add("matchedUsername", matchedUsername)
+        .add("attempts", attempts)
+        .toString();
+  }
+}
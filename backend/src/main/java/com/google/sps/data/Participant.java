@@ -16,11 +16,16 @@ package com.google.sps.data;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /** A user who wants to be matched. */
 public final class Participant {
 
+  /** Extra padding time in minutes to ensure large enough meeting time block */
+  public static final int PADDING_MINUTES = 10;
+
   /** Google username (ldap) */
   private final String username;
   /** Time user starts being available */
@@ -33,8 +38,14 @@ public final class Participant {
   private final String role;
   /** Product area at Google */
   private final String productArea;
-  /** List of interests */
-  private final List<String> interests;
+  /** Interests */
+  private final ImmutableList<String> interests;
+  /** Role interned for matching (see InputDictionary) */
+  private final int roleId;
+  /** Product area interned for matching */
+  private final int productAreaId;
+  /** Interests interned for matching */
+  private final int[] interestIds;
   /** Whether they want to be matched with a similar, any, or different Googler */
   private final MatchPreference matchPreference;
   /** Id of match in datastore, 0 if never found a match (can assign 0 at construction) */
@@ -43,6 +54,10 @@ public final class Participant {
   private final MatchStatus matchStatus;
   /** Time of submitted form */
   private final long timestamp;
+  /** Bitset of interned non-blank role, product area and interests (see InputDictionary) */
+  private final long[] filledInputBits;
+  /** Number of non-blank role, product area and interests */
+  private final int numFilledInputs;
 
   /** Initialize constructor fields */
   public Participant(
@@ -57,6 +72,74 @@ public final class Participant {
       long matchId,
       MatchStatus matchStatus,
       long timestamp) {
+    this(
+        username,
+        startTimeAvailable,
+        endTimeAvailable,
+        duration,
+        role,
+        productArea,
+        ImmutableList.copyOf(interests),
+        InputDictionary.getId(role),
+        InputDictionary.getId(productArea),
+        InputDictionary.getIds(interests),
+        matchPreference,
+        matchId,
+        matchStatus,
+        timestamp);
+  }
+
+  /**
+   * @return participant with role, product area and interests already interned in InputDictionary,
+   *     and its values read back from the dictionary. A value the dictionary could not hold reads
+   *     back blank, so such participants are only fit for matching and must not be written.
+   *     interestIds is held, not copied, and must not be modified afterwards.
+   */
+  public static Participant fromInterned(
+      String username,
+      long startTimeAvailable,
+      long endTimeAvailable,
+      int duration,
+      int roleId,
+      int productAreaId,
+      int[] interestIds,
+      MatchPreference matchPreference,
+      long matchId,
+      MatchStatus matchStatus,
+      long timestamp) {
+    return new Participant(
+        username,
+        startTimeAvailable,
+        endTimeAvailable,
+        duration,
+        InputDictionary.getValue(roleId),
+        InputDictionary.getValue(productAreaId),
+        ImmutableList.copyOf(InputDictionary.getValues(interestIds)),
+        roleId,
+        productAreaId,
+        interestIds,
+        matchPreference,
+        matchId,
+        matchStatus,
+        timestamp);
+  }
+
+  /** Initialize fields with role, product area and interests and their interned ids */
+  private Participant(
+      String username,
+      long startTimeAvailable,
+      long endTimeAvailable,
+      int duration,
+      String role,
+      String productArea,
+      ImmutableList<String> interests,
+      int roleId,
+      int productAreaId,
+      int[] interestIds,
+      MatchPreference matchPreference,
+      long matchId,
+      MatchStatus matchStatus,
+      long timestamp) {
     this.username = username;
     Preconditions.checkArgument(
         startTimeAvailable < endTimeAvailable,
@@ -67,10 +150,15 @@ public final class Participant {
     this.role = role;
     this.productArea = productArea;
     this.interests = interests;
+    this.roleId = roleId;
+    this.productAreaId = productAreaId;
+    this.interestIds = interestIds;
     this.matchPreference = matchPreference;
     this.matchId = matchId;
     this.matchStatus = matchStatus;
     this.timestamp = timestamp;
+    this.filledInputBits = InputDictionary.encode(roleId, productAreaId, interestIds);
+    this.numFilledInputs = InputDictionary.count(filledInputBits);
   }
 
   public String getUsername() {
@@ -97,6 +185,7 @@ public final class Participant {
     return productArea;
   }
 
+  /** @return unmodifiable list of interests */
   public List<String> getInterests() {
     return interests;
   }
@@ -117,6 +206,43 @@ public final class Participant {
     return timestamp;
   }
 
+  /**
+   * @return time after which there is not enough time before endTimeAvailable for a meeting of
+   *     duration with padding time
+   */
+  public long getExpiryTime() {
+    return endTimeAvailable - TimeUnit.MINUTES.toMillis(duration + PADDING_MINUTES);
+  }
+
+  /** @return interned role id */
+  public int getRoleId() {
+    return roleId;
+  }
+
+  /** @return interned product area id */
+  public int getProductAreaId() {
+    return productAreaId;
+  }
+
+  /** @return copy of interned interest ids */
+  public int[] getInterestIds() {
+    return interestIds.clone();
+  }
+
+  /** @return copy of bitset of interned non-blank role, product area and interests */
+  public long[] getFilledInputBits() {
+    return filledInputBits.clone();
+  }
+
+  public int getNumFilledInputs() {
+    return numFilledInputs;
+  }
+
+  /** @return number of filled inputs (role, product area, interests) shared with other */
+  public int getNumSharedFilledInputs(Participant other) {
+    return InputDictionary.countShared(filledInputBits, other.filledInputBits);
+  }
+
   /** Return participant with new matchId and nulled out availability */
   public Participant foundMatch(long newMatchId) {
     return new Participant(
@@ -127,6 +253,9 @@ public final class Participant {
         role,
         productArea,
         interests,
+        roleId,
+        productAreaId,
+        interestIds,
         matchPreference,
         newMatchId,
         MatchStatus.MATCHED,
@@ -15,6 +15,7 @@
 package com.google.sps.data;
 
 import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
 import java.util.List;
 
 /** A user with saved preferences. */
@@ -28,8 +29,8 @@ public final class User {
   private final String role;
   /** Product area at Google */
   private final String productArea;
-  /** List of interests */
-  private final List<String> interests;
+  /** Interests */
+  private final ImmutableList<String> interests;
   /** Whether they want to be matched with a similar, any, or different Googler */
   private final MatchPreference matchPreference;
 
@@ -45,7 +46,7 @@ public final class User {
     this.duration = duration;
     this.role = role;
     this.productArea = productArea;
-    this.interests = interests;
+    this.interests = ImmutableList.copyOf(interests);
     this.matchPreference = matchPreference;
   }
 
@@ -65,6 +66,7 @@ public final class User {
     return productArea;
   }
 
+  /** @return unmodifiable list of interests */
   public List<String> getInterests() {
     return interests;
   }
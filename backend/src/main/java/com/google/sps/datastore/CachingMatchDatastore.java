@@ -0,0 +1,60 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.datastore;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.sps.data.Match;
+import javax.annotation.Nullable;
+
+/**
+ * MatchDatastore that keeps matches read by id in an in-process LRU cache. Match entities are never
+ * changed once written, so cached matches don't expire.
+ */
+public class CachingMatchDatastore extends MatchDatastore {
+
+  /** Default most matches cached */
+  public static final long DEFAULT_MAX_SIZE = 10_000;
+
+  /** Match id -> match read from datastore, ids not in datastore aren't cached */
+  private final Cache<Long, Match> matchesById;
+
+  /** Constructor */
+  public CachingMatchDatastore(DatastoreService datastore, long maxSize) {
+    super(datastore);
+    this.matchesById = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  @Override
+  public long addMatch(Match match) {
+    long matchId = super.addMatch(match);
+    matchesById.put(matchId, match);
+    return matchId;
+  }
+
+  @Override
+  @Nullable
+  public Match getMatchFromId(long matchId) {
+    Match match = matchesById.getIfPresent(matchId);
+    if (match == null) {
+      match = super.getMatchFromId(matchId);
+      if (match != null) {
+        matchesById.put(matchId, match);
+      }
+    }
+    return match;
+  }
+}
@@ -0,0 +1,92 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.datastore;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.sps.data.Participant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * ParticipantDatastore that keeps participants read by username in an in-process LRU cache for a
+ * short time. Writes through this datastore, and match commits through a MatchDatastore given this
+ * datastore, invalidate the cached participant; writes from other instances are picked up once the
+ * entry expires.
+ */
+public class CachingParticipantDatastore extends ParticipantDatastore {
+
+  /** Default time a participant stays cached after being read */
+  public static final long DEFAULT_TTL_MILLIS = 5_000;
+  /** Default most participants cached */
+  public static final long DEFAULT_MAX_SIZE = 10_000;
+
+  /** Username -> participant read from datastore, participants not in datastore aren't cached */
+  private final Cache<String, Participant> participantsByUsername;
+
+  /** Constructor */
+  public CachingParticipantDatastore(
+      DatastoreService datastore, Ticker ticker, long ttlMillis, long maxSize) {
+    super(datastore);
+    this.participantsByUsername =
+        CacheBuilder.newBuilder()
+            .ticker(ticker)
+            .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+            .maximumSize(maxSize)
+            .build();
+  }
+
+  @Override
+  public void addParticipant(Participant participant) {
+    super.addParticipant(participant);
+    participantsByUsername.invalidate(participant.getUsername());
+  }
+
+  @Override
+  @Nullable
+  public Participant getParticipantFromUsername(String username) {
+    Participant participant = participantsByUsername.getIfPresent(username);
+    if (participant == null) {
+      participant = super.getParticipantFromUsername(username);
+      if (participant != null) {
+        participantsByUsername.put(username, participant);
+      }
+    }
+    return participant;
+  }
+
+  @Override
+  public void removeParticipant(String username) {
+    super.removeParticipant(username);
+    participantsByUsername.invalidate(username);
+  }
+
+  @Override
+  public List<Participant> removeExpiredParticipants(
+      List<String> usernames, long currentTimeMillis) {
+    List<Participant> removed = super.removeExpiredParticipants(usernames, currentTimeMillis);
+    // Those not removed were matched or changed since they were cached
+    invalidate(usernames);
+    return removed;
+  }
+
+  /** Drop the cached participants of usernames, so they are read again from datastore */
+  public void invalidate(Iterable<String> usernames) {
+    participantsByUsername.invalidateAll(usernames);
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.datastore;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes the interests property of Participant and User entities. Interests are stored as
+ * an indexed multi-valued list property; entities written before that store them as one
+ * comma-joined String, which is still read and is rewritten by migrateLegacy.
+ */
+final class InterestsProperty {
+
+  private static final Logger logger = Logger.getLogger(InterestsProperty.class.getName());
+
+  /** Name of the interests property */
+  static final String NAME = "interests";
+
+  /** Most entities migrated in one cross-group transaction, which can touch 25 entity groups */
+  private static final int MAX_MIGRATIONS_PER_TRANSACTION = 25;
+  /** Keys fetched per batch while scanning a kind for legacy entities */
+  private static final int SCAN_CHUNK_SIZE = 500;
+
+  private InterestsProperty() {}
+
+  /** Set interests property of entity to a list property of interests */
+  static void set(Entity entity, List<String> interests) {
+    // Datastore stores an empty list as null, read back as no interests
+    entity.setProperty(NAME, new ArrayList<>(interests));
+  }
+
+  /** @return interests of entity, from a list property or a legacy comma-joined String */
+  @SuppressWarnings("unchecked")
+  static List<String> get(Entity entity) {
+    Object value = entity.getProperty(NAME);
+    if (value == null) {
+      return Collections.emptyList();
+    }
+    if (value instanceof String) {
+      return parseLegacy((String) value);
+    }
+    return new ArrayList<>((Collection<String>) value);
+  }
+
+  /** @return interests of a legacy comma-joined String, where no interests were stored as "" */
+  private static List<String> parseLegacy(String value) {
+    if (value.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(value.split(","));
+  }
+
+  /**
+   * Rewrite the interests of entities of kind still stored as a comma-joined String as a list
+   * property. Each batch is read and written in one transaction so concurrent writes aren't lost; a
+   * batch that hits a concurrent modification is left for the next run.
+   *
+   * @return number of entities migrated
+   */
+  static int migrateLegacy(DatastoreService datastore, String kind) {
+    Iterable<Key> keys =
+        Iterables.transform(
+            datastore
+                .prepare(new Query(kind).setKeysOnly())
+                .asIterable(FetchOptions.Builder.withChunkSize(SCAN_CHUNK_SIZE)),
+            Entity::getKey);
+    int numMigrated = 0;
+    for (List<Key> batch : Iterables.partition(keys, MAX_MIGRATIONS_PER_TRANSACTION)) {
+      numMigrated += migrateBatch(datastore, batch);
+    }
+    return numMigrated;
+  }
+
+  /** @return number of legacy entities with keys migrated in one transaction */
+  private static int migrateBatch(DatastoreService datastore, List<Key> keys) {
+    Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+    try {
+      List<Entity> legacyEntities = new ArrayList<>();
+      for (Entity entity : datastore.get(transaction, keys).values()) {
+        if (entity.getProperty(NAME) instanceof String) {
+          set(entity, get(entity));
+          legacyEntities.add(entity);
+        }
+      }
+      if (legacyEntities.isEmpty()) {
+        return 0;
+      }
+      datastore.put(transaction, legacyEntities);
+      transaction.commit();
+      return legacyEntities.size();
+    } catch (ConcurrentModificationException e) {
+      logger.fine(() -> "Skipped migrating interests of entities changed meanwhile: " + keys);
+      return 0;
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+  }
+}
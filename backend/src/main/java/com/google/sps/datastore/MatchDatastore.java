@@ -19,32 +19,83 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.base.Preconditions;
 import com.google.sps.data.Match;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 /** Separates datastore method calls involving Match type from caller */
 public class MatchDatastore {
 
+  private static final Metrics metrics = Metrics.shared();
+
   // Datastore Key/Property constants
-  private static final String KIND_MATCH = "Match";
+  static final String KIND_MATCH = "Match";
   private static final String PROPERTY_FIRST_PARTICIPANT_USERNAME = "firstParticipantUsername";
   private static final String PROPERTY_SECOND_PARTICIPANT_USERNAME = "secondParticipantUsername";
   private static final String PROPERTY_DURATION = "duration";
   private static final String PROPERTY_TIMESTAMP = "timestamp";
 
+  /**
+   * Most matches committed in one transaction, each touches 3 entity groups and a cross-group
+   * transaction can touch at most 25
+   */
+  private static final int MAX_MATCHES_PER_TRANSACTION = 8;
+
+  /** Default number of times a match commit is tried before giving up on contention */
+  public static final int DEFAULT_MAX_COMMIT_ATTEMPTS = 3;
+
   /** Datastore */
   private final DatastoreService datastore;
+  /** Number of times a match commit is tried before giving up on contention */
+  private final int maxCommitAttempts;
+  /** Participant cache invalidated for participants claimed by a commit, or null if none */
+  @Nullable private final CachingParticipantDatastore participantCache;
 
   /** Constructor that takes in DatastoreService */
   public MatchDatastore(DatastoreService datastore) {
+    this(datastore, DEFAULT_MAX_COMMIT_ATTEMPTS);
+  }
+
+  /** Constructor that takes in DatastoreService and number of tries per match commit */
+  public MatchDatastore(DatastoreService datastore, int maxCommitAttempts) {
+    this(datastore, maxCommitAttempts, /* participantCache= */ null);
+  }
+
+  /**
+   * Constructor that takes in DatastoreService, number of tries per match commit and the
+   * participant cache to invalidate for participants a commit claimed
+   */
+  public MatchDatastore(
+      DatastoreService datastore,
+      int maxCommitAttempts,
+      @Nullable CachingParticipantDatastore participantCache) {
+    Preconditions.checkArgument(maxCommitAttempts > 0, "maxCommitAttempts must be positive");
     this.datastore = datastore;
+    this.maxCommitAttempts = maxCommitAttempts;
+    this.participantCache = participantCache;
   }
 
   /** Return entity created from match */
   private static Entity createEntityFromMatch(Match match) {
+    return createEntityFromMatch(new Entity(KIND_MATCH), match);
+  }
+
+  /** Return entity with properties set from match */
+  private static Entity createEntityFromMatch(Entity entity, Match match) {
     // Set properties of entity
-    Entity entity = new Entity(KIND_MATCH);
     entity.setProperty(PROPERTY_FIRST_PARTICIPANT_USERNAME, match.getFirstParticipantUsername());
     entity.setProperty(PROPERTY_SECOND_PARTICIPANT_USERNAME, match.getSecondParticipantUsername());
     entity.setProperty(PROPERTY_DURATION, match.getDuration());
@@ -62,6 +113,173 @@ public class MatchDatastore {
     return entity.getKey().getId();
   }
 
+  /**
+   * Put match, newParticipant and waitingParticipant as matched, and a pending notification for
+   * each participant, all in one cross-group transaction. The commit only goes through if
+   * waitingParticipant is still in datastore unmatched and unchanged since it was read, so two
+   * requests can't both claim it. Tried again on concurrent modification, up to the max commit
+   * attempts.
+   *
+   * @return match key id, or null if waitingParticipant was claimed or changed, or contention
+   *     outlasted the max commit attempts
+   */
+  @Nullable
+  public Long commitMatch(Match match, Participant newParticipant, Participant waitingParticipant) {
+    return commitInTransaction(
+        Collections.singletonList(match),
+        Collections.singletonList(newParticipant),
+        Collections.singletonList(waitingParticipant),
+        /* claimFirstParticipants= */ false)[0];
+  }
+
+  /**
+   * Put each match and both of its participants as matched, with a pending notification for each
+   * participant, where the participants at the same index are the match's first and second
+   * participants as read from datastore. Matches are committed in cross-group transactions of up to
+   * MAX_MATCHES_PER_TRANSACTION, and a match only goes through if both participants are still
+   * unmatched and unchanged in datastore.
+   *
+   * @return match key ids in order, with null for each match that was not committed
+   */
+  public List<Long> commitMatches(
+      List<Match> matches,
+      List<Participant> firstParticipants,
+      List<Participant> secondParticipants) {
+    Preconditions.checkArgument(
+        matches.size() == firstParticipants.size() && matches.size() == secondParticipants.size(),
+        "Need first and second participant for each match");
+    List<Long> matchIds = new ArrayList<>(matches.size());
+    for (int start = 0; start < matches.size(); start += MAX_MATCHES_PER_TRANSACTION) {
+      int end = Math.min(start + MAX_MATCHES_PER_TRANSACTION, matches.size());
+      matchIds.addAll(
+          Arrays.asList(
+              commitInTransaction(
+                  matches.subList(start, end),
+                  firstParticipants.subList(start, end),
+                  secondParticipants.subList(start, end),
+                  /* claimFirstParticipants= */ true)));
+    }
+    return matchIds;
+  }
+
+  /**
+   * Commit matches and their participants in one cross-group transaction, skipping matches whose
+   * claimed participants are no longer unmatched and unchanged. Second participants are always
+   * claimed, first participants only if claimFirstParticipants. Tried again on concurrent
+   * modification, up to the max commit attempts. Afterwards every participant passed in is dropped
+   * from the participant cache, if any.
+   *
+   * @return match key ids in order, with null for each match that was not committed
+   */
+  private Long[] commitInTransaction(
+      List<Match> matches,
+      List<Participant> firstParticipants,
+      List<Participant> secondParticipants,
+      boolean claimFirstParticipants) {
+    try {
+      return tryCommitInTransaction(
+          matches, firstParticipants, secondParticipants, claimFirstParticipants);
+    } finally {
+      // Whether committed or not, the cached versions may be behind what the commit read
+      if (participantCache != null) {
+        participantCache.invalidate(getUsernames(firstParticipants));
+        participantCache.invalidate(getUsernames(secondParticipants));
+      }
+    }
+  }
+
+  /** Commit matches as described in commitInTransaction, without touching the participant cache */
+  private Long[] tryCommitInTransaction(
+      List<Match> matches,
+      List<Participant> firstParticipants,
+      List<Participant> secondParticipants,
+      boolean claimFirstParticipants) {
+    Long[] matchIds = new Long[matches.size()];
+    List<Key> matchKeys = new ArrayList<>(matches.size());
+    datastore.allocateIds(KIND_MATCH, matches.size()).forEach(matchKeys::add);
+
+    // Participants whose datastore entity must still match what was read
+    List<Key> claimedKeys = new ArrayList<>();
+    for (int i = 0; i < matches.size(); i++) {
+      if (claimFirstParticipants) {
+        claimedKeys.add(ParticipantDatastore.createKey(firstParticipants.get(i).getUsername()));
+      }
+      claimedKeys.add(ParticipantDatastore.createKey(secondParticipants.get(i).getUsername()));
+    }
+
+    for (int attempt = 1; attempt <= maxCommitAttempts; attempt++) {
+      Arrays.fill(matchIds, null);
+      long startNanos = System.nanoTime();
+      Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        Map<Key, Entity> current = datastore.get(transaction, claimedKeys);
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+          // Claimed participants are written back as read, not as passed in, which may be a
+          // pooled copy that only holds what matching needs
+          Participant first =
+              claimFirstParticipants
+                  ? getIfUnchangedAndUnmatched(current, firstParticipants.get(i))
+                  : firstParticipants.get(i);
+          Participant second = getIfUnchangedAndUnmatched(current, secondParticipants.get(i));
+          if (first == null || second == null) {
+            continue;
+          }
+          long matchId = matchKeys.get(i).getId();
+          entities.add(createEntityFromMatch(new Entity(matchKeys.get(i)), matches.get(i)));
+          entities.add(ParticipantDatastore.createEntityFromParticipant(first.foundMatch(matchId)));
+          entities.add(
+              ParticipantDatastore.createEntityFromParticipant(second.foundMatch(matchId)));
+          // In the match's entity group, so notifications add no groups to the transaction
+          entities.addAll(
+              OutboxDatastore.createEntitiesFromMatch(matchKeys.get(i), matches.get(i)));
+          matchIds[i] = matchId;
+        }
+        if (entities.isEmpty()) {
+          return matchIds;
+        }
+        datastore.put(transaction, entities);
+        transaction.commit();
+        return matchIds;
+      } catch (ConcurrentModificationException e) {
+        metrics.increment(Metrics.MATCH_COMMIT_CONFLICTS);
+        if (attempt < maxCommitAttempts) {
+          metrics.increment(Metrics.MATCH_COMMIT_RETRIES);
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+        metrics.recordSince(Metrics.DATASTORE_MATCH_COMMIT, startNanos);
+      }
+    }
+    Arrays.fill(matchIds, null);
+    return matchIds;
+  }
+
+  /** Return usernames of participants */
+  private static List<String> getUsernames(List<Participant> participants) {
+    return participants.stream().map(Participant::getUsername).collect(Collectors.toList());
+  }
+
+  /**
+   * Return participant as read from its current datastore entity if it is unmatched and has the
+   * same timestamp as expected, otherwise null (compare-and-set on match status)
+   */
+  @Nullable
+  private static Participant getIfUnchangedAndUnmatched(
+      Map<Key, Entity> current, Participant expected) {
+    Entity entity = current.get(ParticipantDatastore.createKey(expected.getUsername()));
+    if (entity == null) {
+      return null;
+    }
+    Participant participant = ParticipantDatastore.getParticipantFromEntity(entity);
+    return participant.getMatchStatus() == MatchStatus.UNMATCHED
+            && participant.getTimestamp() == expected.getTimestamp()
+        ? participant
+        : null;
+  }
+
   /** Return Match from entity, or null if entity is null */
   private static Match getMatchFromEntity(@Nonnull Entity entity) {
     return new Match(
@@ -75,10 +293,13 @@ public class MatchDatastore {
   @Nullable
   public Match getMatchFromId(long matchId) {
     Key matchKey = KeyFactory.createKey(KIND_MATCH, matchId);
+    long startNanos = System.nanoTime();
     try {
       return getMatchFromEntity(datastore.get(matchKey));
     } catch (EntityNotFoundException e) {
       return null;
+    } finally {
+      metrics.recordSince(Metrics.DATASTORE_MATCH_GET, startNanos);
     }
   }
 }
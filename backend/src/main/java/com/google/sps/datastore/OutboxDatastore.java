@@ -0,0 +1,243 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.datastore;
+
+import com.google.appengine.api.datastore.DatastoreNeedIndexException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.collect.Lists;
+import com.google.sps.data.Match;
+import com.google.sps.data.Notification;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Separates datastore method calls involving Outbox notification entities from caller. A match
+ * notification is written with its match, as a child of the match entity, and an expired
+ * notification with the removal of its participant, as a child of the participant entity. Both are
+ * keyed by their dedupe key, so a retried commit rewrites them rather than adding another. Senders
+ * lease pending notifications, so two senders never hold the same one, and a notification whose
+ * sender died is leased again once its lease expires.
+ */
+public class OutboxDatastore {
+
+  private static final Logger logger = Logger.getLogger(OutboxDatastore.class.getName());
+
+  // Datastore Key/Property constants
+  private static final String KIND_OUTBOX = "Outbox";
+  private static final String PROPERTY_TYPE = "type";
+  private static final String PROPERTY_MATCH_ID = "matchId";
+  private static final String PROPERTY_PARTICIPANT_TIMESTAMP = "participantTimestamp";
+  private static final String PROPERTY_RECIPIENT_USERNAME = "recipientUsername";
+  private static final String PROPERTY_MATCHED_USERNAME = "matchedUsername";
+  private static final String PROPERTY_STATUS = "status";
+  private static final String PROPERTY_ATTEMPTS = "attempts";
+  private static final String PROPERTY_LEASE_EXPIRY = "leaseExpiry";
+
+  // Status values
+  private static final String STATUS_PENDING = "pending";
+  private static final String STATUS_SENT = "sent";
+  private static final String STATUS_FAILED = "failed";
+
+  /** Most notifications leased in one cross-group transaction, which can touch 25 entity groups */
+  private static final int MAX_LEASES_PER_TRANSACTION = 25;
+
+  /** Datastore */
+  private final DatastoreService datastore;
+
+  /** Constructor that takes in DatastoreService */
+  public OutboxDatastore(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  /** Return pending notification entities for both participants of match with matchKey */
+  static List<Entity> createEntitiesFromMatch(Key matchKey, Match match) {
+    String firstUsername = match.getFirstParticipantUsername();
+    String secondUsername = match.getSecondParticipantUsername();
+    return Arrays.asList(
+        createPendingEntity(
+            Notification.matched(matchKey.getId(), firstUsername, secondUsername, 0), matchKey),
+        createPendingEntity(
+            Notification.matched(matchKey.getId(), secondUsername, firstUsername, 0), matchKey));
+  }
+
+  /**
+   * Return pending notification entity for participant with participantKey and participantTimestamp
+   * expiring without a match
+   */
+  static Entity createEntityFromExpired(Key participantKey, long participantTimestamp) {
+    return createPendingEntity(
+        Notification.expired(participantKey.getName(), participantTimestamp, 0), participantKey);
+  }
+
+  /** Return pending entity of notification, child of the entity with parentKey */
+  private static Entity createPendingEntity(Notification notification, Key parentKey) {
+    Entity entity = new Entity(KIND_OUTBOX, notification.getDedupeKey(), parentKey);
+    entity.setUnindexedProperty(PROPERTY_TYPE, notification.getType().name());
+    entity.setUnindexedProperty(PROPERTY_MATCH_ID, notification.getMatchId());
+    entity.setUnindexedProperty(
+        PROPERTY_PARTICIPANT_TIMESTAMP, notification.getParticipantTimestamp());
+    entity.setUnindexedProperty(PROPERTY_RECIPIENT_USERNAME, notification.getRecipientUsername());
+    entity.setUnindexedProperty(PROPERTY_MATCHED_USERNAME, notification.getMatchedUsername());
+    entity.setProperty(PROPERTY_STATUS, STATUS_PENDING);
+    entity.setUnindexedProperty(PROPERTY_ATTEMPTS, (long) notification.getAttempts());
+    // Leasable right away
+    entity.setProperty(PROPERTY_LEASE_EXPIRY, 0L);
+    return entity;
+  }
+
+  /** Return key of notification's entity */
+  private static Key createKey(Notification notification) {
+    Key parentKey =
+        notification.getType() == Notification.Type.MATCHED
+            ? KeyFactory.createKey(MatchDatastore.KIND_MATCH, notification.getMatchId())
+            : ParticipantDatastore.createKey(notification.getRecipientUsername());
+    return KeyFactory.createKey(parentKey, KIND_OUTBOX, notification.getDedupeKey());
+  }
+
+  /** Return notification from entity, which is a match notification if written without a type */
+  private static Notification getNotificationFromEntity(Entity entity) {
+    String recipientUsername = (String) entity.getProperty(PROPERTY_RECIPIENT_USERNAME);
+    int attempts = ((Long) entity.getProperty(PROPERTY_ATTEMPTS)).intValue();
+    if (Notification.Type.EXPIRED.name().equals(entity.getProperty(PROPERTY_TYPE))) {
+      return Notification.expired(
+          recipientUsername, (long) entity.getProperty(PROPERTY_PARTICIPANT_TIMESTAMP), attempts);
+    }
+    return Notification.matched(
+        (long) entity.getProperty(PROPERTY_MATCH_ID),
+        recipientUsername,
+        (String) entity.getProperty(PROPERTY_MATCHED_USERNAME),
+        attempts);
+  }
+
+  /**
+   * Return keys of up to limit entities with status whose lease expired before currentTimeMillis
+   */
+  private List<Key> getKeysWithExpiredLease(String status, long currentTimeMillis, int limit)
+      throws DatastoreNeedIndexException {
+    Query query =
+        new Query(KIND_OUTBOX)
+            .setKeysOnly()
+            .setFilter(
+                CompositeFilterOperator.and(
+                    new FilterPredicate(PROPERTY_STATUS, FilterOperator.EQUAL, status),
+                    new FilterPredicate(
+                        PROPERTY_LEASE_EXPIRY, FilterOperator.LESS_THAN, currentTimeMillis)));
+    return datastore.prepare(query).asList(FetchOptions.Builder.withLimit(limit)).stream()
+        .map(Entity::getKey)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Lease up to limit pending notifications not leased at currentTimeMillis, each until leaseMillis
+   * times 2 to the power of its previous attempts from now, so notifications that keep failing are
+   * tried less often. Leases are taken in cross-group transactions that re-check each lease, and a
+   * batch that hits a concurrent modification is left for the next call. Needs the composite index
+   * on status and leaseExpiry declared in datastore-indexes.xml.
+   *
+   * @return leased notifications, with attempts counting this lease
+   */
+  public List<Notification> leasePending(long currentTimeMillis, long leaseMillis, int limit)
+      throws DatastoreNeedIndexException {
+    List<Key> keys = getKeysWithExpiredLease(STATUS_PENDING, currentTimeMillis, limit);
+    List<Notification> leased = new ArrayList<>();
+    for (List<Key> batch : Lists.partition(keys, MAX_LEASES_PER_TRANSACTION)) {
+      Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        List<Entity> entities = new ArrayList<>();
+        for (Entity entity : datastore.get(transaction, batch).values()) {
+          if (!STATUS_PENDING.equals(entity.getProperty(PROPERTY_STATUS))
+              || (long) entity.getProperty(PROPERTY_LEASE_EXPIRY) >= currentTimeMillis) {
+            continue;
+          }
+          int attempts = ((Long) entity.getProperty(PROPERTY_ATTEMPTS)).intValue();
+          entity.setUnindexedProperty(PROPERTY_ATTEMPTS, (long) attempts + 1);
+          entity.setProperty(
+              PROPERTY_LEASE_EXPIRY, currentTimeMillis + (leaseMillis << Math.min(attempts, 16)));
+          entities.add(entity);
+        }
+        datastore.put(transaction, entities);
+        transaction.commit();
+        entities.stream().map(OutboxDatastore::getNotificationFromEntity).forEach(leased::add);
+      } catch (ConcurrentModificationException e) {
+        logger.fine(() -> "Skipped leasing notifications changed meanwhile: " + batch);
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    return leased;
+  }
+
+  /** Mark notifications as sent, so they are never leased again */
+  public void markSent(List<Notification> notifications) {
+    setStatus(notifications, STATUS_SENT);
+  }
+
+  /** Mark notifications as failed for good, so they are never leased again */
+  public void markFailed(List<Notification> notifications) {
+    setStatus(notifications, STATUS_FAILED);
+  }
+
+  /** Set status of notifications' entities still in datastore */
+  private void setStatus(List<Notification> notifications, String status) {
+    if (notifications.isEmpty()) {
+      return;
+    }
+    List<Key> keys =
+        notifications.stream().map(OutboxDatastore::createKey).collect(Collectors.toList());
+    Map<Key, Entity> entities = datastore.get(keys);
+    for (Entity entity : entities.values()) {
+      entity.setProperty(PROPERTY_STATUS, status);
+    }
+    datastore.put(entities.values());
+  }
+
+  /**
+   * Count pending notifications, leased or not, with a keys-only query on the same index as
+   * leasePending
+   *
+   * @return number of pending notifications, at most limit
+   */
+  public int countPending(int limit) throws DatastoreNeedIndexException {
+    return getKeysWithExpiredLease(STATUS_PENDING, Long.MAX_VALUE, limit).size();
+  }
+
+  /**
+   * Delete up to limit sent notifications whose last lease expired before minLeaseExpiry
+   *
+   * @return number of notifications deleted
+   */
+  public int deleteSentBefore(long minLeaseExpiry, int limit) throws DatastoreNeedIndexException {
+    List<Key> keys = getKeysWithExpiredLease(STATUS_SENT, minLeaseExpiry, limit);
+    datastore.delete(keys);
+    return keys.size();
+  }
+}
@@ -14,6 +14,7 @@
 
 package com.google.sps.datastore;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreNeedIndexException;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.Entity;
@@ -21,17 +22,31 @@ import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.CompositeFilter;
 import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.MatchStatus;
 import com.google.sps.data.Participant;
-import java.util.Arrays;
+import com.google.sps.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -39,6 +54,9 @@ import javax.annotation.Nullable;
 /** Separates datastore method calls involving Participant type from caller */
 public class ParticipantDatastore {
 
+  private static final Logger logger = Logger.getLogger(ParticipantDatastore.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
   // Datastore Key/Property constants
   private static final String KIND_PARTICIPANT = "Participant";
   private static final String PROPERTY_USERNAME = "username";
@@ -47,35 +65,63 @@ public class ParticipantDatastore {
   private static final String PROPERTY_DURATION = "duration";
   private static final String PROPERTY_ROLE = "role";
   private static final String PROPERTY_PRODUCT_AREA = "productArea";
-  private static final String PROPERTY_INTERESTS = "interests";
   private static final String PROPERTY_MATCH_PREFERENCE = "matchPreference";
   private static final String PROPERTY_MATCH_ID = "matchId";
   private static final String PROPERTY_MATCH_STATUS = "matchStatus";
   private static final String PROPERTY_TIMESTAMP = "timestamp";
+  private static final String PROPERTY_EXPIRY_TIME = "expiryTime";
+
+  /** Most participants removed in one cross-group transaction, which can touch 25 entity groups */
+  private static final int MAX_REMOVALS_PER_TRANSACTION = 25;
+
+  /** Default number of candidates in the first page, most searches stop within it */
+  public static final int DEFAULT_PREFETCH_SIZE = 20;
+  /** Default number of candidates in each page after the first */
+  public static final int DEFAULT_FETCH_CHUNK_SIZE = 100;
 
   /** Datastore */
   private final DatastoreService datastore;
+  /** Number of candidates in the first page */
+  private final int prefetchSize;
+  /** Number of candidates in each page after the first */
+  private final int fetchChunkSize;
 
   /** Constructor that takes in DatastoreService */
   public ParticipantDatastore(DatastoreService datastore) {
+    this(datastore, DEFAULT_PREFETCH_SIZE, DEFAULT_FETCH_CHUNK_SIZE);
+  }
+
+  /** Constructor that takes in DatastoreService and candidate page sizes */
+  public ParticipantDatastore(DatastoreService datastore, int prefetchSize, int fetchChunkSize) {
+    Preconditions.checkArgument(prefetchSize > 0, "prefetchSize must be positive");
+    Preconditions.checkArgument(fetchChunkSize > 0, "fetchChunkSize must be positive");
     this.datastore = datastore;
+    this.prefetchSize = prefetchSize;
+    this.fetchChunkSize = fetchChunkSize;
+  }
+
+  /** Return participant entity key for username */
+  static Key createKey(String username) {
+    return KeyFactory.createKey(KIND_PARTICIPANT, username);
   }
 
   /** Return entity created from participant */
-  private static Entity createEntityFromParticipant(Participant participant) {
+  static Entity createEntityFromParticipant(Participant participant) {
     // Set properties of entity based on participant fields
-    Entity entity = new Entity(KIND_PARTICIPANT, participant.getUsername());
+    Entity entity = new Entity(createKey(participant.getUsername()));
     entity.setProperty(PROPERTY_USERNAME, participant.getUsername());
     entity.setProperty(PROPERTY_START_TIME_AVAILABLE, participant.getStartTimeAvailable());
     entity.setProperty(PROPERTY_END_TIME_AVAILABLE, participant.getEndTimeAvailable());
     entity.setProperty(PROPERTY_DURATION, participant.getDuration());
     entity.setProperty(PROPERTY_ROLE, participant.getRole());
     entity.setProperty(PROPERTY_PRODUCT_AREA, participant.getProductArea());
-    entity.setProperty(PROPERTY_INTERESTS, convertListToString(participant.getInterests()));
+    InterestsProperty.set(entity, participant.getInterests());
     entity.setProperty(PROPERTY_MATCH_PREFERENCE, participant.getMatchPreference().getValue());
     entity.setProperty(PROPERTY_MATCH_ID, participant.getMatchId());
     entity.setProperty(PROPERTY_MATCH_STATUS, participant.getMatchStatus().getValue());
     entity.setProperty(PROPERTY_TIMESTAMP, participant.getTimestamp());
+    // Derived from endTimeAvailable and duration, stored so expired participants can be queried
+    entity.setProperty(PROPERTY_EXPIRY_TIME, participant.getExpiryTime());
 
     return entity;
   }
@@ -86,23 +132,27 @@ public class ParticipantDatastore {
    */
   public void addParticipant(Participant participant) {
     // Insert entity into datastore
+    long startNanos = System.nanoTime();
     datastore.put(createEntityFromParticipant(participant));
+    metrics.recordSince(Metrics.DATASTORE_PARTICIPANT_PUT, startNanos);
   }
 
   /** Return Participant Entity from username, or null if entity is not found */
   @Nullable
   private Entity getEntity(String username) {
-    Key participantKey = KeyFactory.createKey(KIND_PARTICIPANT, username);
+    long startNanos = System.nanoTime();
     try {
-      return datastore.get(participantKey);
+      return datastore.get(createKey(username));
     } catch (EntityNotFoundException e) {
       return null;
+    } finally {
+      metrics.recordSince(Metrics.DATASTORE_PARTICIPANT_GET, startNanos);
     }
   }
 
   /** Return participant object from datastore participant entity, or null if entity is null */
   @Nullable
-  private static Participant getParticipantFromEntity(@Nonnull Entity entity) {
+  static Participant getParticipantFromEntity(@Nonnull Entity entity) {
     return new Participant(
         (String) entity.getProperty(PROPERTY_USERNAME),
         (long) entity.getProperty(PROPERTY_START_TIME_AVAILABLE),
@@ -110,7 +160,7 @@ public class ParticipantDatastore {
         ((Long) entity.getProperty(PROPERTY_DURATION)).intValue(),
         (String) entity.getProperty(PROPERTY_ROLE),
         (String) entity.getProperty(PROPERTY_PRODUCT_AREA),
-        convertStringToList((String) entity.getProperty(PROPERTY_INTERESTS)),
+        InterestsProperty.get(entity),
         MatchPreference.forIntValue(
             ((Long) entity.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()),
         (long) entity.getProperty(PROPERTY_MATCH_ID),
@@ -128,12 +178,31 @@ public class ParticipantDatastore {
     return getParticipantFromEntity(entity);
   }
 
-  /** Return list of all unmatched participants with duration */
-  public List<Participant> getUnmatchedParticipantsWithDuration(int duration)
-      throws DatastoreNeedIndexException {
-    Query query = new Query(KIND_PARTICIPANT);
+  /**
+   * Return list of all unmatched participants with duration and endTimeAvailable after
+   * minEndTimeAvailable, earliest endTimeAvailable first
+   */
+  public List<Participant> getUnmatchedParticipantsWithDuration(
+      int duration, long minEndTimeAvailable) throws DatastoreNeedIndexException {
+    return Lists.newArrayList(
+        iterateUnmatchedParticipantsWithDuration(duration, minEndTimeAvailable));
+  }
+
+  /**
+   * Return lazy iterable over unmatched participants with duration and endTimeAvailable after
+   * minEndTimeAvailable, earliest endTimeAvailable first. Candidates are fetched a page at a time
+   * with a query cursor and only converted to Participants when reached, so stopping early stops
+   * fetching. Needs the composite index on duration, matchStatus and endTimeAvailable declared in
+   * datastore-indexes.xml.
+   */
+  public Iterable<Participant> iterateUnmatchedParticipantsWithDuration(
+      int duration, long minEndTimeAvailable) throws DatastoreNeedIndexException {
+    Query query = new Query(KIND_PARTICIPANT).setKeysOnly();
 
     // Create filters to get only unmatched participants with compatible time availability
+    Filter compatibleTimeFilter =
+        new FilterPredicate(
+            PROPERTY_END_TIME_AVAILABLE, FilterOperator.GREATER_THAN, minEndTimeAvailable);
     Filter sameDurationFilter =
         new FilterPredicate(PROPERTY_DURATION, FilterOperator.EQUAL, duration);
     Filter unmatchedFilter =
@@ -142,36 +211,219 @@ public class ParticipantDatastore {
 
     // Combine filters into one, and filter query
     CompositeFilter compositeFilter =
-        CompositeFilterOperator.and(/*compatibleTimeFilter, */ sameDurationFilter, unmatchedFilter);
+        CompositeFilterOperator.and(compatibleTimeFilter, sameDurationFilter, unmatchedFilter);
 
     query.setFilter(compositeFilter);
 
+    PreparedQuery preparedQuery = datastore.prepare(query);
+    return () -> new CandidateIterator(preparedQuery);
+  }
+
+  /**
+   * Iterates participants of a keys-only query one page at a time. Each page is one query batch
+   * resumed from the previous page's cursor, then one batch get for the entities.
+   */
+  private class CandidateIterator implements Iterator<Participant> {
+
+    /** Prepared keys-only query */
+    private final PreparedQuery preparedQuery;
+    /** Cursor after the last fetched page, or null before the first page */
+    @Nullable private Cursor cursor = null;
+    /** Whether the last fetched page was the final one */
+    private boolean exhausted = false;
+    /** Unconverted entities of the current page */
+    private Iterator<Entity> page = Collections.emptyIterator();
+
+    /** Constructor */
+    CandidateIterator(PreparedQuery preparedQuery) {
+      this.preparedQuery = preparedQuery;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!page.hasNext() && !exhausted) {
+        fetchPage();
+      }
+      return page.hasNext();
+    }
+
+    @Override
+    public Participant next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return getParticipantFromEntity(page.next());
+    }
+
+    /** Fetch next page of keys from cursor and batch get their entities */
+    private void fetchPage() {
+      long startNanos = System.nanoTime();
+      int pageSize = cursor == null ? prefetchSize : fetchChunkSize;
+      FetchOptions fetchOptions =
+          FetchOptions.Builder.withLimit(pageSize).prefetchSize(pageSize).chunkSize(pageSize);
+      if (cursor != null) {
+        fetchOptions.startCursor(cursor);
+      }
+      QueryResultList<Entity> keyEntities = preparedQuery.asQueryResultList(fetchOptions);
+      cursor = keyEntities.getCursor();
+      exhausted = keyEntities.size() < pageSize;
+
+      List<Key> keys = keyEntities.stream().map(Entity::getKey).collect(Collectors.toList());
+      page = getEntitiesFromKeys(keys).iterator();
+      metrics.recordSince(Metrics.DATASTORE_CANDIDATE_PAGE, startNanos);
+    }
+  }
+
+  /** Return entities for keys in key order. Keys whose entity was removed are skipped. */
+  private List<Entity> getEntitiesFromKeys(List<Key> keys) {
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<Key, Entity> entitiesByKey = datastore.get(keys);
+    List<Entity> entities = new ArrayList<>(keys.size());
+    for (Key key : keys) {
+      Entity entity = entitiesByKey.get(key);
+      if (entity != null) {
+        entities.add(entity);
+      }
+    }
+    return entities;
+  }
+
+  /** Return list of all unmatched participants, regardless of duration */
+  public List<Participant> getUnmatchedParticipants() {
+    Query query =
+        new Query(KIND_PARTICIPANT)
+            .setFilter(
+                new FilterPredicate(
+                    PROPERTY_MATCH_STATUS, FilterOperator.EQUAL, MatchStatus.UNMATCHED.getValue()));
+
     List<Entity> results = datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
-    List<Participant> participants =
-        results.stream().map(p -> getParticipantFromEntity(p)).collect(Collectors.toList());
-    return participants;
+    return results.stream().map(p -> getParticipantFromEntity(p)).collect(Collectors.toList());
+  }
+
+  /** Return usernames of all unmatched participants, read with a keys-only query */
+  public Set<String> getUnmatchedUsernames() {
+    Query query =
+        new Query(KIND_PARTICIPANT)
+            .setKeysOnly()
+            .setFilter(
+                new FilterPredicate(
+                    PROPERTY_MATCH_STATUS, FilterOperator.EQUAL, MatchStatus.UNMATCHED.getValue()));
+    return datastore.prepare(query).asList(FetchOptions.Builder.withDefaults()).stream()
+        .map(entity -> entity.getKey().getName())
+        .collect(Collectors.toSet());
+  }
+
+  /**
+   * Return list of all participants added after minTimestamp, matched or not. Matching keeps a
+   * participant's timestamp, so participants added earlier and matched since are not included.
+   */
+  public List<Participant> getParticipantsAddedAfter(long minTimestamp) {
+    Query query =
+        new Query(KIND_PARTICIPANT)
+            .setFilter(
+                new FilterPredicate(PROPERTY_TIMESTAMP, FilterOperator.GREATER_THAN, minTimestamp));
+
+    List<Entity> results = datastore.prepare(query).asList(FetchOptions.Builder.withDefaults());
+    return results.stream().map(p -> getParticipantFromEntity(p)).collect(Collectors.toList());
   }
 
   /** Remove Participant from datastore */
   public void removeParticipant(String username) {
-    Key participantKey = KeyFactory.createKey(KIND_PARTICIPANT, username);
+    long startNanos = System.nanoTime();
     try {
-      datastore.delete(participantKey);
+      datastore.delete(createKey(username));
     } catch (IllegalArgumentException e) {
-      System.out.println(
-          "Participant with username "
-              + username
-              + " cannot be removed because it is not in the datastore.");
+      logger.warning(
+          () ->
+              "Participant with username "
+                  + username
+                  + " cannot be removed because it is not in the datastore.");
+    } finally {
+      metrics.recordSince(Metrics.DATASTORE_PARTICIPANT_DELETE, startNanos);
     }
   }
 
-  /** Convert list of strings to a string with each element delimited by a comma */
-  private static String convertListToString(List<String> list) {
-    return String.join(",", list);
+  /**
+   * Return usernames of up to limit unmatched participants that expired before currentTimeMillis.
+   * Needs the composite index on matchStatus and expiryTime declared in datastore-indexes.xml.
+   */
+  public List<String> getExpiredUsernames(long currentTimeMillis, int limit)
+      throws DatastoreNeedIndexException {
+    Query query =
+        new Query(KIND_PARTICIPANT)
+            .setKeysOnly()
+            .setFilter(
+                CompositeFilterOperator.and(
+                    new FilterPredicate(
+                        PROPERTY_MATCH_STATUS,
+                        FilterOperator.EQUAL,
+                        MatchStatus.UNMATCHED.getValue()),
+                    new FilterPredicate(
+                        PROPERTY_EXPIRY_TIME, FilterOperator.LESS_THAN, currentTimeMillis)));
+    return datastore.prepare(query).asList(FetchOptions.Builder.withLimit(limit)).stream()
+        .map(entity -> entity.getKey().getName())
+        .collect(Collectors.toList());
   }
 
-  /** Convert a string with each element delimited by a comma to a list of strings */
-  public static List<String> convertStringToList(String str) {
-    return Arrays.asList(str.split(","));
+  /**
+   * Remove participants with usernames that are still unmatched and expired at currentTimeMillis,
+   * in batched cross-group transactions so a participant matched meanwhile is never removed. Each
+   * removal writes a pending outbox notification telling the participant they expired, in the same
+   * transaction, so the email is sent exactly when the removal commits. A batch that hits a
+   * concurrent modification is skipped and left for the next sweep.
+   *
+   * @return participants removed
+   */
+  public List<Participant> removeExpiredParticipants(
+      List<String> usernames, long currentTimeMillis) {
+    List<Participant> removed = new ArrayList<>();
+    for (List<String> batch : Lists.partition(usernames, MAX_REMOVALS_PER_TRANSACTION)) {
+      long startNanos = System.nanoTime();
+      List<Key> keys =
+          batch.stream().map(ParticipantDatastore::createKey).collect(Collectors.toList());
+      Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        List<Participant> expired = new ArrayList<>();
+        for (Entity entity : datastore.get(transaction, keys).values()) {
+          Participant participant = getParticipantFromEntity(entity);
+          if (participant.getMatchStatus() == MatchStatus.UNMATCHED
+              && participant.getExpiryTime() < currentTimeMillis) {
+            expired.add(participant);
+          }
+        }
+        List<Key> expiredKeys =
+            expired.stream().map(p -> createKey(p.getUsername())).collect(Collectors.toList());
+        datastore.delete(transaction, expiredKeys);
+        // Notifications are children of the removed participants, so add no entity groups
+        List<Entity> notifications = new ArrayList<>();
+        for (int i = 0; i < expired.size(); i++) {
+          notifications.add(
+              OutboxDatastore.createEntityFromExpired(
+                  expiredKeys.get(i), expired.get(i).getTimestamp()));
+        }
+        datastore.put(transaction, notifications);
+        transaction.commit();
+        removed.addAll(expired);
+      } catch (ConcurrentModificationException e) {
+        logger.fine(() -> "Skipped expiring participants changed meanwhile: " + batch);
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+        metrics.recordSince(Metrics.DATASTORE_PARTICIPANT_DELETE, startNanos);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Rewrite interests of participants written before interests were a list property
+   *
+   * @return number of participants migrated
+   */
+  public int migrateLegacyInterests() {
+    return InterestsProperty.migrateLegacy(datastore, KIND_PARTICIPANT);
   }
 }
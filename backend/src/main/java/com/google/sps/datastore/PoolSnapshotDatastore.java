@@ -0,0 +1,167 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.datastore;
+
+import com.google.appengine.api.datastore.Blob;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.base.Preconditions;
+import com.google.sps.metrics.Metrics;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Separates datastore method calls involving the matching pool snapshot from caller. A snapshot is
+ * split into Blob chunks below datastore's entity size limit, written under a new generation, then
+ * published by pointing the header entity at that generation, so readers never see a partly written
+ * snapshot.
+ */
+public class PoolSnapshotDatastore {
+
+  private static final Metrics metrics = Metrics.shared();
+
+  // Datastore Key/Property constants
+  private static final String KIND_SNAPSHOT = "MatchingPoolSnapshot";
+  private static final String KIND_SNAPSHOT_CHUNK = "MatchingPoolSnapshotChunk";
+  private static final String KEY_NAME_LATEST = "latest";
+  private static final String PROPERTY_GENERATION = "generation";
+  private static final String PROPERTY_NUM_CHUNKS = "numChunks";
+  private static final String PROPERTY_DATA = "data";
+
+  /** Default bytes per chunk, below datastore's 1MB entity limit */
+  public static final int DEFAULT_CHUNK_SIZE = 900 * 1024;
+
+  /** Datastore */
+  private final DatastoreService datastore;
+  /** Bytes per chunk */
+  private final int chunkSize;
+
+  /** Constructor that takes in DatastoreService */
+  public PoolSnapshotDatastore(DatastoreService datastore) {
+    this(datastore, DEFAULT_CHUNK_SIZE);
+  }
+
+  /** Constructor that takes in DatastoreService and chunk size */
+  public PoolSnapshotDatastore(DatastoreService datastore, int chunkSize) {
+    Preconditions.checkArgument(chunkSize > 0, "chunkSize must be positive");
+    this.datastore = datastore;
+    this.chunkSize = chunkSize;
+  }
+
+  /** Return key of chunk with index in generation */
+  private static Key createChunkKey(String generation, int index) {
+    return KeyFactory.createKey(KIND_SNAPSHOT_CHUNK, generation + "-" + index);
+  }
+
+  /** Return keys of all numChunks chunks in generation */
+  private static List<Key> createChunkKeys(String generation, int numChunks) {
+    List<Key> keys = new ArrayList<>(numChunks);
+    for (int index = 0; index < numChunks; index++) {
+      keys.add(createChunkKey(generation, index));
+    }
+    return keys;
+  }
+
+  /** Return header entity of the latest snapshot, or null if none was saved */
+  @Nullable
+  private Entity getHeader() {
+    try {
+      return datastore.get(KeyFactory.createKey(KIND_SNAPSHOT, KEY_NAME_LATEST));
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  /** Replace the latest snapshot with snapshot, then delete the chunks of the one replaced */
+  public void saveSnapshot(byte[] snapshot) {
+    long startNanos = System.nanoTime();
+    Entity previousHeader = getHeader();
+
+    String generation = UUID.randomUUID().toString();
+    int numChunks = Math.max(1, (snapshot.length + chunkSize - 1) / chunkSize);
+    List<Entity> chunks = new ArrayList<>(numChunks);
+    for (int index = 0; index < numChunks; index++) {
+      Entity chunk = new Entity(createChunkKey(generation, index));
+      int from = index * chunkSize;
+      int to = Math.min(snapshot.length, from + chunkSize);
+      chunk.setProperty(PROPERTY_DATA, new Blob(Arrays.copyOfRange(snapshot, from, to)));
+      chunks.add(chunk);
+    }
+    datastore.put(chunks);
+
+    Entity header = new Entity(KIND_SNAPSHOT, KEY_NAME_LATEST);
+    header.setUnindexedProperty(PROPERTY_GENERATION, generation);
+    header.setUnindexedProperty(PROPERTY_NUM_CHUNKS, numChunks);
+    datastore.put(header);
+
+    if (previousHeader != null) {
+      datastore.delete(
+          createChunkKeys(
+              (String) previousHeader.getProperty(PROPERTY_GENERATION),
+              ((Long) previousHeader.getProperty(PROPERTY_NUM_CHUNKS)).intValue()));
+    }
+    metrics.recordSince(Metrics.DATASTORE_SNAPSHOT_PUT, startNanos);
+  }
+
+  /**
+   * Return read-only buffer over the latest snapshot, or null if none was saved or its chunks were
+   * deleted by a concurrent save
+   */
+  @Nullable
+  public ByteBuffer getSnapshot() {
+    long startNanos = System.nanoTime();
+    try {
+      Entity header = getHeader();
+      if (header == null) {
+        return null;
+      }
+      List<Key> keys =
+          createChunkKeys(
+              (String) header.getProperty(PROPERTY_GENERATION),
+              ((Long) header.getProperty(PROPERTY_NUM_CHUNKS)).intValue());
+      Map<Key, Entity> chunksByKey = datastore.get(keys);
+      if (chunksByKey.size() != keys.size()) {
+        return null;
+      }
+
+      List<byte[]> chunks = new ArrayList<>(keys.size());
+      int size = 0;
+      for (Key key : keys) {
+        byte[] chunk = ((Blob) chunksByKey.get(key).getProperty(PROPERTY_DATA)).getBytes();
+        chunks.add(chunk);
+        size += chunk.length;
+      }
+      if (chunks.size() == 1) {
+        return ByteBuffer.wrap(chunks.get(0)).asReadOnlyBuffer();
+      }
+      ByteBuffer snapshot = ByteBuffer.allocate(size);
+      for (byte[] chunk : chunks) {
+        snapshot.put(chunk);
+      }
+      snapshot.flip();
+      return snapshot.asReadOnlyBuffer();
+    } finally {
+      metrics.recordSince(Metrics.DATASTORE_SNAPSHOT_GET, startNanos);
+    }
+  }
+}
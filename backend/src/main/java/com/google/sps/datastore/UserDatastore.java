@@ -21,8 +21,6 @@ import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.User;
-import java.util.Arrays;
-import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -35,7 +33,6 @@ public class UserDatastore {
   private static final String PROPERTY_DURATION = "duration";
   private static final String PROPERTY_ROLE = "role";
   private static final String PROPERTY_PRODUCT_AREA = "productArea";
-  private static final String PROPERTY_INTERESTS = "interests";
   private static final String PROPERTY_MATCH_PREFERENCE = "matchPreference";
 
   /** Datastore */
@@ -54,7 +51,7 @@ public class UserDatastore {
     entity.setProperty(PROPERTY_DURATION, user.getDuration());
     entity.setProperty(PROPERTY_ROLE, user.getRole());
     entity.setProperty(PROPERTY_PRODUCT_AREA, user.getProductArea());
-    entity.setProperty(PROPERTY_INTERESTS, convertListToString(user.getInterests()));
+    InterestsProperty.set(entity, user.getInterests());
     entity.setProperty(PROPERTY_MATCH_PREFERENCE, user.getMatchPreference().getValue());
 
     return entity;
@@ -85,7 +82,7 @@ public class UserDatastore {
         ((Long) entity.getProperty(PROPERTY_DURATION)).intValue(),
         (String) entity.getProperty(PROPERTY_ROLE),
         (String) entity.getProperty(PROPERTY_PRODUCT_AREA),
-        convertStringToList((String) entity.getProperty(PROPERTY_INTERESTS)),
+        InterestsProperty.get(entity),
         MatchPreference.forIntValue(
             ((Long) entity.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()));
   }
@@ -100,13 +97,12 @@ public class UserDatastore {
     return getUserFromEntity(entity);
   }
 
-  /** Convert list of strings to a string with each element delimited by a comma */
-  private static String convertListToString(List<String> list) {
-    return String.join(",", list);
-  }
-
-  /** Convert a string with each element delimited by a comma to a list of strings */
-  public static List<String> convertStringToList(String str) {
-    return Arrays.asList(str.split(","));
+  /**
+   * Rewrite interests of users saved before interests were a list property
+   *
+   * @return number of users migrated
+   */
+  public int migrateLegacyInterests() {
+    return InterestsProperty.migrateLegacy(datastore, KIND_USER);
   }
 }
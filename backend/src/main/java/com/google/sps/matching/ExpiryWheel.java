@@ -0,0 +1,151 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel of usernames keyed on their expiry time. Scheduling and cancelling are
+ * constant time, and advancing only touches the slots that came due, so expired usernames are found
+ * without scanning everyone still waiting. Level 0 has one slot per tick, and each level above has
+ * slots as wide as the whole level below. Usernames are moved down a level as their slot comes up,
+ * and are due in the tick of their expiry time.
+ */
+public final class ExpiryWheel {
+
+  /** Default width of a level 0 slot */
+  public static final long DEFAULT_TICK_MILLIS = 1_000;
+  /** Slots in each level */
+  private static final int SLOTS_PER_LEVEL = 64;
+  /** Levels of slots, 64^4 one-second ticks covers about 194 days */
+  private static final int NUM_LEVELS = 4;
+
+  /** Width of a level 0 slot in milliseconds */
+  private final long tickMillis;
+  /** Level -> slot -> username -> expiry tick */
+  private final List<List<Map<String, Long>>> levels = new ArrayList<>();
+  /** Username -> slot it is in */
+  private final Map<String, Map<String, Long>> slotsByUsername = new HashMap<>();
+  /** Scheduled usernames already due, returned on the next advance */
+  private final Set<String> due = new HashSet<>();
+  /** Last tick advanced to */
+  private long currentTick;
+
+  /** Constructor, starts the wheel at startMillis */
+  public ExpiryWheel(long tickMillis, long startMillis) {
+    Preconditions.checkArgument(tickMillis > 0, "tickMillis must be positive");
+    this.tickMillis = tickMillis;
+    this.currentTick = startMillis / tickMillis;
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      List<Map<String, Long>> slots = new ArrayList<>(SLOTS_PER_LEVEL);
+      for (int slot = 0; slot < SLOTS_PER_LEVEL; slot++) {
+        slots.add(new HashMap<>());
+      }
+      levels.add(slots);
+    }
+  }
+
+  /** Schedule username to be due at expiryMillis, replacing any earlier schedule for username */
+  public synchronized void schedule(String username, long expiryMillis) {
+    cancel(username);
+    place(username, expiryMillis / tickMillis);
+  }
+
+  /** Cancel username's schedule, no-op if not scheduled */
+  public synchronized void cancel(String username) {
+    Map<String, Long> slot = slotsByUsername.remove(username);
+    if (slot != null) {
+      slot.remove(username);
+    } else {
+      due.remove(username);
+    }
+  }
+
+  /** @return number of scheduled usernames, including due ones not yet returned */
+  public synchronized int size() {
+    return slotsByUsername.size() + due.size();
+  }
+
+  /**
+   * Advance the wheel to nowMillis
+   *
+   * @return usernames that came due, which are no longer scheduled
+   */
+  public synchronized List<String> advance(long nowMillis) {
+    long nowTick = nowMillis / tickMillis;
+    while (currentTick < nowTick) {
+      currentTick++;
+      // Move usernames in higher level slots that start at this tick down, then expire level 0
+      for (int level = NUM_LEVELS - 1; level > 0; level--) {
+        long span = getSpan(level);
+        if (currentTick % span == 0) {
+          Map<String, Long> slot = getSlot(level, currentTick / span);
+          Map<String, Long> cascaded = new HashMap<>(slot);
+          slot.clear();
+          for (Map.Entry<String, Long> entry : cascaded.entrySet()) {
+            slotsByUsername.remove(entry.getKey());
+            place(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      Map<String, Long> slot = getSlot(0, currentTick);
+      for (String username : slot.keySet()) {
+        slotsByUsername.remove(username);
+        due.add(username);
+      }
+      slot.clear();
+    }
+    List<String> expired = new ArrayList<>(due);
+    due.clear();
+    return expired;
+  }
+
+  /** Put username in the lowest level whose range reaches expiryTick, or due if already passed */
+  private void place(String username, long expiryTick) {
+    long ticksLeft = expiryTick - currentTick;
+    if (ticksLeft <= 0) {
+      due.add(username);
+      return;
+    }
+    int level = 0;
+    while (level < NUM_LEVELS - 1 && ticksLeft >= getSpan(level + 1)) {
+      level++;
+    }
+    // Past the top level's range, the username cascades back into the top level when reached
+    Map<String, Long> slot = getSlot(level, expiryTick / getSpan(level));
+    slot.put(username, expiryTick);
+    slotsByUsername.put(username, slot);
+  }
+
+  /** @return ticks covered by one slot of level */
+  private static long getSpan(int level) {
+    long span = 1;
+    for (int i = 0; i < level; i++) {
+      span *= SLOTS_PER_LEVEL;
+    }
+    return span;
+  }
+
+  /** @return slot of level for the slot number, which wraps around the level */
+  private Map<String, Long> getSlot(int level, long slotNumber) {
+    return levels.get(level).get((int) (slotNumber % SLOTS_PER_LEVEL));
+  }
+}
@@ -0,0 +1,27 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import com.google.sps.data.Participant;
+
+/** Scores how good a match two compatible participants would be */
+public interface MatchScorer {
+
+  /**
+   * @return score between 0 (acceptable) and 1 (best possible) for matching two participants that
+   *     are already known to be compatible
+   */
+  double score(Participant firstParticipant, Participant secondParticipant);
+}
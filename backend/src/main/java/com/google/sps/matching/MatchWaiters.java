@@ -0,0 +1,76 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Search requests parked until their participant is matched, keyed by username. Only matches made
+ * on this instance are heard about, so parked requests still time out and check datastore again.
+ */
+public final class MatchWaiters {
+
+  /** Username -> futures completed with the match id once matched */
+  private final Map<String, Set<CompletableFuture<Long>>> waitersByUsername = new HashMap<>();
+
+  /**
+   * Register a waiter for username's match. Caller must unregister it when done waiting.
+   *
+   * @return future completed with the match id when username is matched
+   */
+  public synchronized CompletableFuture<Long> register(String username) {
+    CompletableFuture<Long> waiter = new CompletableFuture<>();
+    waitersByUsername.computeIfAbsent(username, u -> new LinkedHashSet<>()).add(waiter);
+    return waiter;
+  }
+
+  /** Unregister waiter for username, no-op if already notified */
+  public synchronized void unregister(String username, CompletableFuture<Long> waiter) {
+    Set<CompletableFuture<Long>> waiters = waitersByUsername.get(username);
+    if (waiters == null) {
+      return;
+    }
+    waiters.remove(waiter);
+    if (waiters.isEmpty()) {
+      waitersByUsername.remove(username);
+    }
+  }
+
+  /** Wake all waiters for username with matchId */
+  public void notifyMatched(String username, long matchId) {
+    List<CompletableFuture<Long>> waiters;
+    synchronized (this) {
+      Set<CompletableFuture<Long>> registered = waitersByUsername.remove(username);
+      if (registered == null) {
+        return;
+      }
+      waiters = new ArrayList<>(registered);
+    }
+    for (CompletableFuture<Long> waiter : waiters) {
+      waiter.complete(matchId);
+    }
+  }
+
+  /** @return number of usernames with a registered waiter */
+  public synchronized int size() {
+    return waitersByUsername.size();
+  }
+}
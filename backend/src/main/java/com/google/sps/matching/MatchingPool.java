@@ -0,0 +1,648 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import com.google.common.util.concurrent.Striped;
+import com.google.sps.data.InputDictionary;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.PoolSnapshotDatastore;
+import com.google.sps.metrics.Metrics;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory index of unmatched Participants, bucketed by duration and MatchPreference and ordered
+ * by endTimeAvailable within each bucket. Datastore stays the durable record; the pool is loaded in
+ * full from it when first used and by the snapshot cron, and whenever it is older than the max
+ * staleness only the changes since its last refresh are applied. Participants are evicted from the
+ * pool as they expire, tracked by an ExpiryWheel.
+ *
+ * <p>Participants are stored column-wise, one slot per participant across primitive arrays, with
+ * freed slots reused. Each bucket is a pair of arrays sorted by endTimeAvailable, so scans walk
+ * contiguous memory, and a Participant is only built for a candidate that passes the
+ * CandidateFilter checked against the columns.
+ *
+ * <p>A cold instance first tries the latest snapshot saved by SnapshotPoolHelper, then applies the
+ * changes made since it was taken like a refresh, and falls back to a full load without one. Other
+ * instances' writes between refreshes are caught when their claim fails.
+ */
+public final class MatchingPool {
+
+  private static final Logger logger = Logger.getLogger(MatchingPool.class.getName());
+  private static final Metrics metrics = Metrics.shared();
+
+  /** Default time before the pool picks up other instances' writes from datastore */
+  public static final long DEFAULT_MAX_STALENESS_MILLIS = 30_000;
+
+  /** Number of claim lock stripes durations are spread over */
+  private static final int CLAIM_LOCK_STRIPES = 16;
+  /** Match preferences by ordinal, as stored in the preference column */
+  private static final MatchPreference[] MATCH_PREFERENCES = MatchPreference.values();
+  /** Slots allocated when the pool is created or emptied */
+  private static final int INITIAL_CAPACITY = 64;
+  /** Marks a pool snapshot, "MPS" followed by the format version */
+  private static final int SNAPSHOT_MAGIC = 0x4d505301;
+  /**
+   * Participants added this long before the pool's last load or refresh are replayed too, covers
+   * participants timestamped before it but written after it
+   */
+  private static final long REPLAY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  /** Snapshots loaded longer ago than this are ignored, too much would have to be replayed */
+  private static final long MAX_SNAPSHOT_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  /** Reference clock */
+  private final Clock clock;
+  /** Time in milliseconds after which the pool is refreshed from datastore */
+  private final long maxStalenessMillis;
+  /** Snapshots a cold pool is restored from, or null to always load in full */
+  @Nullable private final PoolSnapshotDatastore snapshotDatastore;
+
+  // Participant columns, indexed by slot. A free slot has a null username.
+  private String[] usernames;
+  private long[] startTimesAvailable;
+  private long[] endTimesAvailable;
+  private long[] timestamps;
+  private int[] durations;
+  private byte[] matchPreferences;
+  private int[] roleIds;
+  private int[] productAreaIds;
+  private int[][] interestIds;
+  private long[][] filledInputBits;
+  private int[] numFilledInputs;
+
+  /** Stack of free slots below the high water mark */
+  private int[] freeSlots;
+  /** Number of free slots on the stack */
+  private int numFreeSlots;
+  /** Slots ever allocated, every slot at or above is unused */
+  private int highWaterMark;
+
+  /** Username to slot of all pooled participants */
+  private final Map<String, Integer> slotsByUsername = new HashMap<>();
+  /** Duration -> match preference -> slots ordered by endTimeAvailable */
+  private final Map<Integer, Map<MatchPreference, Bucket>> buckets = new HashMap<>();
+  /** Pooled usernames by expiry time */
+  private ExpiryWheel expiryWheel;
+  /** Time of last load or refresh from datastore, or Long.MIN_VALUE if never loaded */
+  private long lastLoadedMillis = Long.MIN_VALUE;
+
+  /** Locks held while finding and claiming a candidate, striped by duration */
+  private final Striped<Lock> claimLocks = Striped.lock(CLAIM_LOCK_STRIPES);
+
+  /** Constructor for a pool that always loads in full from datastore */
+  public MatchingPool(Clock clock, long maxStalenessMillis) {
+    this(clock, maxStalenessMillis, /* snapshotDatastore= */ null);
+  }
+
+  /** Constructor for a pool that is first restored from the latest snapshot if there is one */
+  public MatchingPool(
+      Clock clock, long maxStalenessMillis, @Nullable PoolSnapshotDatastore snapshotDatastore) {
+    this.clock = clock;
+    this.maxStalenessMillis = maxStalenessMillis;
+    this.snapshotDatastore = snapshotDatastore;
+    this.expiryWheel = new ExpiryWheel(ExpiryWheel.DEFAULT_TICK_MILLIS, clock.millis());
+    allocateColumns(INITIAL_CAPACITY);
+  }
+
+  /** Replace pool contents with all unmatched participants in datastore */
+  public synchronized void loadFrom(ParticipantDatastore participantDatastore) {
+    long startNanos = System.nanoTime();
+    List<Participant> unmatchedParticipants = participantDatastore.getUnmatchedParticipants();
+    clear(unmatchedParticipants.size());
+    for (Participant participant : unmatchedParticipants) {
+      add(participant);
+    }
+    evictExpired();
+    lastLoadedMillis = clock.millis();
+    metrics.recordSince(Metrics.POOL_FULL_LOAD, startNanos);
+  }
+
+  /**
+   * Load pool from datastore if it was never loaded, apply the changes made since its last refresh
+   * if it is older than the max staleness, otherwise evict expired participants. A pool never
+   * loaded is restored from the latest snapshot if there is a recent one.
+   */
+  public synchronized void refreshIfStale(ParticipantDatastore participantDatastore) {
+    if (lastLoadedMillis == Long.MIN_VALUE) {
+      if (snapshotDatastore == null || !loadFromSnapshot(participantDatastore)) {
+        loadFrom(participantDatastore);
+      }
+    } else if (clock.millis() - lastLoadedMillis > maxStalenessMillis) {
+      long startNanos = System.nanoTime();
+      applyChangesSince(participantDatastore, lastLoadedMillis);
+      metrics.recordSince(Metrics.POOL_REFRESH, startNanos);
+    } else {
+      evictExpired();
+    }
+  }
+
+  /**
+   * Add participants added since shortly before sinceMillis, and drop pooled participants no longer
+   * unmatched in datastore, without reading the participants that didn't change
+   */
+  private void applyChangesSince(ParticipantDatastore participantDatastore, long sinceMillis) {
+    // Matched participants are dropped by add
+    for (Participant participant :
+        participantDatastore.getParticipantsAddedAfter(sinceMillis - REPLAY_MARGIN_MILLIS)) {
+      add(participant);
+    }
+    // Matching keeps a participant's timestamp and removals leave nothing to query, so both are
+    // found by what is no longer unmatched
+    Set<String> unmatchedUsernames = participantDatastore.getUnmatchedUsernames();
+    for (String username : new ArrayList<>(slotsByUsername.keySet())) {
+      if (!unmatchedUsernames.contains(username)) {
+        remove(username);
+      }
+    }
+    evictExpired();
+    lastLoadedMillis = clock.millis();
+  }
+
+  /**
+   * Replace pool contents with the latest snapshot and apply the changes made since it was loaded,
+   * so participants matched or removed since are dropped
+   *
+   * @return false if there is no readable recent snapshot, pool is then left to be loaded in full
+   */
+  private boolean loadFromSnapshot(ParticipantDatastore participantDatastore) {
+    long startNanos = System.nanoTime();
+    ByteBuffer snapshot = snapshotDatastore.getSnapshot();
+    if (snapshot == null) {
+      return false;
+    }
+    long snapshotLoadedMillis;
+    try {
+      snapshotLoadedMillis = restoreSnapshot(snapshot);
+    } catch (IllegalArgumentException e) {
+      logger.log(Level.WARNING, "Ignored unreadable matching pool snapshot", e);
+      return false;
+    }
+    if (clock.millis() - snapshotLoadedMillis > MAX_SNAPSHOT_AGE_MILLIS) {
+      logger.info(() -> "Ignored matching pool snapshot loaded at " + snapshotLoadedMillis);
+      return false;
+    }
+
+    applyChangesSince(participantDatastore, snapshotLoadedMillis);
+    metrics.recordSince(Metrics.POOL_SNAPSHOT_LOAD, startNanos);
+    return true;
+  }
+
+  /**
+   * @return compact binary snapshot of pooled participants, for restoreSnapshot on another
+   *     instance. Interned ids differ between instances, so the inputs used are written once to a
+   *     table that participants reference by index.
+   */
+  public synchronized byte[] toSnapshot() {
+    // Table index of each interned id in use, in first use order
+    Map<Integer, Integer> indexesById = new LinkedHashMap<>();
+    for (int slot : slotsByUsername.values()) {
+      indexesById.putIfAbsent(roleIds[slot], indexesById.size());
+      indexesById.putIfAbsent(productAreaIds[slot], indexesById.size());
+      for (int interestId : interestIds[slot]) {
+        indexesById.putIfAbsent(interestId, indexesById.size());
+      }
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeLong(lastLoadedMillis);
+      out.writeInt(indexesById.size());
+      for (int id : indexesById.keySet()) {
+        writeString(out, InputDictionary.getValue(id));
+      }
+      out.writeInt(slotsByUsername.size());
+      for (int slot : slotsByUsername.values()) {
+        writeString(out, usernames[slot]);
+        out.writeLong(startTimesAvailable[slot]);
+        out.writeLong(endTimesAvailable[slot]);
+        out.writeLong(timestamps[slot]);
+        out.writeInt(durations[slot]);
+        out.writeByte(matchPreferences[slot]);
+        out.writeInt(indexesById.get(roleIds[slot]));
+        out.writeInt(indexesById.get(productAreaIds[slot]));
+        out.writeInt(interestIds[slot].length);
+        for (int interestId : interestIds[slot]) {
+          out.writeInt(indexesById.get(interestId));
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Replace pool contents with participants in snapshot written by toSnapshot
+   *
+   * @return time the snapshotted pool was last loaded from datastore
+   * @throws IllegalArgumentException if snapshot is not a complete pool snapshot
+   */
+  public synchronized long restoreSnapshot(ByteBuffer snapshot) {
+    try {
+      if (snapshot.getInt() != SNAPSHOT_MAGIC) {
+        throw new IllegalArgumentException("Not a matching pool snapshot");
+      }
+      long snapshotLoadedMillis = snapshot.getLong();
+      int[] idsByIndex = new int[snapshot.getInt()];
+      for (int index = 0; index < idsByIndex.length; index++) {
+        idsByIndex[index] = InputDictionary.getId(readString(snapshot));
+      }
+
+      int numParticipants = snapshot.getInt();
+      clear(numParticipants);
+      for (int i = 0; i < numParticipants; i++) {
+        String username = readString(snapshot);
+        long startTimeAvailable = snapshot.getLong();
+        long endTimeAvailable = snapshot.getLong();
+        long timestamp = snapshot.getLong();
+        int duration = snapshot.getInt();
+        MatchPreference matchPreference = MATCH_PREFERENCES[snapshot.get()];
+        int roleId = idsByIndex[snapshot.getInt()];
+        int productAreaId = idsByIndex[snapshot.getInt()];
+        int[] participantInterestIds = new int[snapshot.getInt()];
+        for (int j = 0; j < participantInterestIds.length; j++) {
+          participantInterestIds[j] = idsByIndex[snapshot.getInt()];
+        }
+        add(
+            Participant.fromInterned(
+                username,
+                startTimeAvailable,
+                endTimeAvailable,
+                duration,
+                roleId,
+                productAreaId,
+                participantInterestIds,
+                matchPreference,
+                /* matchId= */ 0,
+                MatchStatus.UNMATCHED,
+                timestamp));
+      }
+      return snapshotLoadedMillis;
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw new IllegalArgumentException("Truncated or corrupt matching pool snapshot", e);
+    }
+  }
+
+  /** Write value as its UTF-8 length and bytes */
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /** @return value written by writeString at the buffer's position */
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Empty the pool, with room for numParticipants */
+  private void clear(int numParticipants) {
+    slotsByUsername.clear();
+    buckets.clear();
+    allocateColumns(Math.max(INITIAL_CAPACITY, numParticipants));
+    expiryWheel = new ExpiryWheel(ExpiryWheel.DEFAULT_TICK_MILLIS, clock.millis());
+  }
+
+  /**
+   * Remove participants that have expired from pool
+   *
+   * @return number of participants evicted
+   */
+  public synchronized int evictExpired() {
+    List<String> expiredUsernames = expiryWheel.advance(clock.millis());
+    for (String username : expiredUsernames) {
+      remove(username);
+    }
+    return expiredUsernames.size();
+  }
+
+  /** Add unmatched participant to pool, replacing any pooled participant with the same username */
+  public synchronized void add(Participant participant) {
+    remove(participant.getUsername());
+    if (participant.getMatchStatus() != MatchStatus.UNMATCHED) {
+      return;
+    }
+    int slot = allocateSlot();
+    usernames[slot] = participant.getUsername();
+    startTimesAvailable[slot] = participant.getStartTimeAvailable();
+    endTimesAvailable[slot] = participant.getEndTimeAvailable();
+    timestamps[slot] = participant.getTimestamp();
+    durations[slot] = participant.getDuration();
+    matchPreferences[slot] = (byte) participant.getMatchPreference().ordinal();
+    roleIds[slot] = participant.getRoleId();
+    productAreaIds[slot] = participant.getProductAreaId();
+    interestIds[slot] = participant.getInterestIds();
+    filledInputBits[slot] = participant.getFilledInputBits();
+    numFilledInputs[slot] = participant.getNumFilledInputs();
+
+    slotsByUsername.put(participant.getUsername(), slot);
+    buckets
+        .computeIfAbsent(participant.getDuration(), d -> new EnumMap<>(MatchPreference.class))
+        .computeIfAbsent(participant.getMatchPreference(), p -> new Bucket())
+        .insert(participant.getEndTimeAvailable(), slot);
+    expiryWheel.schedule(participant.getUsername(), participant.getExpiryTime());
+  }
+
+  /** Remove participant with username from pool, no-op if not pooled */
+  public synchronized void remove(String username) {
+    Integer slot = slotsByUsername.remove(username);
+    if (slot == null) {
+      return;
+    }
+    expiryWheel.cancel(username);
+    buckets
+        .get(durations[slot])
+        .get(getMatchPreference(slot))
+        .remove(endTimesAvailable[slot], slot);
+    freeSlot(slot);
+  }
+
+  /**
+   * @return lock to hold while finding, claiming and adding participants with duration, so requests
+   *     on this instance don't race for the same candidates or miss each other
+   */
+  public Lock getClaimLock(int duration) {
+    return claimLocks.get(duration);
+  }
+
+  /** @return pooled participant with username, or null if not pooled */
+  @Nullable
+  public synchronized Participant get(String username) {
+    Integer slot = slotsByUsername.get(username);
+    return slot == null ? null : getParticipant(slot);
+  }
+
+  /** @return number of pooled participants */
+  public synchronized int size() {
+    return slotsByUsername.size();
+  }
+
+  /** Check of a pooled candidate's matching inputs, read straight from the pool's columns */
+  public interface CandidateFilter {
+
+    /**
+     * @return false if the candidate can't be a match, so it is skipped without being visited.
+     *     filledInputBits is the pool's own copy and must not be modified or kept.
+     */
+    boolean mayMatch(
+        String username,
+        MatchPreference matchPreference,
+        long[] filledInputBits,
+        int numFilledInputs);
+  }
+
+  /**
+   * Visit pooled participants with duration, a match preference compatible with matchPreference and
+   * endTimeAvailable after minEndTimeAvailable, earliest endTimeAvailable first within each
+   * preference bucket, until visitor returns false.
+   */
+  public void visitCandidates(
+      int duration,
+      MatchPreference matchPreference,
+      long minEndTimeAvailable,
+      Predicate<Participant> visitor) {
+    visitCandidates(
+        duration,
+        matchPreference,
+        minEndTimeAvailable,
+        (username, preference, bits, numFilled) -> true,
+        visitor);
+  }
+
+  /**
+   * Visit pooled participants like visitCandidates, skipping candidates filter rejects before they
+   * are built, until visitor returns false.
+   */
+  public synchronized void visitCandidates(
+      int duration,
+      MatchPreference matchPreference,
+      long minEndTimeAvailable,
+      CandidateFilter filter,
+      Predicate<Participant> visitor) {
+    Map<MatchPreference, Bucket> durationBucket = buckets.get(duration);
+    if (durationBucket == null) {
+      return;
+    }
+    // Same preference first, then the other preferences that can combine with it
+    if (!visitBucket(durationBucket.get(matchPreference), minEndTimeAvailable, filter, visitor)) {
+      return;
+    }
+    for (MatchPreference otherPreference : MatchPreference.values()) {
+      if (otherPreference != matchPreference
+          && MatchPreference.getCombinedMatchPreference(matchPreference, otherPreference) != null
+          && !visitBucket(
+              durationBucket.get(otherPreference), minEndTimeAvailable, filter, visitor)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return first candidate visitCandidates would visit that isCompatible accepts, or null if none
+   */
+  @Nullable
+  public Participant findCandidate(
+      int duration,
+      MatchPreference matchPreference,
+      long minEndTimeAvailable,
+      Predicate<Participant> isCompatible) {
+    Participant[] candidate = new Participant[1];
+    visitCandidates(
+        duration,
+        matchPreference,
+        minEndTimeAvailable,
+        participant -> {
+          if (isCompatible.test(participant)) {
+            candidate[0] = participant;
+            return false;
+          }
+          return true;
+        });
+    return candidate[0];
+  }
+
+  /**
+   * Visit participants in bucket after minEndTimeAvailable that filter accepts until visitor
+   * returns false
+   *
+   * @return false if visitor stopped the visit
+   */
+  private boolean visitBucket(
+      @Nullable Bucket bucket,
+      long minEndTimeAvailable,
+      CandidateFilter filter,
+      Predicate<Participant> visitor) {
+    if (bucket == null) {
+      return true;
+    }
+    for (int i = bucket.indexAfter(minEndTimeAvailable); i < bucket.size; i++) {
+      int slot = bucket.slots[i];
+      if (filter.mayMatch(
+              usernames[slot],
+              getMatchPreference(slot),
+              filledInputBits[slot],
+              numFilledInputs[slot])
+          && !visitor.test(getParticipant(slot))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return participant stored in slot */
+  private Participant getParticipant(int slot) {
+    return Participant.fromInterned(
+        usernames[slot],
+        startTimesAvailable[slot],
+        endTimesAvailable[slot],
+        durations[slot],
+        roleIds[slot],
+        productAreaIds[slot],
+        interestIds[slot],
+        getMatchPreference(slot),
+        /* matchId= */ 0,
+        MatchStatus.UNMATCHED,
+        timestamps[slot]);
+  }
+
+  /** @return match preference stored in slot */
+  private MatchPreference getMatchPreference(int slot) {
+    return MATCH_PREFERENCES[matchPreferences[slot]];
+  }
+
+  /** Replace columns with empty ones of capacity slots */
+  private void allocateColumns(int capacity) {
+    usernames = new String[capacity];
+    startTimesAvailable = new long[capacity];
+    endTimesAvailable = new long[capacity];
+    timestamps = new long[capacity];
+    durations = new int[capacity];
+    matchPreferences = new byte[capacity];
+    roleIds = new int[capacity];
+    productAreaIds = new int[capacity];
+    interestIds = new int[capacity][];
+    filledInputBits = new long[capacity][];
+    numFilledInputs = new int[capacity];
+    freeSlots = new int[capacity];
+    numFreeSlots = 0;
+    highWaterMark = 0;
+  }
+
+  /** @return a free slot, reusing freed slots first and growing the columns if full */
+  private int allocateSlot() {
+    if (numFreeSlots > 0) {
+      return freeSlots[--numFreeSlots];
+    }
+    if (highWaterMark == usernames.length) {
+      int capacity = usernames.length * 2;
+      usernames = Arrays.copyOf(usernames, capacity);
+      startTimesAvailable = Arrays.copyOf(startTimesAvailable, capacity);
+      endTimesAvailable = Arrays.copyOf(endTimesAvailable, capacity);
+      timestamps = Arrays.copyOf(timestamps, capacity);
+      durations = Arrays.copyOf(durations, capacity);
+      matchPreferences = Arrays.copyOf(matchPreferences, capacity);
+      roleIds = Arrays.copyOf(roleIds, capacity);
+      productAreaIds = Arrays.copyOf(productAreaIds, capacity);
+      interestIds = Arrays.copyOf(interestIds, capacity);
+      filledInputBits = Arrays.copyOf(filledInputBits, capacity);
+      numFilledInputs = Arrays.copyOf(numFilledInputs, capacity);
+      freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+    return highWaterMark++;
+  }
+
+  /** Release slot for reuse, dropping its references */
+  private void freeSlot(int slot) {
+    usernames[slot] = null;
+    interestIds[slot] = null;
+    filledInputBits[slot] = null;
+    freeSlots[numFreeSlots++] = slot;
+  }
+
+  /** Slots of one duration and preference, sorted by endTimeAvailable then insertion order */
+  private static final class Bucket {
+
+    private long[] endTimes = new long[INITIAL_CAPACITY];
+    private int[] slots = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /** Insert slot with endTime after all entries with the same endTime */
+    void insert(long endTime, int slot) {
+      if (size == slots.length) {
+        endTimes = Arrays.copyOf(endTimes, size * 2);
+        slots = Arrays.copyOf(slots, size * 2);
+      }
+      int index = indexAfter(endTime);
+      System.arraycopy(endTimes, index, endTimes, index + 1, size - index);
+      System.arraycopy(slots, index, slots, index + 1, size - index);
+      endTimes[index] = endTime;
+      slots[index] = slot;
+      size++;
+    }
+
+    /** Remove slot with endTime, no-op if not in bucket */
+    void remove(long endTime, int slot) {
+      for (int i = indexAfter(endTime - 1); i < size && endTimes[i] == endTime; i++) {
+        if (slots[i] == slot) {
+          System.arraycopy(endTimes, i + 1, endTimes, i, size - i - 1);
+          System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+          size--;
+          return;
+        }
+      }
+    }
+
+    /** @return index of the first entry with endTime after minEndTime */
+    int indexAfter(long minEndTime) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (endTimes[mid] <= minEndTime) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.Participant;
+
+/**
+ * Scores a pair by the fraction of filled inputs (role, product area, interests) they share: the
+ * more shared the better for SIMILAR, the fewer shared the better for DIFFERENT
+ */
+public final class OverlapMatchScorer implements MatchScorer {
+
+  /** Score for two participants with no preference, any partner is as good as another */
+  private static final double ANY_SCORE = 0.5;
+
+  @Override
+  public double score(Participant firstParticipant, Participant secondParticipant) {
+    MatchPreference combinedMatchPreference =
+        MatchPreference.getCombinedMatchPreference(
+            firstParticipant.getMatchPreference(), secondParticipant.getMatchPreference());
+    if (combinedMatchPreference == null || combinedMatchPreference == MatchPreference.ANY) {
+      return ANY_SCORE;
+    }
+
+    int maxNumFilledInputs =
+        Math.max(firstParticipant.getNumFilledInputs(), secondParticipant.getNumFilledInputs());
+    double overlap =
+        maxNumFilledInputs == 0
+            ? 0
+            : (double) firstParticipant.getNumSharedFilledInputs(secondParticipant)
+                / maxNumFilledInputs;
+    return combinedMatchPreference == MatchPreference.SIMILAR ? overlap : 1 - overlap;
+  }
+}
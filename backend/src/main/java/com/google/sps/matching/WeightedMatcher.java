@@ -0,0 +1,295 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.matching;
+
+import com.google.common.base.Ticker;
+import com.google.sps.data.Participant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Pairs participants to maximize the number of matches first and their total score second, within a
+ * CPU time budget. Candidate edges are limited to a window of participants after each one in list
+ * order, pairs are picked greedily by score, then improved with augmenting paths and pair swaps
+ * until no improvement is found or the deadline passes.
+ */
+public final class WeightedMatcher {
+
+  /** Default number of compatible candidates kept per participant */
+  public static final int DEFAULT_MAX_CANDIDATES_PER_PARTICIPANT = 16;
+  /** Default number of later participants checked for compatibility per participant */
+  public static final int DEFAULT_MAX_SCANS_PER_PARTICIPANT = 512;
+
+  /** Partner value of a participant that is not paired */
+  public static final int UNPAIRED = -1;
+
+  /** Score difference below which a swap is not worth making */
+  private static final double EPSILON = 1e-9;
+
+  /** Scorer for compatible pairs, scores are between 0 and 1 */
+  private final MatchScorer scorer;
+  /** Time source for the CPU budget */
+  private final Ticker ticker;
+  /** Number of compatible candidates kept per participant */
+  private final int maxCandidatesPerParticipant;
+  /** Number of later participants checked for compatibility per participant */
+  private final int maxScansPerParticipant;
+
+  /** Constructor with default candidate limits */
+  public WeightedMatcher(MatchScorer scorer, Ticker ticker) {
+    this(scorer, ticker, DEFAULT_MAX_CANDIDATES_PER_PARTICIPANT, DEFAULT_MAX_SCANS_PER_PARTICIPANT);
+  }
+
+  /** Constructor */
+  public WeightedMatcher(
+      MatchScorer scorer,
+      Ticker ticker,
+      int maxCandidatesPerParticipant,
+      int maxScansPerParticipant) {
+    this.scorer = scorer;
+    this.ticker = ticker;
+    this.maxCandidatesPerParticipant = maxCandidatesPerParticipant;
+    this.maxScansPerParticipant = maxScansPerParticipant;
+  }
+
+  /**
+   * Pair participants that isCompatible accepts. Participants earlier in the list are preferred
+   * when scores tie, so callers should put the most urgent participants first.
+   *
+   * @param isCompatible symmetric check that two participants can be matched
+   * @param deadlineNanos ticker time after which no more work is started
+   * @return index of each participant's partner, or UNPAIRED
+   */
+  public int[] match(
+      List<Participant> participants,
+      BiPredicate<Participant, Participant> isCompatible,
+      long deadlineNanos) {
+    int numParticipants = participants.size();
+    int[] partners = new int[numParticipants];
+    Arrays.fill(partners, UNPAIRED);
+
+    CandidateGraph graph = buildCandidateGraph(participants, isCompatible, deadlineNanos);
+    pairGreedily(graph, partners);
+    while (ticker.read() < deadlineNanos
+        && (augment(graph, partners, deadlineNanos) | swap(graph, partners, deadlineNanos))) {
+      // Keep improving until a pass changes nothing
+    }
+    pairLeftovers(participants, isCompatible, partners, deadlineNanos);
+    return partners;
+  }
+
+  /** Score compatible pairs within the scan window of each participant */
+  private CandidateGraph buildCandidateGraph(
+      List<Participant> participants,
+      BiPredicate<Participant, Participant> isCompatible,
+      long deadlineNanos) {
+    int numParticipants = participants.size();
+    EdgeList edges = new EdgeList();
+    for (int i = 0; i < numParticipants && ticker.read() < deadlineNanos; i++) {
+      Participant first = participants.get(i);
+      int lastScanned = Math.min(numParticipants - 1, i + maxScansPerParticipant);
+      int numCandidates = 0;
+      for (int j = i + 1; j <= lastScanned && numCandidates < maxCandidatesPerParticipant; j++) {
+        Participant second = participants.get(j);
+        if (isCompatible.test(first, second)) {
+          // Every pair outweighs any score difference, so more matches always win
+          edges.add(i, j, 1 + scorer.score(first, second));
+          numCandidates++;
+        }
+      }
+    }
+    return new CandidateGraph(numParticipants, edges);
+  }
+
+  /** Pair unpaired participants along the highest weight edges first */
+  private static void pairGreedily(CandidateGraph graph, int[] partners) {
+    Integer[] order = new Integer[graph.edges.size];
+    for (int e = 0; e < order.length; e++) {
+      order[e] = e;
+    }
+    // Stable sort keeps earlier participants first among equal weights
+    Arrays.sort(order, (a, b) -> Double.compare(graph.edges.weights[b], graph.edges.weights[a]));
+    for (int e : order) {
+      int first = graph.edges.firsts[e];
+      int second = graph.edges.seconds[e];
+      if (partners[first] == UNPAIRED && partners[second] == UNPAIRED) {
+        partners[first] = second;
+        partners[second] = first;
+      }
+    }
+  }
+
+  /**
+   * Grow the pairing along augmenting paths of length three: unpaired u - v, paired v - w, w - x
+   * unpaired becomes u - v, w - x.
+   *
+   * @return true if any pair was added
+   */
+  private boolean augment(CandidateGraph graph, int[] partners, long deadlineNanos) {
+    boolean improved = false;
+    for (int u = 0; u < partners.length && ticker.read() < deadlineNanos; u++) {
+      if (partners[u] != UNPAIRED) {
+        continue;
+      }
+      search:
+      for (int e = graph.offsets[u]; e < graph.offsets[u + 1]; e++) {
+        int v = graph.neighbors[e];
+        int w = partners[v];
+        if (w == UNPAIRED) {
+          // Both unpaired, pair directly
+          pair(partners, u, v);
+          improved = true;
+          break;
+        }
+        for (int f = graph.offsets[w]; f < graph.offsets[w + 1]; f++) {
+          int x = graph.neighbors[f];
+          if (x != u && partners[x] == UNPAIRED) {
+            pair(partners, u, v);
+            pair(partners, w, x);
+            improved = true;
+            break search;
+          }
+        }
+      }
+    }
+    return improved;
+  }
+
+  /**
+   * Swap partners between two pairs a - b, c - d to a - c, b - d when that raises total weight.
+   *
+   * @return true if any pairs were swapped
+   */
+  private boolean swap(CandidateGraph graph, int[] partners, long deadlineNanos) {
+    boolean improved = false;
+    for (int a = 0; a < partners.length && ticker.read() < deadlineNanos; a++) {
+      int b = partners[a];
+      if (b == UNPAIRED) {
+        continue;
+      }
+      double pairWeight = graph.weight(a, b);
+      for (int e = graph.offsets[a]; e < graph.offsets[a + 1]; e++) {
+        int c = graph.neighbors[e];
+        int d = partners[c];
+        if (c == b || d == UNPAIRED) {
+          continue;
+        }
+        double swappedWeight = graph.weights[e] + graph.weight(b, d);
+        if (swappedWeight > pairWeight + graph.weight(c, d) + EPSILON) {
+          pair(partners, a, c);
+          pair(partners, b, d);
+          improved = true;
+          break;
+        }
+      }
+    }
+    return improved;
+  }
+
+  /** Pair any remaining compatible participants the candidate window or deadline left out */
+  private void pairLeftovers(
+      List<Participant> participants,
+      BiPredicate<Participant, Participant> isCompatible,
+      int[] partners,
+      long deadlineNanos) {
+    for (int i = 0; i < partners.length && ticker.read() < deadlineNanos; i++) {
+      if (partners[i] != UNPAIRED) {
+        continue;
+      }
+      for (int j = i + 1; j < partners.length; j++) {
+        if (partners[j] == UNPAIRED
+            && isCompatible.test(participants.get(i), participants.get(j))) {
+          pair(partners, i, j);
+          break;
+        }
+      }
+    }
+  }
+
+  private static void pair(int[] partners, int first, int second) {
+    partners[first] = second;
+    partners[second] = first;
+  }
+
+  /** Growable list of weighted edges in primitive arrays */
+  private static final class EdgeList {
+    private int[] firsts = new int[16];
+    private int[] seconds = new int[16];
+    private double[] weights = new double[16];
+    private int size = 0;
+
+    private void add(int first, int second, double weight) {
+      if (size == firsts.length) {
+        firsts = Arrays.copyOf(firsts, size * 2);
+        seconds = Arrays.copyOf(seconds, size * 2);
+        weights = Arrays.copyOf(weights, size * 2);
+      }
+      firsts[size] = first;
+      seconds[size] = second;
+      weights[size] = weight;
+      size++;
+    }
+  }
+
+  /** Candidate edges in compressed adjacency form, each edge stored in both directions */
+  private static final class CandidateGraph {
+    private final EdgeList edges;
+    /** Neighbors of participant i are at neighbors[offsets[i]] until offsets[i + 1] */
+    private final int[] offsets;
+
+    private final int[] neighbors;
+    private final double[] weights;
+
+    private CandidateGraph(int numParticipants, EdgeList edges) {
+      this.edges = edges;
+      offsets = new int[numParticipants + 1];
+      for (int e = 0; e < edges.size; e++) {
+        offsets[edges.firsts[e] + 1]++;
+        offsets[edges.seconds[e] + 1]++;
+      }
+      for (int i = 0; i < numParticipants; i++) {
+        offsets[i + 1] += offsets[i];
+      }
+      neighbors = new int[edges.size * 2];
+      weights = new double[edges.size * 2];
+      int[] next = Arrays.copyOf(offsets, numParticipants);
+      for (int e = 0; e < edges.size; e++) {
+        int first = edges.firsts[e];
+        int second = edges.seconds[e];
+        neighbors[next[first]] = second;
+        weights[next[first]++] = edges.weights[e];
+        neighbors[next[second]] = first;
+        weights[next[second]++] = edges.weights[e];
+      }
+    }
+
+    /** @return weight of edge between participants, or negative infinity if no edge */
+    private double weight(int first, int second) {
+      // Search the shorter adjacency list
+      if (offsets[first + 1] - offsets[first] > offsets[second + 1] - offsets[second]) {
+        int swap = first;
+        first = second;
+        second = swap;
+      }
+      for (int e = offsets[first]; e < offsets[first + 1]; e++) {
+        if (neighbors[e] == second) {
+          return weights[e];
+        }
+      }
+      return Double.NEGATIVE_INFINITY;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * Registry of named counters, gauges and timers for the matching hot path. Recording is lock-free,
+ * so it is cheap enough to do on every request and every scanned candidate. Exported as JSON by
+ * MetricsServlet.
+ */
+public final class Metrics {
+
+  // Counter names
+  public static final String CANDIDATES_SCANNED = "candidates_scanned";
+  public static final String MATCHES_MADE = "matches_made";
+  public static final String PARTICIPANTS_EXPIRED = "participants_expired";
+  public static final String MATCH_COMMIT_CONFLICTS = "match_commit_conflicts";
+  public static final String MATCH_COMMIT_RETRIES = "match_commit_retries";
+  public static final String EMAILS_SENT = "emails_sent";
+  public static final String EMAILS_FAILED = "emails_failed";
+  public static final String EMAIL_RETRIES = "email_retries";
+
+  // Gauge names
+  public static final String OUTBOX_PENDING = "outbox_pending";
+
+  // Timer names
+  public static final String FIND_MATCH_LATENCY = "find_match_latency";
+  public static final String ADD_PARTICIPANT_LATENCY = "add_participant_latency";
+  public static final String MATCH_WAIT = "match_wait";
+  public static final String DATASTORE_PARTICIPANT_GET = "datastore_participant_get";
+  public static final String DATASTORE_PARTICIPANT_PUT = "datastore_participant_put";
+  public static final String DATASTORE_PARTICIPANT_DELETE = "datastore_participant_delete";
+  public static final String DATASTORE_CANDIDATE_PAGE = "datastore_candidate_page";
+  public static final String DATASTORE_MATCH_GET = "datastore_match_get";
+  public static final String DATASTORE_MATCH_COMMIT = "datastore_match_commit";
+  public static final String DATASTORE_SNAPSHOT_GET = "datastore_snapshot_get";
+  public static final String DATASTORE_SNAPSHOT_PUT = "datastore_snapshot_put";
+  public static final String POOL_FULL_LOAD = "pool_full_load";
+  public static final String POOL_SNAPSHOT_LOAD = "pool_snapshot_load";
+  public static final String POOL_REFRESH = "pool_refresh";
+  public static final String WARMUP = "warmup";
+  public static final String EMAIL_BATCH_SEND = "email_batch_send";
+
+  // JSON key constants
+  private static final String JSON_COUNTERS = "counters";
+  private static final String JSON_GAUGES = "gauges";
+  private static final String JSON_TIMERS = "timers";
+  private static final String JSON_COUNT = "count";
+  private static final String JSON_TOTAL_MILLIS = "totalMillis";
+  private static final String JSON_MEAN_MILLIS = "meanMillis";
+  private static final String JSON_MAX_MILLIS = "maxMillis";
+
+  /** Registry shared by everything in this instance */
+  private static final Metrics SHARED = new Metrics();
+
+  /** Counter name to count */
+  private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+  /** Gauge name to its last set value */
+  private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+  /** Timer name to timer */
+  private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+  /** @return registry shared by everything in this instance */
+  public static Metrics shared() {
+    return SHARED;
+  }
+
+  /** Add one to counter with name */
+  public void increment(String name) {
+    add(name, 1);
+  }
+
+  /** Add delta to counter with name */
+  public void add(String name, long delta) {
+    counters.computeIfAbsent(name, n -> new LongAdder()).add(delta);
+  }
+
+  /** Set gauge with name to value, replacing its last value */
+  public void setGauge(String name, long value) {
+    gauges.computeIfAbsent(name, n -> new AtomicLong()).set(value);
+  }
+
+  /** Record one event of nanos duration in timer with name */
+  public void recordNanos(String name, long nanos) {
+    timers.computeIfAbsent(name, n -> new Timer()).record(nanos);
+  }
+
+  /** Record the time since startNanos, a System.nanoTime reading, in timer with name */
+  public void recordSince(String name, long startNanos) {
+    recordNanos(name, System.nanoTime() - startNanos);
+  }
+
+  /** @return count of counter with name, 0 if never incremented */
+  public long getCount(String name) {
+    LongAdder counter = counters.get(name);
+    return counter == null ? 0 : counter.sum();
+  }
+
+  /** @return last value of gauge with name, 0 if never set */
+  public long getGauge(String name) {
+    AtomicLong gauge = gauges.get(name);
+    return gauge == null ? 0 : gauge.get();
+  }
+
+  /** @return number of events recorded in timer with name, 0 if never recorded */
+  public long getTimerCount(String name) {
+    Timer timer = timers.get(name);
+    return timer == null ? 0 : timer.count.sum();
+  }
+
+  /**
+   * @return JSON object of all counters, last value of all gauges, and count, total, mean and max
+   *     of all timers
+   */
+  public JSONObject toJson() {
+    JSONObject countersJson = new JSONObject();
+    for (Map.Entry<String, LongAdder> counter : new TreeMap<>(counters).entrySet()) {
+      countersJson.put(counter.getKey(), counter.getValue().sum());
+    }
+    JSONObject gaugesJson = new JSONObject();
+    for (Map.Entry<String, AtomicLong> gauge : new TreeMap<>(gauges).entrySet()) {
+      gaugesJson.put(gauge.getKey(), gauge.getValue().get());
+    }
+    JSONObject timersJson = new JSONObject();
+    for (Map.Entry<String, Timer> timer : new TreeMap<>(timers).entrySet()) {
+      timersJson.put(timer.getKey(), timer.getValue().toJson());
+    }
+    JSONObject json = new JSONObject();
+    json.put(JSON_COUNTERS, countersJson);
+    json.put(JSON_GAUGES, gaugesJson);
+    json.put(JSON_TIMERS, timersJson);
+    return json;
+  }
+
+  /** Count, total and max duration of timed events */
+  private static final class Timer {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /** Record one event of nanos duration */
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    /** @return JSON object of count, and total, mean and max duration in milliseconds */
+    JSONObject toJson() {
+      long numEvents = count.sum();
+      double totalMillis = toMillis(totalNanos.sum());
+      JSONObject json = new JSONObject();
+      json.put(JSON_COUNT, numEvents);
+      json.put(JSON_TOTAL_MILLIS, totalMillis);
+      json.put(JSON_MEAN_MILLIS, numEvents == 0 ? 0 : totalMillis / numEvents);
+      json.put(JSON_MAX_MILLIS, toMillis(maxNanos.get()));
+      return json;
+    }
+
+    private static double toMillis(long nanos) {
+      return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+}
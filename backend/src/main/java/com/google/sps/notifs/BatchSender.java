@@ -0,0 +1,60 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.notifs;
+
+import com.google.api.services.gmail.model.Message;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Sends a batch of messages in one round trip */
+public interface BatchSender {
+
+  /**
+   * Send messages
+   *
+   * @return messages that failed, split into those that may succeed if sent again and those
+   *     rejected for good
+   * @throws IOException if the batch itself could not be sent, all messages may be sent again
+   */
+  Result send(List<Message> messages) throws IOException;
+
+  /** Messages of a batch that were not sent, the rest were sent */
+  final class Result {
+
+    /** Messages that failed but may succeed if sent again */
+    private final List<Message> retryable = new ArrayList<>();
+    /** Messages rejected for good, that fail however often they are sent */
+    private final List<Message> rejected = new ArrayList<>();
+
+    /** Record message as failed but worth sending again */
+    public void addRetryable(Message message) {
+      retryable.add(message);
+    }
+
+    /** Record message as rejected for good */
+    public void addRejected(Message message) {
+      rejected.add(message);
+    }
+
+    public List<Message> getRetryable() {
+      return retryable;
+    }
+
+    public List<Message> getRejected() {
+      return rejected;
+    }
+  }
+}
@@ -18,15 +18,21 @@ import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.Message;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Properties;
+import javax.annotation.Nullable;
 import javax.mail.Message.RecipientType;
 import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
-import org.apache.commons.codec.binary.Base64;
 
-/** Class representing the notification system capable of sending mail to the user. */
+/**
+ * Class representing the notification system capable of sending mail to the user. Sends through
+ * Gmail on the calling thread, or creates messages for the outbox drain to send in batches.
+ */
 public class EmailNotifier {
 
   //   TODO(#35): Create a dummy email account for ad lib itself to send emails.
@@ -37,6 +43,38 @@ public class EmailNotifier {
    */
   private static final String AUTH_USERNAME = "me";
 
+  /** Domain of Message-IDs derived from dedupe keys */
+  private static final String MESSAGE_ID_DOMAIN = "ad-lib-step-2020.appspot.com";
+
+  private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+  private static final String MATCH_SUBJECT = "Ad-lib: We found you a match!";
+  private static final EmailTemplate MATCH_BODY =
+      new EmailTemplate(
+          " We found you a match with %s "
+              + " Check your calendar for your meeting event,"
+              + " and feel free to join the Meet call now!\n");
+
+  private static final String EXPIRED_SUBJECT = "Ad-lib: Sorry, we couldn't find you a match!";
+  private static final EmailTemplate EXPIRED_BODY =
+      new EmailTemplate(
+          " Sorry %s, we couldn't find a match for you this time, but we encourage you to "
+              + " please try again later! \n "
+              + " Best, \n"
+              + " The Ad-lib team \n");
+
+  /** Largest buffer kept for reuse, so one unusually large email does not pin its memory */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+  /** Mail session shared by every email, which are only written out and never sent by JavaMail */
+  private static final Session session = Session.getInstance(new Properties());
+  /** Per-thread buffer bodies are rendered into */
+  private static final ThreadLocal<StringBuilder> textBuffers =
+      ThreadLocal.withInitial(StringBuilder::new);
+  /** Per-thread buffer encoded emails are written into */
+  private static final ThreadLocal<ByteArrayOutputStream> rawBuffers =
+      ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
   /** The gmail service */
   private final Gmail service;
 
@@ -46,7 +84,8 @@ public class EmailNotifier {
   }
 
   /**
-   * Create a message from an email.
+   * Create a message from an email. The email is encoded as it is written, into this thread's
+   * reusable buffer, so the unencoded email is never held in memory.
    *
    * @param emailContent Email to be sent to raw of message
    * @return a message containing a base64url encoded email
@@ -55,31 +94,47 @@ public class EmailNotifier {
    */
   private static Message createMessageWithEmail(MimeMessage emailContent)
       throws MessagingException, IOException {
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    emailContent.writeTo(buffer);
-    byte[] bytes = buffer.toByteArray();
-    String encodedEmail = Base64.encodeBase64URLSafeString(bytes);
+    ByteArrayOutputStream buffer = rawBuffers.get();
+    buffer.reset();
+    // Closing the encoder writes its last bytes, and closing a ByteArrayOutputStream does nothing
+    try (OutputStream encoder = Base64.getUrlEncoder().withoutPadding().wrap(buffer)) {
+      emailContent.writeTo(encoder);
+    }
     Message message = new Message();
-    message.setRaw(encodedEmail);
+    message.setRaw(buffer.toString(StandardCharsets.US_ASCII.name()));
+    if (buffer.size() > MAX_RETAINED_BUFFER_SIZE) {
+      rawBuffers.remove();
+    }
     return message;
   }
 
+  /** @return template rendered with args through this thread's reusable buffer */
+  private static String render(EmailTemplate template, String... args) {
+    StringBuilder buffer = textBuffers.get();
+    buffer.setLength(0);
+    template.render(buffer, args);
+    String text = buffer.toString();
+    if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      textBuffers.remove();
+    }
+    return text;
+  }
+
   /**
    * Create a MimeMessage using the parameters provided.
    *
    * @param recipientEmail email to which the notification should be sent
    * @param subjectText subject of the email
    * @param bodyText body text of the email
+   * @param dedupeKey key the Message-ID is derived from, or null for a generated Message-ID
    * @return the MimeMessage to be used to send email
    * @throws MessagingException if there was a problem accessing the Store
    */
-  private MimeMessage createEmail(String recipientEmail, String subjectText, String bodyText)
+  private static MimeMessage createEmail(
+      String recipientEmail, String subjectText, String bodyText, @Nullable String dedupeKey)
       throws MessagingException {
-
-    Properties props = new Properties();
-    Session session = Session.getDefaultInstance(props, /* authenticator= */ null);
-
-    MimeMessage email = new MimeMessage(session);
+    MimeMessage email =
+        dedupeKey == null ? new MimeMessage(session) : new DedupedMimeMessage(session, dedupeKey);
 
     email.setFrom(new InternetAddress(APPLICATION_EMAIL));
     email.addRecipient(RecipientType.TO, new InternetAddress(recipientEmail));
@@ -92,33 +147,69 @@ public class EmailNotifier {
   //   TODO(#36): Replace body to send real link to user instead of generic.
   public void sendMatchEmail(String recipientName, String recipientEmail)
       throws MessagingException, IOException {
+    send(createMatchMessage(recipientName, recipientEmail, /* dedupeKey= */ null));
+  }
+
+  /**
+   * Create the message telling recipientEmail they were matched with recipientName.
+   *
+   * @param dedupeKey key the Message-ID is derived from, so every send of the same notification
+   *     carries the same Message-ID, or null for a generated Message-ID
+   * @return a message containing a base64url encoded email
+   */
+  public static Message createMatchMessage(
+      String recipientName, String recipientEmail, @Nullable String dedupeKey)
+      throws MessagingException, IOException {
     MimeMessage email =
-        createEmail(
-            recipientEmail,
-            "Ad-lib: We found you a match!",
-            String.format(
-                " We found you a match with %s "
-                    + " Check your calendar for your meeting event,"
-                    + " and feel free to join the Meet call now!\n",
-                recipientName));
-    Message messageWithEmail = createMessageWithEmail(email);
-    service.users().messages().send(AUTH_USERNAME, messageWithEmail).execute();
+        createEmail(recipientEmail, MATCH_SUBJECT, render(MATCH_BODY, recipientName), dedupeKey);
+    return createMessageWithEmail(email);
   }
 
   /** Function that access its api and using it sends an email */
   public void sendExpiredEmail(String expiredRecipientUsername, String expiredRecipientEmail)
       throws MessagingException, IOException {
+    send(
+        createExpiredMessage(
+            expiredRecipientUsername, expiredRecipientEmail, /* dedupeKey= */ null));
+  }
+
+  /**
+   * Create the message telling expiredRecipientEmail they were not matched.
+   *
+   * @param dedupeKey key the Message-ID is derived from, so every send of the same notification
+   *     carries the same Message-ID, or null for a generated Message-ID
+   * @return a message containing a base64url encoded email
+   */
+  public static Message createExpiredMessage(
+      String expiredRecipientUsername, String expiredRecipientEmail, @Nullable String dedupeKey)
+      throws MessagingException, IOException {
     MimeMessage email =
         createEmail(
             expiredRecipientEmail,
-            "Ad-lib: Sorry, we couldn't find you a match!",
-            String.format(
-                " Sorry %s, we couldn't find a match for you this time, but we encourage you to "
-                    + " please try again later! \n "
-                    + " Best, \n"
-                    + " The Ad-lib team \n",
-                expiredRecipientUsername));
-    Message messageWithEmail = createMessageWithEmail(email);
-    service.users().messages().send(AUTH_USERNAME, messageWithEmail).execute();
+            EXPIRED_SUBJECT,
+            render(EXPIRED_BODY, expiredRecipientUsername),
+            dedupeKey);
+    return createMessageWithEmail(email);
+  }
+
+  /** Send message now */
+  private void send(Message message) throws IOException {
+    service.users().messages().send(AUTH_USERNAME, message).execute();
+  }
+
+  /** MimeMessage whose Message-ID is derived from a dedupe key instead of generated */
+  private static final class DedupedMimeMessage extends MimeMessage {
+
+    private final String messageId;
+
+    DedupedMimeMessage(Session session, String dedupeKey) {
+      super(session);
+      this.messageId = "<" + dedupeKey + "@" + MESSAGE_ID_DOMAIN + ">";
+    }
+
+    @Override
+    protected void updateMessageID() throws MessagingException {
+      setHeader(HEADER_MESSAGE_ID, messageId);
+    }
   }
 }
@@ -0,0 +1,57 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.notifs;
+
+import com.google.common.base.Splitter;
+import java.util.List;
+
+/**
+ * Email text with %s placeholders, split into its literal parts once so rendering only appends
+ * parts and arguments to the caller's buffer instead of parsing a format string on every send.
+ */
+public final class EmailTemplate {
+
+  private static final String PLACEHOLDER = "%s";
+
+  /** Literal text between placeholders, one more than the number of placeholders */
+  private final String[] parts;
+
+  /** @param template text with one %s for each argument to render */
+  public EmailTemplate(String template) {
+    List<String> partList = Splitter.on(PLACEHOLDER).splitToList(template);
+    this.parts = partList.toArray(new String[0]);
+  }
+
+  /** @return number of arguments render expects */
+  public int getNumArguments() {
+    return parts.length - 1;
+  }
+
+  /**
+   * Append the template to buffer with its placeholders replaced by args, in order.
+   *
+   * @throws IllegalArgumentException if the number of args does not match the placeholders
+   */
+  public void render(StringBuilder buffer, String... args) {
+    if (args.length != getNumArguments()) {
+      throw new IllegalArgumentException(
+          "Expected " + getNumArguments() + " arguments, got " + args.length);
+    }
+    buffer.append(parts[0]);
+    for (int i = 0; i < args.length; i++) {
+      buffer.append(args[i]).append(parts[i + 1]);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.notifs;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+import com.google.sps.GmailFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+/** Sends messages through Gmail in batch HTTP requests, one round trip for the whole batch */
+public class GmailBatchSender implements BatchSender {
+
+  private static final Logger logger = Logger.getLogger(GmailBatchSender.class.getName());
+
+  /** Most messages to send per batch, Gmail advises against batches over 50 */
+  public static final int MAX_BATCH_SIZE = 50;
+
+  /** The special user id of the authenticated user */
+  private static final String AUTH_USERNAME = "me";
+  /** Gmail's batch endpoint, relative to the API root */
+  private static final String BATCH_PATH = "batch/gmail/v1";
+  /** Status Gmail answers with when sending too fast */
+  private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+  /** Holder of the shared Gmail client */
+  private final GmailFactory gmailFactory;
+
+  /** @param gmailFactory holder of the Gmail client, built by the first send */
+  public GmailBatchSender(GmailFactory gmailFactory) {
+    this.gmailFactory = gmailFactory;
+  }
+
+  @Override
+  public Result send(List<Message> messages) throws IOException {
+    Gmail service = gmailFactory.getGmail();
+    BatchRequest batch = service.batch();
+    batch.setBatchUrl(new GenericUrl(service.getRootUrl() + BATCH_PATH));
+    Result result = new Result();
+    for (Message message : messages) {
+      service
+          .users()
+          .messages()
+          .send(AUTH_USERNAME, message)
+          .queue(
+              batch,
+              new JsonBatchCallback<Message>() {
+                @Override
+                public void onSuccess(Message sent, HttpHeaders responseHeaders) {}
+
+                @Override
+                public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                  if (isRetryable(error.getCode())) {
+                    result.addRetryable(message);
+                  } else {
+                    logger.warning(() -> "Gmail rejected email: " + error.getMessage());
+                    result.addRejected(message);
+                  }
+                }
+              });
+    }
+    batch.execute();
+    return result;
+  }
+
+  /** @return whether a send that failed with statusCode may succeed later */
+  private static boolean isRetryable(int statusCode) {
+    return statusCode == STATUS_TOO_MANY_REQUESTS
+        || statusCode >= HttpStatusCodes.STATUS_CODE_SERVER_ERROR;
+  }
+}
@@ -14,16 +14,9 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.users.UserServiceFactory;
 import com.google.sps.AddParticipantHelper;
-import com.google.sps.UsernameService;
-import com.google.sps.datastore.MatchDatastore;
-import com.google.sps.datastore.ParticipantDatastore;
-import com.google.sps.datastore.UserDatastore;
+import com.google.sps.AppContext;
 import java.io.IOException;
-import java.time.Clock;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -33,17 +26,12 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/api/v1/add-participant")
 public class AddParticipantServlet extends HttpServlet {
 
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private final MatchDatastore matchDatastore = new MatchDatastore(datastore);
-  private final ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
-  private final UserDatastore userDatastore = new UserDatastore(datastore);
+  private AddParticipantHelper addParticipantHelper;
 
-  private final UsernameService usernameService =
-      new UsernameService(UserServiceFactory.getUserService());
-
-  private final AddParticipantHelper addParticipantHelper =
-      new AddParticipantHelper(
-          Clock.systemUTC(), matchDatastore, participantDatastore, userDatastore, usernameService);
+  @Override
+  public void init() {
+    addParticipantHelper = new AddParticipantHelper(AppContext.get(getServletContext()));
+  }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -0,0 +1,40 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AppContext;
+import com.google.sps.BatchMatchHelper;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/** Cron servlet that matches all compatible participants waiting in the queue */
+@WebServlet("/api/v1/batch-match")
+public class BatchMatchServlet extends HttpServlet {
+
+  private BatchMatchHelper batchMatchHelper;
+
+  @Override
+  public void init() {
+    batchMatchHelper = new BatchMatchHelper(AppContext.get(getServletContext()));
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    batchMatchHelper.doGet(request, response);
+  }
+}
@@ -14,12 +14,8 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.AppContext;
 import com.google.sps.LoadUserPreferencesHelper;
-import com.google.sps.UsernameService;
-import com.google.sps.datastore.UserDatastore;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -30,13 +26,12 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/api/v1/load-user")
 public class LoadUserPreferencesServlet extends HttpServlet {
 
-  // Get DatastoreService and instantiate User Datastore
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private final UserDatastore userDatastore = new UserDatastore(datastore);
-  private final UsernameService usernameService =
-      new UsernameService(UserServiceFactory.getUserService());
-  private final LoadUserPreferencesHelper loadUserPreferencesHelper =
-      new LoadUserPreferencesHelper(userDatastore, usernameService);
+  private LoadUserPreferencesHelper loadUserPreferencesHelper;
+
+  @Override
+  public void init() {
+    loadUserPreferencesHelper = new LoadUserPreferencesHelper(AppContext.get(getServletContext()));
+  }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
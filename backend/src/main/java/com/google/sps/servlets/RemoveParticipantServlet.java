@@ -14,11 +14,8 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.AppContext;
 import com.google.sps.RemoveParticipantHelper;
-import com.google.sps.UsernameService;
-import com.google.sps.datastore.ParticipantDatastore;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -29,10 +26,12 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/api/v1/remove-participant")
 public class RemoveParticipantServlet extends HttpServlet {
 
-  private final RemoveParticipantHelper helper =
-      new RemoveParticipantHelper(
-          new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService()),
-          new UsernameService(UserServiceFactory.getUserService()));
+  private RemoveParticipantHelper helper;
+
+  @Override
+  public void init() {
+    helper = new RemoveParticipantHelper(AppContext.get(getServletContext()));
+  }
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
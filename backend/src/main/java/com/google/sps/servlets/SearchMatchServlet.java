@@ -14,13 +14,8 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.AppContext;
 import com.google.sps.SearchMatchHelper;
-import com.google.sps.UsernameService;
-import com.google.sps.datastore.MatchDatastore;
-import com.google.sps.datastore.ParticipantDatastore;
 import java.io.IOException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -31,16 +26,12 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/api/v1/search-match")
 public class SearchMatchServlet extends HttpServlet {
 
-  // Get DatastoreService and instiate Match and Participant Datastores
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private final MatchDatastore matchDatastore = new MatchDatastore(datastore);
-  private final ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+  private SearchMatchHelper searchMatchHelper;
 
-  private final UsernameService usernameService =
-      new UsernameService(UserServiceFactory.getUserService());
-
-  private final SearchMatchHelper searchMatchHelper =
-      new SearchMatchHelper(matchDatastore, participantDatastore, usernameService);
+  @Override
+  public void init() {
+    searchMatchHelper = new SearchMatchHelper(AppContext.get(getServletContext()));
+  }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -3,6 +3,7 @@ package com.google.sps;
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -10,6 +11,7 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Strings;
 import com.google.sps.data.Match;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.MatchStatus;
@@ -18,13 +20,17 @@ import com.google.sps.data.User;
 import com.google.sps.datastore.MatchDatastore;
 import com.google.sps.datastore.ParticipantDatastore;
 import com.google.sps.datastore.UserDatastore;
+import com.google.sps.matching.MatchingPool;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -63,6 +69,7 @@ public class AddParticipantHelperTest {
   // Input constants
   private static final String USERNAME_PERSON_A = "persona";
   private static final String USERNAME_PERSON_B = "personb";
+  private static final String USERNAME_PERSON_C = "personc";
   private static final int DURATION_DEFAULT = 30;
   private static final long START_TIME_AVAILABLE_DEFAULT =
       currentDateTimeET.toInstant().toEpochMilli(); // not used
@@ -70,7 +77,7 @@ public class AddParticipantHelperTest {
       START_TIME_AVAILABLE_DEFAULT + TimeUnit.MINUTES.toMillis(100);
   private static final String ROLE_DEFAULT = "Software engineer";
   private static final String PRODUCT_AREA_DEFAULT = "Ads";
-  private static final JSONArray INTERESTS_DEFAULT = new JSONArray().put("Books");
+  private static final List<String> INTERESTS_DEFAULT = Arrays.asList("Books");
   private static final boolean SAVE_PREFERENCE_TRUE = true;
   private static final boolean SAVE_PREFERENCE_FALSE = false;
   private static final String MATCH_PREFERENCE_ANY = "any";
@@ -140,6 +147,112 @@ public class AddParticipantHelperTest {
     verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
   }
 
+  @Test
+  public void malformedBody() throws IOException {
+    when(request.getReader()).thenReturn(new BufferedReader(new StringReader("{\"formDetails\":")));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_A);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
+    verify(participantDatastore, never()).addParticipant(any());
+  }
+
+  @Test
+  public void missingFormDetail() throws IOException {
+    JSONObject obj = new JSONObject();
+    JSONObject formDetails = getDefaultFormDetails();
+    formDetails.remove(REQUEST_DURATION);
+    obj.put(REQUEST_FORM_DETAILS, formDetails);
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_A);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
+  }
+
+  @Test
+  public void oversizedBodyRejectedWhileReading() throws IOException {
+    JSONObject obj = new JSONObject();
+    JSONObject formDetails = getDefaultFormDetails();
+    JSONArray interests = new JSONArray();
+    for (int i = 0; i < AddParticipantRequest.MAX_BODY_CHARS; i++) {
+      interests.put("Books");
+    }
+    formDetails.put(REQUEST_INTERESTS, interests);
+    obj.put(REQUEST_FORM_DETAILS, formDetails);
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_A);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(response)
+        .sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large.");
+    verify(participantDatastore, never()).addParticipant(any());
+  }
+
+  @Test
+  public void oversizedContentLengthRejectedWithoutReading() throws IOException {
+    when(request.getContentLength()).thenReturn(AddParticipantRequest.MAX_BODY_BYTES + 1);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(response)
+        .sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Request body too large.");
+    verify(request, never()).getReader();
+  }
+
+  @Test
+  public void multiByteBodyWithinCharLimitAccepted() throws IOException {
+    JSONObject obj = new JSONObject();
+    JSONObject formDetails = getDefaultFormDetails();
+    // Each char is 3 bytes in UTF-8, so the body is over MAX_BODY_CHARS bytes but not chars
+    formDetails.put("notes", Strings.repeat("\u65e5\u672c", 3000));
+    obj.put(REQUEST_FORM_DETAILS, formDetails);
+    when(request.getContentLength())
+        .thenReturn(obj.toString().getBytes(StandardCharsets.UTF_8).length);
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_A);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(participantDatastore).addParticipant(any());
+  }
+
+  @Test
+  public void unknownRoleRejected() throws IOException {
+    JSONObject obj = new JSONObject();
+    JSONObject formDetails = getDefaultFormDetails();
+    formDetails.put(REQUEST_ROLE, "Astronaut");
+    obj.put(REQUEST_FORM_DETAILS, formDetails);
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_A);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock, matchDatastore, participantDatastore, userDatastore, usernameService);
+    addParticipantHelper.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
+    verify(participantDatastore, never()).addParticipant(any());
+  }
+
   @Test
   public void invalidEmail() throws IOException {
     JSONObject obj = new JSONObject();
@@ -177,7 +290,7 @@ public class AddParticipantHelperTest {
     verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid duration.");
   }
 
-  @Test(expected = IllegalStateException.class)
+  @Test
   public void invalidMatchPreference() throws IOException {
     JSONObject obj = new JSONObject();
     JSONObject formDetails = getDefaultFormDetails();
@@ -190,6 +303,9 @@ public class AddParticipantHelperTest {
         new AddParticipantHelper(
             clock, matchDatastore, participantDatastore, userDatastore, usernameService);
     addParticipantHelper.doPost(request, response);
+
+    verify(response).sendError(HttpServletResponse.SC_BAD_REQUEST, "Could not read request body");
+    verify(participantDatastore, never()).addParticipant(any());
   }
 
   @Test
@@ -241,7 +357,7 @@ public class AddParticipantHelperTest {
             DURATION_DEFAULT,
             ROLE_DEFAULT,
             PRODUCT_AREA_DEFAULT,
-            AddParticipantHelper.getListFromJsonArray(INTERESTS_DEFAULT),
+            INTERESTS_DEFAULT,
             MatchPreference.forStringValue(MATCH_PREFERENCE_ANY),
             MATCH_ID_DEFAULT,
             MATCH_STATUS_DEFAULT,
@@ -280,7 +396,7 @@ public class AddParticipantHelperTest {
             DURATION_DEFAULT,
             ROLE_DEFAULT,
             PRODUCT_AREA_DEFAULT,
-            AddParticipantHelper.getListFromJsonArray(INTERESTS_DEFAULT),
+            INTERESTS_DEFAULT,
             MatchPreference.forStringValue(MATCH_PREFERENCE_ANY),
             MATCH_ID_DEFAULT,
             MATCH_STATUS_DEFAULT,
@@ -305,6 +421,110 @@ public class AddParticipantHelperTest {
     assertThat(participantB.getMatchId()).isEqualTo(MATCH_ID_DEFAULT);
   }
 
+  @Test
+  public void stalePooledParticipantNotMatched() throws IOException {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    UserDatastore userDatastore = new UserDatastore(datastore);
+    Participant participantA =
+        new Participant(
+            USERNAME_PERSON_A,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DEFAULT,
+            DURATION_DEFAULT,
+            ROLE_DEFAULT,
+            PRODUCT_AREA_DEFAULT,
+            INTERESTS_DEFAULT,
+            MatchPreference.forStringValue(MATCH_PREFERENCE_ANY),
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_DEFAULT,
+            TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(participantA);
+    MatchingPool matchingPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    matchingPool.loadFrom(participantDatastore);
+    // Participant A leaves the queue through another instance
+    participantDatastore.removeParticipant(USERNAME_PERSON_A);
+    JSONObject obj = new JSONObject();
+    obj.put(REQUEST_FORM_DETAILS, getDefaultFormDetails());
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_B);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock,
+            matchDatastore,
+            participantDatastore,
+            userDatastore,
+            usernameService,
+            matchingPool);
+    addParticipantHelper.doPost(request, response);
+    Participant participantB = participantDatastore.getParticipantFromUsername(USERNAME_PERSON_B);
+
+    assertThat(participantB.getMatchStatus()).isEqualTo(MatchStatus.UNMATCHED);
+    assertThat(matchingPool.get(USERNAME_PERSON_A)).isNull();
+    assertThat(matchingPool.get(USERNAME_PERSON_B)).isNotNull();
+  }
+
+  @Test
+  public void stalePooledParticipantDoesNotBlockValidMatch() throws IOException {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    UserDatastore userDatastore = new UserDatastore(datastore);
+    // A is the closer match for B, C is still a valid one
+    participantDatastore.addParticipant(
+        new Participant(
+            USERNAME_PERSON_A,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DEFAULT,
+            DURATION_DEFAULT,
+            ROLE_DEFAULT,
+            PRODUCT_AREA_DEFAULT,
+            INTERESTS_DEFAULT,
+            MatchPreference.forStringValue(MATCH_PREFERENCE_ANY),
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_DEFAULT,
+            TIMESTAMP_DEFAULT));
+    participantDatastore.addParticipant(
+        new Participant(
+            USERNAME_PERSON_C,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DEFAULT,
+            DURATION_DEFAULT,
+            "Product manager",
+            "Cloud",
+            Arrays.asList("Travel"),
+            MatchPreference.forStringValue(MATCH_PREFERENCE_ANY),
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_DEFAULT,
+            TIMESTAMP_DEFAULT));
+    MatchingPool matchingPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    matchingPool.loadFrom(participantDatastore);
+    // Participant A leaves the queue through another instance, so this pool still holds it
+    participantDatastore.removeParticipant(USERNAME_PERSON_A);
+    JSONObject obj = new JSONObject();
+    obj.put(REQUEST_FORM_DETAILS, getDefaultFormDetails());
+    when(request.getReader()).thenReturn(getReader(obj));
+    when(usernameService.getUsername()).thenReturn(USERNAME_PERSON_B);
+
+    addParticipantHelper =
+        new AddParticipantHelper(
+            clock,
+            matchDatastore,
+            participantDatastore,
+            userDatastore,
+            usernameService,
+            matchingPool);
+    addParticipantHelper.doPost(request, response);
+    Participant participantB = participantDatastore.getParticipantFromUsername(USERNAME_PERSON_B);
+    Match match = matchDatastore.getMatchFromId(participantB.getMatchId());
+
+    assertThat(participantB.getMatchStatus()).isEqualTo(MatchStatus.MATCHED);
+    assertThat(match.getSecondParticipantUsername()).isEqualTo(USERNAME_PERSON_C);
+    assertThat(matchingPool.size()).isEqualTo(0);
+  }
+
   /** Mock HttpServletRequest method */
   private BufferedReader getReader(JSONObject jsonObject) {
     return new BufferedReader(new StringReader(jsonObject.toString()));
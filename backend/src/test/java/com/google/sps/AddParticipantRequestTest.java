@@ -0,0 +1,148 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import com.google.sps.data.FormOptions;
+import com.google.sps.data.InputDictionary;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class AddParticipantRequestTest {
+
+  private static final String USERNAME = "persona";
+  private static final long START_TIME_AVAILABLE = 1_577_905_200_000L;
+  private static final long TIMESTAMP = 1_577_905_200_001L;
+
+  private static final String FORM_DETAILS =
+      "{\"endTimeAvailable\":1577911200000,\"duration\":30,\"role\":\"Software engineer\","
+          + "\"productArea\":\"Ads\",\"interests\":[\"Books\",\"Music\"],"
+          + "\"savePreference\":true,\"matchPreference\":\"different\"}";
+
+  private static AddParticipantRequest read(String body) throws IOException {
+    return AddParticipantRequest.read(new StringReader(body), AddParticipantRequest.MAX_BODY_CHARS);
+  }
+
+  @Test
+  public void bindFormDetailsToParticipant() throws IOException {
+    AddParticipantRequest request = read("{\"formDetails\":" + FORM_DETAILS + "}");
+
+    Participant participant = request.toParticipant(USERNAME, START_TIME_AVAILABLE, TIMESTAMP);
+
+    assertThat(request.getSavePreference()).isTrue();
+    assertThat(participant.getUsername()).isEqualTo(USERNAME);
+    assertThat(participant.getStartTimeAvailable()).isEqualTo(START_TIME_AVAILABLE);
+    assertThat(participant.getEndTimeAvailable()).isEqualTo(1_577_911_200_000L);
+    assertThat(participant.getDuration()).isEqualTo(30);
+    assertThat(participant.getRole()).isEqualTo("Software engineer");
+    assertThat(participant.getProductArea()).isEqualTo("Ads");
+    assertThat(participant.getInterests()).containsExactly("Books", "Music").inOrder();
+    assertThat(participant.getMatchPreference()).isEqualTo(MatchPreference.DIFFERENT);
+    assertThat(participant.getMatchStatus()).isEqualTo(MatchStatus.UNMATCHED);
+    assertThat(participant.getTimestamp()).isEqualTo(TIMESTAMP);
+  }
+
+  @Test
+  public void skipUnknownFields() throws IOException {
+    AddParticipantRequest request =
+        read(
+            "{\"version\":{\"major\":1},\"formDetails\":"
+                + FORM_DETAILS.replace("{", "{\"notes\":[1,{\"a\":null}],")
+                + "}");
+
+    assertThat(request.getDuration()).isEqualTo(30);
+  }
+
+  @Test
+  public void readManyInterests() throws IOException {
+    StringBuilder interests = new StringBuilder("[");
+    for (String interest : FormOptions.INTERESTS) {
+      interests.append(interests.length() == 1 ? "" : ",").append('"').append(interest).append('"');
+    }
+    interests.append(']');
+
+    AddParticipantRequest request =
+        read("{\"formDetails\":" + FORM_DETAILS.replace("[\"Books\",\"Music\"]", interests) + "}");
+
+    assertThat(request.toParticipant(USERNAME, START_TIME_AVAILABLE, TIMESTAMP).getInterests())
+        .hasSize(FormOptions.INTERESTS.size());
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectWrongType() throws IOException {
+    read("{\"formDetails\":" + FORM_DETAILS.replace("30", "[30]") + "}");
+  }
+
+  @Test
+  public void acceptBlankRoleAndProductArea() throws IOException {
+    AddParticipantRequest request =
+        read(
+            "{\"formDetails\":"
+                + FORM_DETAILS.replace("Software engineer", "").replace("Ads", "")
+                + "}");
+
+    Participant participant = request.toParticipant(USERNAME, START_TIME_AVAILABLE, TIMESTAMP);
+    assertThat(participant.getRole()).isEmpty();
+    assertThat(participant.getProductArea()).isEmpty();
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectUnknownRole() throws IOException {
+    read("{\"formDetails\":" + FORM_DETAILS.replace("Software engineer", "Astronaut") + "}");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectUnknownInterest() throws IOException {
+    read("{\"formDetails\":" + FORM_DETAILS.replace("Music", "Juggling") + "}");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectOverlongProductArea() throws IOException {
+    read(
+        "{\"formDetails\":"
+            + FORM_DETAILS.replace("Ads", Strings.repeat("a", InputDictionary.MAX_VALUE_LENGTH + 1))
+            + "}");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectUnknownMatchPreference() throws IOException {
+    read("{\"formDetails\":" + FORM_DETAILS.replace("\"different\"", "\"none\"") + "}");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectMissingFormDetails() throws IOException {
+    read("{}");
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectTrailingContent() throws IOException {
+    read("{\"formDetails\":" + FORM_DETAILS + "}{}");
+  }
+
+  @Test(expected = AddParticipantRequest.TooLargeException.class)
+  public void rejectBodyOverLimit() throws IOException {
+    String body = "{\"formDetails\":" + FORM_DETAILS + "}";
+    AddParticipantRequest.read(new StringReader(body), body.length() - 1);
+  }
+}
@@ -0,0 +1,68 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.servlets.AppContextListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+@RunWith(JUnit4.class)
+public final class AppContextTest {
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private ServletContext servletContext;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    servletContext = mock(ServletContext.class);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void listenerStoresOneContextForAllServlets() {
+    new AppContextListener().contextInitialized(new ServletContextEvent(servletContext));
+
+    ArgumentCaptor<Object> context = ArgumentCaptor.forClass(Object.class);
+    verify(servletContext).setAttribute(eq(AppContext.ATTRIBUTE_NAME), context.capture());
+    when(servletContext.getAttribute(AppContext.ATTRIBUTE_NAME)).thenReturn(context.getValue());
+    assertThat(AppContext.get(servletContext)).isSameInstanceAs(context.getValue());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void contextNotInitialized() {
+    AppContext.get(servletContext);
+  }
+}
@@ -0,0 +1,172 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Match;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class BatchMatchHelperTest {
+
+  // Reference date time of 1/1/20 2pm ET
+  private static final ZonedDateTime currentDateTimeET =
+      ZonedDateTime.of(
+          /* year= */ 2020,
+          /* month= */ 1,
+          /* date= */ 1,
+          /* hour= */ 14,
+          /* minute= */ 0,
+          /* second= */ 0,
+          /* nanosecond= */ 0,
+          /* zone= */ ZoneId.of("US/Eastern"));
+
+  // Inputs
+  private static final String USERNAME_PERSON_A = "persona";
+  private static final String USERNAME_PERSON_B = "personb";
+  private static final String USERNAME_PERSON_C = "personc";
+  private static final String USERNAME_PERSON_D = "persond";
+  private static final int DURATION_DEFAULT = 30;
+  private static final long START_TIME_AVAILABLE_DEFAULT =
+      currentDateTimeET.toInstant().toEpochMilli();
+  private static final long END_TIME_AVAILABLE_DEFAULT =
+      START_TIME_AVAILABLE_DEFAULT + TimeUnit.MINUTES.toMillis(100);
+  private static final String PRODUCT_AREA_DEFAULT = "Ads";
+  private static final List<String> INTERESTS_DEFAULT = Arrays.asList("Books");
+  private static final long MATCH_ID_DEFAULT = 0;
+  private static final long TIMESTAMP_DEFAULT = 0;
+
+  // Some roles
+  private static final String ROLE_SOFTWARE_ENGINEER = "Software engineer";
+  private static final String ROLE_PRODUCT_MANAGER = "Product manager";
+
+  private static final String HEADER_APPENGINE_CRON = "X-Appengine-Cron";
+
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private StringWriter stringWriter;
+  private Clock clock;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() throws IOException {
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter, /* autoFlush= */ true));
+
+    helper.setUp();
+
+    // Set "current" date to  1/1/2020 2:00pm ET
+    clock = Clock.fixed(currentDateTimeET.toInstant(), currentDateTimeET.getZone());
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return unmatched participant with role and match preference */
+  private static Participant getParticipant(
+      String username, String role, MatchPreference matchPreference) {
+    return new Participant(
+        username,
+        START_TIME_AVAILABLE_DEFAULT,
+        END_TIME_AVAILABLE_DEFAULT,
+        DURATION_DEFAULT,
+        role,
+        PRODUCT_AREA_DEFAULT,
+        INTERESTS_DEFAULT,
+        matchPreference,
+        MATCH_ID_DEFAULT,
+        MatchStatus.UNMATCHED,
+        TIMESTAMP_DEFAULT);
+  }
+
+  @Test
+  public void notCronRequest() throws IOException {
+    MatchDatastore matchDatastore = mock(MatchDatastore.class);
+    ParticipantDatastore participantDatastore = mock(ParticipantDatastore.class);
+
+    BatchMatchHelper batchMatchHelper =
+        new BatchMatchHelper(clock, matchDatastore, participantDatastore);
+    batchMatchHelper.doGet(request, response);
+
+    verify(response)
+        .sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can run batch matching.");
+  }
+
+  @Test
+  public void matchPreviouslyRejectedParticipants() throws IOException {
+    // A & B both want someone different, so A & B and C & D were never matched on arrival
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_A, ROLE_SOFTWARE_ENGINEER, MatchPreference.DIFFERENT));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_B, ROLE_SOFTWARE_ENGINEER, MatchPreference.DIFFERENT));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_C, ROLE_PRODUCT_MANAGER, MatchPreference.SIMILAR));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_D, ROLE_PRODUCT_MANAGER, MatchPreference.SIMILAR));
+    when(request.getHeader(HEADER_APPENGINE_CRON)).thenReturn("true");
+
+    BatchMatchHelper batchMatchHelper =
+        new BatchMatchHelper(clock, matchDatastore, participantDatastore);
+    batchMatchHelper.doGet(request, response);
+
+    Participant participantA = participantDatastore.getParticipantFromUsername(USERNAME_PERSON_A);
+    Participant participantC = participantDatastore.getParticipantFromUsername(USERNAME_PERSON_C);
+    Participant participantD = participantDatastore.getParticipantFromUsername(USERNAME_PERSON_D);
+    Match match = matchDatastore.getMatchFromId(participantC.getMatchId());
+    assertThat(participantA.getMatchStatus()).isEqualTo(MatchStatus.UNMATCHED);
+    assertThat(participantC.getMatchStatus()).isEqualTo(MatchStatus.MATCHED);
+    assertThat(participantD.getMatchId()).isEqualTo(participantC.getMatchId());
+    assertThat(match.getFirstParticipantUsername()).isEqualTo(USERNAME_PERSON_C);
+    assertThat(match.getSecondParticipantUsername()).isEqualTo(USERNAME_PERSON_D);
+    assertThat(stringWriter.toString()).contains("Batch matched 1 pairs.");
+  }
+}
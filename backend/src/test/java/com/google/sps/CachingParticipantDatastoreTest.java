@@ -0,0 +1,162 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Ticker;
+import com.google.sps.data.Match;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.CachingParticipantDatastore;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class CachingParticipantDatastoreTest {
+
+  private static final String PERSON_A = "Person A";
+  private static final long TTL_MILLIS = 1_000;
+  private static final long MAX_SIZE = 10;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  /** Fake time in nanoseconds read by the cache */
+  private final AtomicLong nanos = new AtomicLong();
+
+  private ParticipantDatastore uncachedDatastore;
+  private CachingParticipantDatastore cachingDatastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    Ticker ticker =
+        new Ticker() {
+          @Override
+          public long read() {
+            return nanos.get();
+          }
+        };
+    uncachedDatastore = new ParticipantDatastore(datastore);
+    cachingDatastore = new CachingParticipantDatastore(datastore, ticker, TTL_MILLIS, MAX_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return participant A with matchStatus */
+  private static Participant getParticipantA(MatchStatus matchStatus) {
+    return new Participant(
+        PERSON_A,
+        /* startTimeAvailable= */ 0,
+        /* endTimeAvailable= */ 1,
+        /* duration= */ 30,
+        "Software engineer",
+        "Ads",
+        Arrays.asList("Books"),
+        MatchPreference.ANY,
+        /* matchId= */ 0,
+        matchStatus,
+        /* timestamp= */ 0);
+  }
+
+  @Test
+  public void cachedUntilTtlPasses() {
+    cachingDatastore.addParticipant(getParticipantA(MatchStatus.UNMATCHED));
+    cachingDatastore.getParticipantFromUsername(PERSON_A);
+    // Written around the cache, e.g. by another instance
+    uncachedDatastore.addParticipant(getParticipantA(MatchStatus.MATCHED));
+
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A).getMatchStatus())
+        .isEqualTo(MatchStatus.UNMATCHED);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS + 1));
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A).getMatchStatus())
+        .isEqualTo(MatchStatus.MATCHED);
+  }
+
+  @Test
+  public void writesInvalidate() {
+    cachingDatastore.addParticipant(getParticipantA(MatchStatus.UNMATCHED));
+    cachingDatastore.getParticipantFromUsername(PERSON_A);
+
+    cachingDatastore.addParticipant(getParticipantA(MatchStatus.MATCHED));
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A).getMatchStatus())
+        .isEqualTo(MatchStatus.MATCHED);
+
+    cachingDatastore.removeParticipant(PERSON_A);
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A)).isNull();
+  }
+
+  @Test
+  public void matchCommitInvalidates() {
+    MatchDatastore matchDatastore =
+        new MatchDatastore(
+            DatastoreServiceFactory.getDatastoreService(),
+            MatchDatastore.DEFAULT_MAX_COMMIT_ATTEMPTS,
+            cachingDatastore);
+    Participant waiting = getParticipantA(MatchStatus.UNMATCHED);
+    cachingDatastore.addParticipant(waiting);
+    cachingDatastore.getParticipantFromUsername(PERSON_A);
+    Participant newParticipant =
+        new Participant(
+            "Person B",
+            /* startTimeAvailable= */ 0,
+            /* endTimeAvailable= */ 1,
+            /* duration= */ 30,
+            "Software engineer",
+            "Ads",
+            Arrays.asList("Books"),
+            MatchPreference.ANY,
+            /* matchId= */ 0,
+            MatchStatus.UNMATCHED,
+            /* timestamp= */ 0);
+
+    Long matchId =
+        matchDatastore.commitMatch(
+            new Match("Person B", PERSON_A, /* duration= */ 30, /* timestamp= */ 0),
+            newParticipant,
+            waiting);
+
+    assertThat(matchId).isNotNull();
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A).getMatchStatus())
+        .isEqualTo(MatchStatus.MATCHED);
+  }
+
+  @Test
+  public void missingParticipantNotCached() {
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A)).isNull();
+
+    uncachedDatastore.addParticipant(getParticipantA(MatchStatus.UNMATCHED));
+
+    assertThat(cachingDatastore.getParticipantFromUsername(PERSON_A)).isNotNull();
+  }
+}
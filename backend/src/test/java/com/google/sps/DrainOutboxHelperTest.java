@@ -0,0 +1,253 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.services.gmail.model.Message;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Match;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.OutboxDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.metrics.Metrics;
+import com.google.sps.notifs.BatchSender;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class DrainOutboxHelperTest {
+
+  private static final long TIME_NOW = 1_600_000_000_000L;
+  private static final String USERNAME_PERSON_A = "persona";
+  private static final String USERNAME_PERSON_B = "personb";
+  private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private OutboxDatastore outboxDatastore;
+  private long matchId;
+  /** Messages passed to the sender, in order */
+  private List<Message> sentMessages;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    outboxDatastore = new OutboxDatastore(datastore);
+    sentMessages = new ArrayList<>();
+
+    // Match A and B, which writes a notification for each
+    Participant participantA =
+        new Participant(
+            USERNAME_PERSON_A,
+            TIME_NOW,
+            TIME_NOW + TimeUnit.HOURS.toMillis(1),
+            /* duration= */ 30,
+            "Software engineer",
+            "Ads",
+            Arrays.asList("Books"),
+            MatchPreference.ANY,
+            /* matchId= */ 0,
+            MatchStatus.UNMATCHED,
+            TIME_NOW);
+    new ParticipantDatastore(datastore).addParticipant(participantA);
+    matchId =
+        new MatchDatastore(datastore)
+            .commitMatch(
+                new Match(USERNAME_PERSON_B, USERNAME_PERSON_A, /* duration= */ 30, TIME_NOW),
+                new Participant(
+                    USERNAME_PERSON_B,
+                    TIME_NOW,
+                    TIME_NOW + TimeUnit.HOURS.toMillis(1),
+                    /* duration= */ 30,
+                    "Software engineer",
+                    "Ads",
+                    Arrays.asList("Books"),
+                    MatchPreference.ANY,
+                    /* matchId= */ 0,
+                    MatchStatus.UNMATCHED,
+                    TIME_NOW),
+                participantA);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return helper draining at timeMillis with sender */
+  private DrainOutboxHelper getHelper(long timeMillis, BatchSender sender) {
+    return new DrainOutboxHelper(
+        Clock.fixed(Instant.ofEpochMilli(timeMillis), ZoneOffset.UTC), outboxDatastore, sender);
+  }
+
+  /** Sender that records messages and sends them all */
+  private BatchSender.Result sendAll(List<Message> messages) {
+    sentMessages.addAll(messages);
+    return new BatchSender.Result();
+  }
+
+  /** Sender that records messages and fails them all */
+  private BatchSender.Result failAll(List<Message> messages) {
+    sentMessages.addAll(messages);
+    BatchSender.Result result = new BatchSender.Result();
+    messages.forEach(result::addRetryable);
+    return result;
+  }
+
+  /** Sender that records messages and rejects them all for good */
+  private BatchSender.Result rejectAll(List<Message> messages) {
+    sentMessages.addAll(messages);
+    BatchSender.Result result = new BatchSender.Result();
+    messages.forEach(result::addRejected);
+    return result;
+  }
+
+  @Test
+  public void sentNotificationsNotSentAgain() throws MessagingException {
+    int numSent = getHelper(TIME_NOW, this::sendAll).drain();
+    int numSentAgain = getHelper(TIME_NOW + TimeUnit.DAYS.toMillis(1), this::sendAll).drain();
+
+    assertThat(numSent).isEqualTo(2);
+    assertThat(numSentAgain).isEqualTo(0);
+    assertThat(sentMessages).hasSize(2);
+    MimeMessage email =
+        new MimeMessage(
+            Session.getDefaultInstance(System.getProperties()),
+            new ByteArrayInputStream(sentMessages.get(0).decodeRaw()));
+    assertThat(email.getHeader(HEADER_MESSAGE_ID)[0]).startsWith("<match-" + matchId + "-");
+  }
+
+  @Test
+  public void failedNotificationsRetriedAfterLeaseWithSameMessageId() {
+    getHelper(TIME_NOW, this::failAll).drain();
+    // Still leased
+    int numSentDuringLease = getHelper(TIME_NOW + 1, this::sendAll).drain();
+    int numSentAfterLease =
+        getHelper(TIME_NOW + TimeUnit.MINUTES.toMillis(2), this::sendAll).drain();
+
+    assertThat(numSentDuringLease).isEqualTo(0);
+    assertThat(numSentAfterLease).isEqualTo(2);
+    assertThat(sentMessages).hasSize(4);
+    assertThat(getRaws(sentMessages.subList(2, 4)))
+        .containsExactlyElementsIn(getRaws(sentMessages.subList(0, 2)));
+  }
+
+  @Test
+  public void notificationsOutOfAttemptsMarkedFailed() {
+    long timeMillis = TIME_NOW;
+    for (int attempt = 0; attempt < 5; attempt++) {
+      getHelper(timeMillis, this::failAll).drain();
+      timeMillis += TimeUnit.DAYS.toMillis(1);
+    }
+
+    int numSent = getHelper(timeMillis, this::sendAll).drain();
+
+    assertThat(numSent).isEqualTo(0);
+    assertThat(sentMessages).hasSize(10);
+  }
+
+  @Test
+  public void rejectedNotificationsMarkedFailedAndNotRetried() {
+    long emailsSent = Metrics.shared().getCount(Metrics.EMAILS_SENT);
+    long emailsFailed = Metrics.shared().getCount(Metrics.EMAILS_FAILED);
+
+    int numSent = getHelper(TIME_NOW, this::rejectAll).drain();
+    int numSentAfterLease = getHelper(TIME_NOW + TimeUnit.DAYS.toMillis(1), this::sendAll).drain();
+
+    assertThat(numSent).isEqualTo(0);
+    assertThat(numSentAfterLease).isEqualTo(0);
+    assertThat(sentMessages).hasSize(2);
+    assertThat(Metrics.shared().getCount(Metrics.EMAILS_SENT)).isEqualTo(emailsSent);
+    assertThat(Metrics.shared().getCount(Metrics.EMAILS_FAILED)).isEqualTo(emailsFailed + 2);
+  }
+
+  @Test
+  public void batchErrorLeavesNotificationsPending() {
+    getHelper(
+            TIME_NOW,
+            messages -> {
+              throw new IOException("Batch failed");
+            })
+        .drain();
+
+    int numSent = getHelper(TIME_NOW + TimeUnit.MINUTES.toMillis(2), this::sendAll).drain();
+
+    assertThat(numSent).isEqualTo(2);
+  }
+
+  @Test
+  public void onlyCronCanDrain() throws IOException {
+    HttpServletResponse response = mock(HttpServletResponse.class);
+
+    getHelper(TIME_NOW, this::sendAll).doGet(mock(HttpServletRequest.class), response);
+
+    verify(response).sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can drain the outbox.");
+    assertThat(sentMessages).isEmpty();
+  }
+
+  @Test
+  public void drainRecordsPendingGauge() throws IOException {
+    HttpServletRequest request = mock(HttpServletRequest.class);
+    when(request.getHeader("X-Appengine-Cron")).thenReturn("true");
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+
+    getHelper(TIME_NOW, this::failAll).doGet(request, response);
+    assertThat(Metrics.shared().getGauge(Metrics.OUTBOX_PENDING)).isEqualTo(2);
+
+    getHelper(TIME_NOW + TimeUnit.MINUTES.toMillis(2), this::sendAll).doGet(request, response);
+    assertThat(Metrics.shared().getGauge(Metrics.OUTBOX_PENDING)).isEqualTo(0);
+  }
+
+  /** Return raw content of messages */
+  private static List<String> getRaws(List<Message> messages) {
+    List<String> raws = new ArrayList<>();
+    for (Message message : messages) {
+      raws.add(message.getRaw());
+    }
+    return raws;
+  }
+}
@@ -4,6 +4,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -140,4 +141,23 @@ public class EmailNotifierTest {
     assertThat(allRecipients).isEqualTo(correctRecipients);
     assertThat(allRecipients).asList().containsExactly(new InternetAddress(testEmail));
   }
+
+  @Test
+  public void testReusedBuffersDoNotLeakBetweenMessages() throws MessagingException, IOException {
+    ArgumentCaptor<Message> argument = ArgumentCaptor.forClass(Message.class);
+
+    emailNotifier.sendExpiredEmail(testName, testEmail);
+    emailNotifier.sendMatchEmail("persona", "persona@google.com");
+
+    verify(messages, times(2)).send(any(), argument.capture());
+    MimeMessage email = convertToMimeMessage(argument.getAllValues().get(1));
+    assertThat(email.getAllRecipients())
+        .asList()
+        .containsExactly(new InternetAddress("persona@google.com"));
+    assertThat(email.getContent().toString())
+        .isEqualTo(
+            " We found you a match with persona "
+                + " Check your calendar for your meeting event,"
+                + " and feel free to join the Meet call now!\n");
+  }
 }
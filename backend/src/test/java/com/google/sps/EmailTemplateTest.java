@@ -0,0 +1,61 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.sps.notifs.EmailTemplate;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class EmailTemplateTest {
+
+  @Test
+  public void renderMatchesFormat() {
+    String template = " Hi %s, meet %s!\n";
+    StringBuilder buffer = new StringBuilder();
+
+    new EmailTemplate(template).render(buffer, "persona", "personb");
+
+    assertThat(buffer.toString()).isEqualTo(String.format(template, "persona", "personb"));
+  }
+
+  @Test
+  public void renderAppendsToBuffer() {
+    StringBuilder buffer = new StringBuilder("Subject\n");
+
+    new EmailTemplate("%s").render(buffer, "Body");
+
+    assertThat(buffer.toString()).isEqualTo("Subject\nBody");
+  }
+
+  @Test
+  public void renderWithoutPlaceholders() {
+    EmailTemplate template = new EmailTemplate("No placeholders");
+    StringBuilder buffer = new StringBuilder();
+
+    template.render(buffer);
+
+    assertThat(template.getNumArguments()).isEqualTo(0);
+    assertThat(buffer.toString()).isEqualTo("No placeholders");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectWrongNumberOfArguments() {
+    new EmailTemplate("Hi %s").render(new StringBuilder());
+  }
+}
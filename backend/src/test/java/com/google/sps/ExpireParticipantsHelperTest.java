@@ -0,0 +1,181 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Notification;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.OutboxDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ExpireParticipantsHelperTest {
+
+  // Reference date time of 1/1/20 2pm ET
+  private static final ZonedDateTime currentDateTimeET =
+      ZonedDateTime.of(
+          /* year= */ 2020,
+          /* month= */ 1,
+          /* date= */ 1,
+          /* hour= */ 14,
+          /* minute= */ 0,
+          /* second= */ 0,
+          /* nanosecond= */ 0,
+          /* zone= */ ZoneId.of("US/Eastern"));
+  private static final long TIME_1400ET = currentDateTimeET.toInstant().toEpochMilli();
+
+  // Inputs
+  private static final String USERNAME_PERSON_A = "persona";
+  private static final String USERNAME_PERSON_B = "personb";
+  private static final String USERNAME_PERSON_C = "personc";
+  private static final String USERNAME_PERSON_D = "persond";
+  private static final int DURATION_30_MINUTES = 30;
+  private static final String ROLE_DEFAULT = "Software engineer";
+  private static final String PRODUCT_AREA_DEFAULT = "Ads";
+  private static final List<String> INTERESTS_DEFAULT = Arrays.asList("Books");
+  private static final long TIMESTAMP_DEFAULT = 0;
+
+  private static final String HEADER_APPENGINE_CRON = "X-Appengine-Cron";
+
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+  private StringWriter stringWriter;
+  private Clock clock;
+  private ParticipantDatastore participantDatastore;
+  private OutboxDatastore outboxDatastore;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() throws IOException {
+    request = mock(HttpServletRequest.class);
+    response = mock(HttpServletResponse.class);
+    stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter, /* autoFlush= */ true));
+
+    helper.setUp();
+
+    // Set "current" date to  1/1/2020 2:00pm ET
+    clock = Clock.fixed(currentDateTimeET.toInstant(), currentDateTimeET.getZone());
+    participantDatastore = new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    outboxDatastore = new OutboxDatastore(DatastoreServiceFactory.getDatastoreService());
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return participant available until minutesFromNow minutes after 2pm */
+  private static Participant getParticipant(
+      String username, long minutesFromNow, MatchStatus matchStatus) {
+    return new Participant(
+        username,
+        TIME_1400ET - TimeUnit.HOURS.toMillis(1),
+        TIME_1400ET + TimeUnit.MINUTES.toMillis(minutesFromNow),
+        DURATION_30_MINUTES,
+        ROLE_DEFAULT,
+        PRODUCT_AREA_DEFAULT,
+        INTERESTS_DEFAULT,
+        MatchPreference.ANY,
+        /* matchId= */ matchStatus == MatchStatus.MATCHED ? 1 : 0,
+        matchStatus,
+        TIMESTAMP_DEFAULT);
+  }
+
+  @Test
+  public void notCronRequest() throws IOException {
+    ExpireParticipantsHelper expireParticipantsHelper =
+        new ExpireParticipantsHelper(clock, participantDatastore);
+
+    expireParticipantsHelper.doGet(request, response);
+
+    verify(response)
+        .sendError(HttpServletResponse.SC_FORBIDDEN, "Only cron can expire participants.");
+  }
+
+  @Test
+  public void removeOnlyUnmatchedExpiredPastGrace() throws IOException {
+    // A expired at 1:20pm, B is matched, C expired at 1:58pm (within grace), D is still waiting
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_A, 0, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(getParticipant(USERNAME_PERSON_B, 0, MatchStatus.MATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_C, 38, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_D, 60, MatchStatus.UNMATCHED));
+    when(request.getHeader(HEADER_APPENGINE_CRON)).thenReturn("true");
+    ExpireParticipantsHelper expireParticipantsHelper =
+        new ExpireParticipantsHelper(clock, participantDatastore);
+
+    expireParticipantsHelper.doGet(request, response);
+
+    assertThat(stringWriter.toString()).contains("Expired 1 participants.");
+    assertThat(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_A)).isNull();
+    assertThat(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_B)).isNotNull();
+    assertThat(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_C)).isNotNull();
+    assertThat(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_D)).isNotNull();
+    List<Notification> notifications =
+        outboxDatastore.leasePending(TIME_1400ET, /* leaseMillis= */ 1, /* limit= */ 10);
+    assertThat(notifications).hasSize(1);
+    assertThat(notifications.get(0).getType()).isEqualTo(Notification.Type.EXPIRED);
+    assertThat(notifications.get(0).getRecipientUsername()).isEqualTo(USERNAME_PERSON_A);
+  }
+
+  @Test
+  public void expiredNotificationWrittenOncePerParticipation() {
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_A, 0, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(USERNAME_PERSON_B, 0, MatchStatus.UNMATCHED));
+    ExpireParticipantsHelper expireParticipantsHelper =
+        new ExpireParticipantsHelper(clock, participantDatastore);
+
+    assertThat(expireParticipantsHelper.expireAll()).isEqualTo(2);
+    assertThat(expireParticipantsHelper.expireAll()).isEqualTo(0);
+
+    List<Notification> notifications =
+        outboxDatastore.leasePending(TIME_1400ET, /* leaseMillis= */ 1, /* limit= */ 10);
+    assertThat(notifications.stream().map(Notification::getDedupeKey).toArray())
+        .asList()
+        .containsExactly("expired-persona-0", "expired-personb-0");
+  }
+}
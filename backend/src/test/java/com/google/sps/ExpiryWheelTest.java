@@ -0,0 +1,80 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.sps.matching.ExpiryWheel;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ExpiryWheelTest {
+
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final long TICK_MILLIS = 1_000;
+  private static final long TIME_START = 1_600_000_000_000L;
+
+  @Test
+  public void dueOnlyOnceExpiryPassed() {
+    ExpiryWheel expiryWheel = new ExpiryWheel(TICK_MILLIS, TIME_START);
+    expiryWheel.schedule(PERSON_A, TIME_START + TimeUnit.SECONDS.toMillis(10));
+
+    assertThat(expiryWheel.advance(TIME_START + TimeUnit.SECONDS.toMillis(9))).isEmpty();
+    assertThat(expiryWheel.advance(TIME_START + TimeUnit.SECONDS.toMillis(10)))
+        .containsExactly(PERSON_A);
+    assertThat(expiryWheel.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void farExpiriesCascadeDownLevels() {
+    // Minutes and hours away land in higher levels and are moved down as they come up
+    ExpiryWheel expiryWheel = new ExpiryWheel(TICK_MILLIS, TIME_START);
+    long expiryB = TIME_START + TimeUnit.MINUTES.toMillis(5);
+    long expiryC = TIME_START + TimeUnit.HOURS.toMillis(3) + TimeUnit.SECONDS.toMillis(7);
+    expiryWheel.schedule(PERSON_B, expiryB);
+    expiryWheel.schedule(PERSON_C, expiryC);
+
+    assertThat(expiryWheel.advance(expiryB - TICK_MILLIS)).isEmpty();
+    assertThat(expiryWheel.advance(expiryB)).containsExactly(PERSON_B);
+    assertThat(expiryWheel.advance(expiryC - TICK_MILLIS)).isEmpty();
+    assertThat(expiryWheel.advance(expiryC)).containsExactly(PERSON_C);
+  }
+
+  @Test
+  public void cancelledAndRescheduledNotDueEarly() {
+    ExpiryWheel expiryWheel = new ExpiryWheel(TICK_MILLIS, TIME_START);
+    expiryWheel.schedule(PERSON_A, TIME_START + TimeUnit.SECONDS.toMillis(10));
+    expiryWheel.schedule(PERSON_B, TIME_START + TimeUnit.SECONDS.toMillis(10));
+    expiryWheel.cancel(PERSON_A);
+    expiryWheel.schedule(PERSON_B, TIME_START + TimeUnit.MINUTES.toMillis(10));
+
+    assertThat(expiryWheel.advance(TIME_START + TimeUnit.MINUTES.toMillis(1))).isEmpty();
+    assertThat(expiryWheel.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void alreadyExpiredDueOnNextAdvance() {
+    ExpiryWheel expiryWheel = new ExpiryWheel(TICK_MILLIS, TIME_START);
+    expiryWheel.schedule(PERSON_A, TIME_START - TimeUnit.MINUTES.toMillis(1));
+
+    assertThat(expiryWheel.advance(TIME_START)).containsExactly(PERSON_A);
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import com.google.common.base.Splitter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONObject;
+
+/**
+ * Local stand-in for Gmail and Google's token endpoint, for tests of the Gmail client. Answers
+ * single and batched message sends and token requests, and records what it was sent.
+ */
+final class FakeGmailServer implements AutoCloseable {
+
+  private static final String PATH_TOKEN = "/token";
+  private static final String PATH_SEND = "/gmail/v1/users/me/messages/send";
+  private static final String PATH_BATCH = "/batch/gmail/v1";
+  private static final String RESPONSE_BOUNDARY = "fake_gmail_boundary";
+  private static final String CRLF = "\r\n";
+  private static final String HEADER_BOUNDARY = "boundary=";
+  private static final String CONTENT_TYPE_JSON = "application/json; charset=UTF-8";
+
+  private final HttpServer server;
+
+  // Guarded by this
+  private final List<String> sentRaws = new ArrayList<>();
+  private final List<String> authorizations = new ArrayList<>();
+  private final Queue<Integer> nextSendStatuses = new ArrayDeque<>();
+  private int numTokenRequests = 0;
+
+  /** Start the server on a free local port */
+  FakeGmailServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(PATH_TOKEN, this::handleToken);
+    server.createContext(PATH_SEND, this::handleSend);
+    server.createContext(PATH_BATCH, this::handleBatch);
+    server.start();
+  }
+
+  /** @return root URL to build the Gmail client with */
+  String getRootUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + "/";
+  }
+
+  /** @return token URI to put in service account keys */
+  String getTokenUri() {
+    return getRootUrl() + PATH_TOKEN.substring(1);
+  }
+
+  /** Answer the next sends with statuses, in order, before answering 200 again */
+  synchronized void setNextSendStatuses(Integer... statuses) {
+    Collections.addAll(nextSendStatuses, statuses);
+  }
+
+  /** @return raw field of every message sent successfully, in order */
+  synchronized List<String> getSentRaws() {
+    return new ArrayList<>(sentRaws);
+  }
+
+  /** @return Authorization header of every send request, in order */
+  synchronized List<String> getAuthorizations() {
+    return new ArrayList<>(authorizations);
+  }
+
+  synchronized int getNumTokenRequests() {
+    return numTokenRequests;
+  }
+
+  @Override
+  public void close() {
+    server.stop(/* delay= */ 0);
+  }
+
+  private void handleToken(HttpExchange exchange) throws IOException {
+    int tokenNumber;
+    synchronized (this) {
+      tokenNumber = ++numTokenRequests;
+    }
+    String body =
+        new JSONObject()
+            .put("access_token", "token-" + tokenNumber)
+            .put("token_type", "Bearer")
+            .put("expires_in", 3600)
+            .toString();
+    respond(exchange, 200, CONTENT_TYPE_JSON, body);
+  }
+
+  private void handleSend(HttpExchange exchange) throws IOException {
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    StringBuilder status = new StringBuilder();
+    String body = answerSend(authorization, readBody(exchange), status);
+    respond(exchange, Integer.parseInt(status.toString()), CONTENT_TYPE_JSON, body);
+  }
+
+  /** Answer each request of the multipart batch as handleSend would */
+  private void handleBatch(HttpExchange exchange) throws IOException {
+    String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+    String boundary =
+        contentType.substring(contentType.indexOf(HEADER_BOUNDARY) + HEADER_BOUNDARY.length());
+    String request = readBody(exchange);
+
+    StringBuilder response = new StringBuilder();
+    int partNumber = 0;
+    for (String part : Splitter.on("--" + boundary).split(request)) {
+      // Each part is its own headers, then the inner request's headers, then its body
+      int innerStart = part.indexOf(CRLF + CRLF);
+      int bodyStart = innerStart < 0 ? -1 : part.indexOf(CRLF + CRLF, innerStart + 4);
+      if (bodyStart < 0) {
+        continue;
+      }
+      StringBuilder status = new StringBuilder();
+      String body = answerSend(authorization, part.substring(bodyStart + 4).trim(), status);
+      response
+          .append("--" + RESPONSE_BOUNDARY + CRLF)
+          .append("Content-Type: application/http" + CRLF)
+          .append("Content-ID: response-" + ++partNumber + CRLF + CRLF)
+          .append("HTTP/1.1 " + status + " Status" + CRLF)
+          .append("Content-Type: " + CONTENT_TYPE_JSON + CRLF + CRLF)
+          .append(body + CRLF);
+    }
+    response.append("--" + RESPONSE_BOUNDARY + "--" + CRLF);
+    respond(exchange, 200, "multipart/mixed; boundary=" + RESPONSE_BOUNDARY, response.toString());
+  }
+
+  /** @return response body of one send, with its status appended to status */
+  private synchronized String answerSend(
+      String authorization, String requestBody, StringBuilder status) {
+    authorizations.add(authorization);
+    Integer nextStatus = nextSendStatuses.poll();
+    int code = nextStatus == null ? 200 : nextStatus;
+    status.append(code);
+    if (code != 200) {
+      return new JSONObject()
+          .put("error", new JSONObject().put("code", code).put("message", "Fake error"))
+          .toString();
+    }
+    sentRaws.add(new JSONObject(requestBody).getString("raw"));
+    return new JSONObject().put("id", "message-" + sentRaws.size()).toString();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /** @return request body, unzipped if the client gzipped it */
+  private static String readBody(HttpExchange exchange) throws IOException {
+    InputStream in = exchange.getRequestBody();
+    if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+      in = new GZIPInputStream(in);
+    }
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    byte[] chunk = new byte[4096];
+    int numRead;
+    while ((numRead = in.read(chunk)) != -1) {
+      buffer.write(chunk, 0, numRead);
+    }
+    return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
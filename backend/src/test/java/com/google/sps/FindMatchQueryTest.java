@@ -44,6 +44,7 @@ public final class FindMatchQueryTest {
   private static final String PERSON_A = "Person A";
   private static final String PERSON_B = "Person B";
   private static final String PERSON_C = "Person C";
+  private static final String PERSON_D = "Person D";
 
   // Default parameters unused in query
   private static final long MATCHID_DEFAULT = 0;
@@ -860,4 +861,206 @@ public final class FindMatchQueryTest {
     assertThat(match.getSecondParticipantUsername()).isEqualTo(PERSON_A);
     assertThat(match.getDuration()).isEqualTo(DURATION_45_MINUTES);
   }
+
+  @Test
+  public void oneFilledFiveOtherFilledOneMatchingPreferSimilar() {
+    // New participant A with 5 filled fields, B with 1 filled field that A shares. Only 1 of 5
+    // fields are the same, so they are not similar
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_45_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS_SPORTS_TRAVEL,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantB =
+        new Participant(
+            PERSON_B,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_45_MINUTES,
+            ROLE_BLANK,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BLANK,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    participantDatastore.addParticipant(participantB);
+
+    FindMatchQuery query = new FindMatchQuery(clock, participantDatastore);
+    Match match = query.findMatch(participantA);
+
+    assertThat(match).isNull();
+  }
+
+  @Test
+  public void findAllMatchesPairsWholePool() {
+    // A & B and C & D are compatible, A & C and A & D are not. All four get paired regardless of
+    // the order they are passed in
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            TIME_1400ET,
+            TIME_1600ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantB =
+        new Participant(
+            PERSON_B,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS,
+            MATCH_PREFERENCE_ANY,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantC =
+        new Participant(
+            PERSON_C,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS,
+            MATCH_PREFERENCE_DIFFERENT,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantD =
+        new Participant(
+            PERSON_D,
+            TIME_1400ET,
+            TIME_2000ET,
+            DURATION_30_MINUTES,
+            ROLE_PRODUCT_MANAGER,
+            PRODUCT_AREA_CLOUD,
+            INTERESTS_GAMING_SPORTS,
+            MATCH_PREFERENCE_DIFFERENT,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+
+    FindMatchQuery query = new FindMatchQuery(clock, participantDatastore);
+    List<Match> matches =
+        query.findAllMatches(Arrays.asList(participantD, participantC, participantB, participantA));
+
+    assertThat(matches).hasSize(2);
+    assertThat(matches.get(0).getFirstParticipantUsername()).isEqualTo(PERSON_A);
+    assertThat(matches.get(0).getSecondParticipantUsername()).isEqualTo(PERSON_B);
+    assertThat(matches.get(1).getFirstParticipantUsername()).isEqualTo(PERSON_C);
+    assertThat(matches.get(1).getSecondParticipantUsername()).isEqualTo(PERSON_D);
+  }
+
+  @Test
+  public void findAllMatchesSkipsExpired() {
+    // A & B would be compatible, but A is no longer available long enough
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            TIME_1400ET,
+            TIME_1450ET,
+            DURATION_45_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS,
+            MATCH_PREFERENCE_ANY,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantB =
+        new Participant(
+            PERSON_B,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_45_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS,
+            MATCH_PREFERENCE_ANY,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+
+    FindMatchQuery query = new FindMatchQuery(clock, participantDatastore);
+    List<Match> matches = query.findAllMatches(Arrays.asList(participantA, participantB));
+
+    assertThat(matches).isEmpty();
+  }
+
+  @Test
+  public void pickMostSimilarCandidate() {
+    // A & B and A & C both prefer similar and are similar enough, but A & C share more inputs
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS_TRAVEL,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantB =
+        new Participant(
+            PERSON_B,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_GAMING_SPORTS,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    Participant participantC =
+        new Participant(
+            PERSON_C,
+            TIME_1400ET,
+            TIME_1800ET,
+            DURATION_30_MINUTES,
+            ROLE_SOFTWARE_ENGINEER,
+            PRODUCT_AREA_ADS,
+            INTERESTS_BOOKS_TRAVEL,
+            MATCH_PREFERENCE_SIMILAR,
+            MATCHID_DEFAULT,
+            MATCHSTATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    participantDatastore.addParticipant(participantB);
+    participantDatastore.addParticipant(participantC);
+
+    FindMatchQuery query = new FindMatchQuery(clock, participantDatastore);
+    Match match = query.findMatch(participantA);
+
+    assertThat(match.getFirstParticipantUsername()).isEqualTo(PERSON_A);
+    assertThat(match.getSecondParticipantUsername()).isEqualTo(PERSON_C);
+  }
 }
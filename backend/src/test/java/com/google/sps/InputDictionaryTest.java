@@ -0,0 +1,90 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Strings;
+import com.google.sps.data.InputDictionary;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class InputDictionaryTest {
+
+  @Test
+  public void sameValueSameId() {
+    assertThat(InputDictionary.getId("Books")).isEqualTo(InputDictionary.getId("Books"));
+    assertThat(InputDictionary.getId("Books")).isNotEqualTo(InputDictionary.getId("Travel"));
+  }
+
+  @Test
+  public void idsMapBackToInternedValues() {
+    List<String> interests = Arrays.asList("Books", new String("Books"), "Travel");
+
+    List<String> values = InputDictionary.getValues(InputDictionary.getIds(interests));
+
+    assertThat(values).isEqualTo(interests);
+    // Equal values share one interned String
+    assertThat(values.get(0)).isSameInstanceAs(values.get(1));
+  }
+
+  @Test
+  public void overlongValueTreatedAsBlank() {
+    String value = Strings.repeat("x", InputDictionary.MAX_VALUE_LENGTH + 1);
+
+    int id = InputDictionary.getId(value);
+
+    assertThat(id).isEqualTo(InputDictionary.getId(""));
+    assertThat(InputDictionary.count(InputDictionary.encode(value, "", Arrays.asList(value))))
+        .isEqualTo(0);
+  }
+
+  @Test
+  public void blankInputsNotCounted() {
+    long[] bits = InputDictionary.encode("", "", new ArrayList<String>());
+
+    assertThat(InputDictionary.count(bits)).isEqualTo(0);
+  }
+
+  @Test
+  public void countSharedInputs() {
+    long[] firstBits =
+        InputDictionary.encode("Software engineer", "Ads", Arrays.asList("Books", "Travel"));
+    long[] secondBits =
+        InputDictionary.encode("Product manager", "Ads", Arrays.asList("Travel", "Gaming"));
+
+    assertThat(InputDictionary.count(firstBits)).isEqualTo(4);
+    assertThat(InputDictionary.countShared(firstBits, secondBits)).isEqualTo(2);
+  }
+
+  @Test
+  public void countSharedAcrossWords() {
+    // Intern enough values that later ones land past the first 64-bit word
+    List<String> manyInterests = new ArrayList<String>();
+    for (int i = 0; i < 100; i++) {
+      manyInterests.add("Interest " + i);
+    }
+    long[] firstBits = InputDictionary.encode("", "", manyInterests);
+    long[] secondBits = InputDictionary.encode("", "", Arrays.asList("Interest 99"));
+
+    assertThat(InputDictionary.countShared(firstBits, secondBits)).isEqualTo(1);
+    assertThat(InputDictionary.countShared(secondBits, firstBits)).isEqualTo(1);
+  }
+}
@@ -15,6 +15,12 @@
 package com.google.sps;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
@@ -22,15 +28,27 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.sps.data.Match;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Notification;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.CachingMatchDatastore;
 import com.google.sps.datastore.MatchDatastore;
+import com.google.sps.datastore.OutboxDatastore;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.metrics.Metrics;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.AdditionalAnswers;
 
 @RunWith(JUnit4.class)
 public final class MatchDatastoreTest {
@@ -39,6 +57,7 @@ public final class MatchDatastoreTest {
   private static final long ID_DEFAULT = 123456;
   private static final int DURATION_DEFAULT = 30;
   private static final long TIMESTAMP_DEFAULT = 0;
+  private static final List<String> INTERESTS_DEFAULT = Arrays.asList("Books");
 
   // Some usernames
   private static final String PERSON_A = "Person A";
@@ -48,6 +67,7 @@ public final class MatchDatastoreTest {
 
   // Datastore Key/Property constants
   private static final String KIND_MATCH = "Match";
+  private static final String KIND_PARTICIPANT = "Participant";
   private static final String PROPERTY_FIRST_PARTICIPANT_USERNAME = "firstParticipantUsername";
   private static final String PROPERTY_SECOND_PARTICIPANT_USERNAME = "secondParticipantUsername";
   private static final String PROPERTY_DURATION = "duration";
@@ -143,4 +163,193 @@ public final class MatchDatastoreTest {
     Match matchFromId = matchDatastore.getMatchFromId(ID_DEFAULT);
     assertThat(matchFromId).isNull();
   }
+
+  /** Return unmatched participant with default values */
+  private static Participant getParticipant(String username, long timestamp) {
+    return new Participant(
+        username,
+        /* startTimeAvailable= */ 0,
+        /* endTimeAvailable= */ 1,
+        DURATION_DEFAULT,
+        "Software engineer",
+        "Ads",
+        INTERESTS_DEFAULT,
+        MatchPreference.ANY,
+        /* matchId= */ 0,
+        MatchStatus.UNMATCHED,
+        timestamp);
+  }
+
+  @Test
+  public void commitMatchWritesMatchAndParticipants() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    Participant participantA = getParticipant(PERSON_A, TIMESTAMP_DEFAULT);
+    Participant participantB = getParticipant(PERSON_B, TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(participantA);
+    Match match = new Match(PERSON_B, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+
+    Long id = matchDatastore.commitMatch(match, participantB, participantA);
+
+    assertThat(id).isNotNull();
+    assertThat(matchDatastore.getMatchFromId(id).getFirstParticipantUsername()).isEqualTo(PERSON_B);
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_A).getMatchId())
+        .isEqualTo(id);
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_B).getMatchId())
+        .isEqualTo(id);
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_B).getMatchStatus())
+        .isEqualTo(MatchStatus.MATCHED);
+  }
+
+  @Test
+  public void commitMatchWritesNotificationForEachParticipant() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    Participant participantA = getParticipant(PERSON_A, TIMESTAMP_DEFAULT);
+    new ParticipantDatastore(datastore).addParticipant(participantA);
+    Match match = new Match(PERSON_B, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+
+    Long id =
+        matchDatastore.commitMatch(
+            match, getParticipant(PERSON_B, TIMESTAMP_DEFAULT), participantA);
+
+    List<Notification> notifications =
+        new OutboxDatastore(datastore)
+            .leasePending(/* currentTimeMillis= */ 1, /* leaseMillis= */ 1, /* limit= */ 10);
+    assertThat(notifications).hasSize(2);
+    for (Notification notification : notifications) {
+      assertThat(notification.getMatchId()).isEqualTo(id);
+      assertThat(notification.getAttempts()).isEqualTo(1);
+    }
+    assertThat(notifications.stream().map(Notification::getDedupeKey).toArray())
+        .asList()
+        .containsExactly("match-" + id + "-" + PERSON_A, "match-" + id + "-" + PERSON_B);
+  }
+
+  @Test
+  public void commitMatchLosesClaimOnMatchedParticipant() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    Participant participantA = getParticipant(PERSON_A, TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(participantA);
+    // Another request claims A first
+    Match otherMatch = new Match(PERSON_C, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+    matchDatastore.commitMatch(
+        otherMatch, getParticipant(PERSON_C, TIMESTAMP_DEFAULT), participantA);
+
+    Match match = new Match(PERSON_B, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+    Long id =
+        matchDatastore.commitMatch(
+            match, getParticipant(PERSON_B, TIMESTAMP_DEFAULT), participantA);
+
+    assertThat(id).isNull();
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_B)).isNull();
+  }
+
+  @Test
+  public void commitMatchLosesClaimOnResubmittedParticipant() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    Participant participantA = getParticipant(PERSON_A, TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(getParticipant(PERSON_A, TIMESTAMP_DEFAULT + 1));
+
+    Match match = new Match(PERSON_B, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+    Long id =
+        matchDatastore.commitMatch(
+            match, getParticipant(PERSON_B, TIMESTAMP_DEFAULT), participantA);
+
+    assertThat(id).isNull();
+  }
+
+  @Test
+  public void commitMatchRetriesOnConflict() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    Participant participantA = getParticipant(PERSON_A, TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(participantA);
+    // First transactional put races with a write to A outside the transaction
+    DatastoreService racingDatastore =
+        mock(DatastoreService.class, AdditionalAnswers.delegatesTo(datastore));
+    boolean[] raced = new boolean[1];
+    doAnswer(
+            invocation -> {
+              if (!raced[0]) {
+                raced[0] = true;
+                Transaction racingTransaction = datastore.beginTransaction();
+                datastore.put(
+                    racingTransaction,
+                    datastore.get(KeyFactory.createKey(KIND_PARTICIPANT, PERSON_A)));
+                racingTransaction.commit();
+              }
+              return datastore.put(
+                  (Transaction) invocation.getArgument(0),
+                  (Iterable<Entity>) invocation.getArgument(1));
+            })
+        .when(racingDatastore)
+        .put(any(Transaction.class), anyIterable());
+    MatchDatastore matchDatastore = new MatchDatastore(racingDatastore);
+    long conflicts = Metrics.shared().getCount(Metrics.MATCH_COMMIT_CONFLICTS);
+    long retries = Metrics.shared().getCount(Metrics.MATCH_COMMIT_RETRIES);
+
+    Match match = new Match(PERSON_B, PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT);
+    Long id =
+        matchDatastore.commitMatch(
+            match, getParticipant(PERSON_B, TIMESTAMP_DEFAULT), participantA);
+
+    assertThat(id).isNotNull();
+    assertThat(Metrics.shared().getCount(Metrics.MATCH_COMMIT_CONFLICTS)).isEqualTo(conflicts + 1);
+    assertThat(Metrics.shared().getCount(Metrics.MATCH_COMMIT_RETRIES)).isEqualTo(retries + 1);
+  }
+
+  @Test
+  public void commitMatchesSkipsPairWithChangedParticipant() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    MatchDatastore matchDatastore = new MatchDatastore(datastore);
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    List<Participant> participants =
+        Arrays.asList(
+            getParticipant(PERSON_A, TIMESTAMP_DEFAULT),
+            getParticipant(PERSON_B, TIMESTAMP_DEFAULT),
+            getParticipant(PERSON_C, TIMESTAMP_DEFAULT),
+            getParticipant(PERSON_D, TIMESTAMP_DEFAULT));
+    participants.forEach(participantDatastore::addParticipant);
+    // C resubmits after the batch loaded the participants
+    participantDatastore.addParticipant(getParticipant(PERSON_C, TIMESTAMP_DEFAULT + 1));
+
+    List<Long> ids =
+        matchDatastore.commitMatches(
+            Arrays.asList(
+                new Match(PERSON_A, PERSON_B, DURATION_DEFAULT, TIMESTAMP_DEFAULT),
+                new Match(PERSON_C, PERSON_D, DURATION_DEFAULT, TIMESTAMP_DEFAULT)),
+            Arrays.asList(participants.get(0), participants.get(2)),
+            Arrays.asList(participants.get(1), participants.get(3)));
+
+    assertThat(ids.get(0)).isNotNull();
+    assertThat(ids.get(1)).isNull();
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_B).getMatchId())
+        .isEqualTo(ids.get(0));
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_D).getMatchStatus())
+        .isEqualTo(MatchStatus.UNMATCHED);
+  }
+
+  @Test
+  public void cachingMatchDatastoreReadsMatchOnce() throws EntityNotFoundException {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    long id =
+        new MatchDatastore(datastore)
+            .addMatch(new Match(PERSON_A, PERSON_B, DURATION_DEFAULT, TIMESTAMP_DEFAULT));
+    DatastoreService countingDatastore =
+        mock(DatastoreService.class, AdditionalAnswers.delegatesTo(datastore));
+    MatchDatastore matchDatastore =
+        new CachingMatchDatastore(countingDatastore, CachingMatchDatastore.DEFAULT_MAX_SIZE);
+
+    matchDatastore.getMatchFromId(id);
+    Match match = matchDatastore.getMatchFromId(id);
+
+    assertThat(match.getFirstParticipantUsername()).isEqualTo(PERSON_A);
+    verify(countingDatastore, times(1)).get(KeyFactory.createKey(KIND_MATCH, id));
+  }
 }
@@ -0,0 +1,433 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.Match;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.datastore.PoolSnapshotDatastore;
+import com.google.sps.matching.MatchingPool;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MatchingPoolTest {
+
+  // Some people that we can use in our tests
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+  private static final String PERSON_D = "Person D";
+  private static final String PERSON_E = "Person E";
+
+  // Default values
+  private static final String ROLE_DEFAULT = "Software engineer";
+  private static final String PRODUCT_AREA_DEFAULT = "Ads";
+  private static final List<String> INTERESTS_DEFAULT = Arrays.asList("Books");
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+  private static final long MATCH_ID_DEFAULT = 0;
+  private static final long TIMESTAMP_DEFAULT = 0;
+
+  // Reference date time of 1/1/20 2pm ET
+  private static final ZonedDateTime currentDateTimeET =
+      ZonedDateTime.of(
+          /* year= */ 2020,
+          /* month= */ 1,
+          /* date= */ 1,
+          /* hour= */ 14,
+          /* minute= */ 0,
+          /* second= */ 0,
+          /* nanosecond= */ 0,
+          /* zone= */ ZoneId.of("US/Eastern"));
+  private static final long TIME_1400ET = currentDateTimeET.toInstant().toEpochMilli();
+  private static final long TIME_1600ET = TIME_1400ET + TimeUnit.HOURS.toMillis(2);
+  private static final long TIME_1800ET = TIME_1400ET + TimeUnit.HOURS.toMillis(4);
+
+  private Clock clock;
+  private MatchingPool matchingPool;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+
+    // Set "current" date to  1/1/2020 2:00pm ET
+    clock = Clock.fixed(currentDateTimeET.toInstant(), currentDateTimeET.getZone());
+    matchingPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return unmatched participant with default role, product area and interests */
+  private static Participant getParticipant(
+      String username, long endTimeAvailable, int duration, MatchPreference matchPreference) {
+    return getParticipant(username, endTimeAvailable, duration, matchPreference, TIMESTAMP_DEFAULT);
+  }
+
+  /** Return unmatched participant with default role, product area and interests and timestamp */
+  private static Participant getParticipant(
+      String username,
+      long endTimeAvailable,
+      int duration,
+      MatchPreference matchPreference,
+      long timestamp) {
+    return new Participant(
+        username,
+        TIME_1400ET,
+        endTimeAvailable,
+        duration,
+        ROLE_DEFAULT,
+        PRODUCT_AREA_DEFAULT,
+        INTERESTS_DEFAULT,
+        matchPreference,
+        MATCH_ID_DEFAULT,
+        MatchStatus.UNMATCHED,
+        timestamp);
+  }
+
+  @Test
+  public void loadOnlyUnmatchedFromDatastore() {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_60_MINUTES, MatchPreference.ANY)
+            .foundMatch(/* newMatchId= */ 1));
+
+    matchingPool.refreshIfStale(participantDatastore);
+
+    assertThat(matchingPool.size()).isEqualTo(1);
+    assertThat(matchingPool.get(PERSON_A)).isNotNull();
+    assertThat(matchingPool.get(PERSON_B)).isNull();
+  }
+
+  @Test
+  public void onlyLookAtSameDuration() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_60_MINUTES, MatchPreference.ANY));
+
+    Participant candidate =
+        matchingPool.findCandidate(
+            DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET, participant -> true);
+
+    assertThat(candidate).isNull();
+  }
+
+  @Test
+  public void skipIncompatibleMatchPreference() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.DIFFERENT));
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1800ET, DURATION_30_MINUTES, MatchPreference.ANY));
+
+    Participant candidate =
+        matchingPool.findCandidate(
+            DURATION_30_MINUTES, MatchPreference.SIMILAR, TIME_1400ET, participant -> true);
+
+    assertThat(candidate.getUsername()).isEqualTo(PERSON_B);
+  }
+
+  @Test
+  public void skipEndTimeAvailableTooSoon() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1800ET, DURATION_30_MINUTES, MatchPreference.ANY));
+
+    Participant candidate =
+        matchingPool.findCandidate(
+            DURATION_30_MINUTES, MatchPreference.ANY, TIME_1600ET, participant -> true);
+
+    assertThat(candidate.getUsername()).isEqualTo(PERSON_B);
+  }
+
+  @Test
+  public void removedParticipantNotFound() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    matchingPool.remove(PERSON_A);
+
+    Participant candidate =
+        matchingPool.findCandidate(
+            DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET, participant -> true);
+
+    assertThat(candidate).isNull();
+    assertThat(matchingPool.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void evictExpiredParticipants() {
+    // A can no longer fit 30 minutes plus padding before 2:30pm, B can before 4pm
+    matchingPool.add(
+        getParticipant(
+            PERSON_A,
+            TIME_1400ET + TimeUnit.MINUTES.toMillis(30),
+            DURATION_30_MINUTES,
+            MatchPreference.ANY));
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+
+    int numEvicted = matchingPool.evictExpired();
+
+    assertThat(numEvicted).isEqualTo(1);
+    assertThat(matchingPool.get(PERSON_A)).isNull();
+    assertThat(matchingPool.get(PERSON_B)).isNotNull();
+  }
+
+  @Test
+  public void keepEndTimeOrderAcrossSlotReuseAndGrowth() {
+    // More participants than the initial capacity, added out of order, every other one removed
+    // and re-added so freed slots are reused
+    int numParticipants = 200;
+    for (int i = 0; i < numParticipants; i++) {
+      long endTime = TIME_1600ET + TimeUnit.MINUTES.toMillis((i * 37) % numParticipants);
+      matchingPool.add(
+          getParticipant("Person " + i, endTime, DURATION_30_MINUTES, MatchPreference.ANY));
+    }
+    for (int i = 0; i < numParticipants; i += 2) {
+      matchingPool.remove("Person " + i);
+    }
+    for (int i = 0; i < numParticipants; i += 4) {
+      long endTime = TIME_1600ET + TimeUnit.MINUTES.toMillis((i * 37) % numParticipants);
+      matchingPool.add(
+          getParticipant("Person " + i, endTime, DURATION_30_MINUTES, MatchPreference.ANY));
+    }
+
+    List<Participant> visited = new ArrayList<>();
+    matchingPool.visitCandidates(
+        DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET, visited::add);
+
+    assertThat(matchingPool.size()).isEqualTo(150);
+    assertThat(visited).hasSize(150);
+    assertThat(visited).isInOrder(Comparator.comparingLong(Participant::getEndTimeAvailable));
+    assertThat(matchingPool.get("Person 4").getInterests()).isEqualTo(INTERESTS_DEFAULT);
+    assertThat(matchingPool.get("Person 2")).isNull();
+  }
+
+  @Test
+  public void filterSkipsCandidatesBeforeVisit() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1800ET, DURATION_30_MINUTES, MatchPreference.ANY));
+
+    List<Participant> visited = new ArrayList<>();
+    matchingPool.visitCandidates(
+        DURATION_30_MINUTES,
+        MatchPreference.ANY,
+        TIME_1400ET,
+        (username, matchPreference, filledInputBits, numFilledInputs) -> !username.equals(PERSON_A),
+        visited::add);
+
+    assertThat(visited).hasSize(1);
+    assertThat(visited.get(0).getUsername()).isEqualTo(PERSON_B);
+  }
+
+  @Test
+  public void restoreSnapshot() {
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            TIME_1400ET,
+            TIME_1600ET,
+            DURATION_30_MINUTES,
+            ROLE_DEFAULT,
+            /* productArea= */ "",
+            Arrays.asList("Books", "Music"),
+            MatchPreference.SIMILAR,
+            MATCH_ID_DEFAULT,
+            MatchStatus.UNMATCHED,
+            /* timestamp= */ 42);
+    matchingPool.add(participantA);
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1800ET, DURATION_60_MINUTES, MatchPreference.ANY));
+
+    MatchingPool restoredPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    restoredPool.restoreSnapshot(ByteBuffer.wrap(matchingPool.toSnapshot()));
+
+    assertThat(restoredPool.size()).isEqualTo(2);
+    assertThat(restoredPool.get(PERSON_A).toString()).isEqualTo(participantA.toString());
+    assertThat(restoredPool.get(PERSON_A).getNumFilledInputs()).isEqualTo(3);
+    assertThat(
+            restoredPool.findCandidate(
+                DURATION_60_MINUTES, MatchPreference.ANY, TIME_1400ET, participant -> true))
+        .isNotNull();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectTruncatedSnapshot() {
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    byte[] snapshot = matchingPool.toSnapshot();
+
+    matchingPool.restoreSnapshot(ByteBuffer.wrap(snapshot, 0, snapshot.length - 1));
+  }
+
+  @Test
+  public void stalePoolAppliesChangesWithoutFullLoad() {
+    AtomicLong nowMillis = new AtomicLong(TIME_1400ET);
+    Clock movingClock =
+        new Clock() {
+          @Override
+          public ZoneId getZone() {
+            return currentDateTimeET.getZone();
+          }
+
+          @Override
+          public Clock withZone(ZoneId zone) {
+            return this;
+          }
+
+          @Override
+          public Instant instant() {
+            return Instant.ofEpochMilli(nowMillis.get());
+          }
+        };
+    ParticipantDatastore participantDatastore =
+        spy(new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService()));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    MatchingPool stalePool =
+        new MatchingPool(movingClock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    stalePool.refreshIfStale(participantDatastore);
+
+    // Then A leaves, B is matched and C is added, all through other instances
+    participantDatastore.removeParticipant(PERSON_A);
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY)
+            .foundMatch(/* newMatchId= */ 1));
+    participantDatastore.addParticipant(
+        getParticipant(
+            PERSON_C, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET));
+    nowMillis.addAndGet(MatchingPool.DEFAULT_MAX_STALENESS_MILLIS + 1);
+    stalePool.refreshIfStale(participantDatastore);
+
+    assertThat(stalePool.get(PERSON_A)).isNull();
+    assertThat(stalePool.get(PERSON_B)).isNull();
+    assertThat(stalePool.get(PERSON_C)).isNotNull();
+    verify(participantDatastore, times(1)).getUnmatchedParticipants();
+  }
+
+  @Test
+  public void coldPoolRestoresSnapshotAndAppliesNewerChanges() {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    PoolSnapshotDatastore snapshotDatastore =
+        new PoolSnapshotDatastore(DatastoreServiceFactory.getDatastoreService());
+
+    // Snapshot of A, B and E taken at 2pm
+    Participant participantB =
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY);
+    Participant participantE =
+        getParticipant(PERSON_E, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY);
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    participantDatastore.addParticipant(participantB);
+    participantDatastore.addParticipant(participantE);
+    matchingPool.loadFrom(participantDatastore);
+    snapshotDatastore.saveSnapshot(matchingPool.toSnapshot());
+
+    // Then C is added, D is written without being added since, B is replaced and matched, A
+    // leaves the queue and E is matched keeping its timestamp
+    participantDatastore.removeParticipant(PERSON_A);
+    participantDatastore.addParticipant(participantE.foundMatch(/* newMatchId= */ 2));
+    participantDatastore.addParticipant(
+        getParticipant(
+            PERSON_C, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_D, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY, TIME_1400ET)
+            .foundMatch(/* newMatchId= */ 1));
+
+    MatchingPool coldPool =
+        new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS, snapshotDatastore);
+    coldPool.refreshIfStale(participantDatastore);
+
+    assertThat(coldPool.get(PERSON_A)).isNull();
+    assertThat(coldPool.get(PERSON_B)).isNull();
+    assertThat(coldPool.get(PERSON_C)).isNotNull();
+    assertThat(coldPool.get(PERSON_D)).isNull();
+    assertThat(coldPool.get(PERSON_E)).isNull();
+  }
+
+  @Test
+  public void coldPoolWithoutSnapshotLoadsInFull() {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.ANY));
+
+    MatchingPool coldPool =
+        new MatchingPool(
+            clock,
+            MatchingPool.DEFAULT_MAX_STALENESS_MILLIS,
+            new PoolSnapshotDatastore(DatastoreServiceFactory.getDatastoreService()));
+    coldPool.refreshIfStale(participantDatastore);
+
+    assertThat(coldPool.get(PERSON_A)).isNotNull();
+  }
+
+  @Test
+  public void findMatchInPool() {
+    // A & B aren't compatible in time, but A & C are
+    matchingPool.add(
+        getParticipant(PERSON_A, TIME_1600ET, DURATION_30_MINUTES, MatchPreference.SIMILAR));
+    matchingPool.add(
+        getParticipant(PERSON_B, TIME_1400ET + 1, DURATION_30_MINUTES, MatchPreference.SIMILAR));
+    Participant participantC =
+        getParticipant(PERSON_C, TIME_1800ET, DURATION_30_MINUTES, MatchPreference.SIMILAR);
+
+    FindMatchQuery query = new FindMatchQuery(clock, matchingPool);
+    Match match = query.findMatch(participantC);
+
+    assertThat(match.getFirstParticipantUsername()).isEqualTo(PERSON_C);
+    assertThat(match.getSecondParticipantUsername()).isEqualTo(PERSON_A);
+    assertThat(match.getDuration()).isEqualTo(DURATION_30_MINUTES);
+  }
+}
@@ -0,0 +1,112 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.matching.MatchingPool;
+import com.google.sps.metrics.Metrics;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class MetricsTest {
+
+  private static final String COUNTER = "test_counter";
+  private static final String GAUGE = "test_gauge";
+  private static final String TIMER = "test_timer";
+
+  private static final long TIME_NOW = 1_600_000_000_000L;
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Test
+  public void countersAddUp() {
+    Metrics metrics = new Metrics();
+
+    metrics.increment(COUNTER);
+    metrics.add(COUNTER, 4);
+
+    assertThat(metrics.getCount(COUNTER)).isEqualTo(5);
+    assertThat(metrics.getCount("never_incremented")).isEqualTo(0);
+  }
+
+  @Test
+  public void gaugesExportLastValue() {
+    Metrics metrics = new Metrics();
+
+    metrics.setGauge(GAUGE, 7);
+    metrics.setGauge(GAUGE, 3);
+
+    assertThat(metrics.getGauge(GAUGE)).isEqualTo(3);
+    assertThat(metrics.toJson().getJSONObject("gauges").getLong(GAUGE)).isEqualTo(3);
+    assertThat(metrics.getGauge("never_set")).isEqualTo(0);
+  }
+
+  @Test
+  public void timersExportCountTotalMeanAndMax() {
+    Metrics metrics = new Metrics();
+
+    metrics.recordNanos(TIMER, TimeUnit.MILLISECONDS.toNanos(1));
+    metrics.recordNanos(TIMER, TimeUnit.MILLISECONDS.toNanos(3));
+
+    JSONObject timer = metrics.toJson().getJSONObject("timers").getJSONObject(TIMER);
+    assertThat(timer.getLong("count")).isEqualTo(2);
+    assertThat(timer.getDouble("totalMillis")).isEqualTo(4.0);
+    assertThat(timer.getDouble("meanMillis")).isEqualTo(2.0);
+    assertThat(timer.getDouble("maxMillis")).isEqualTo(3.0);
+  }
+
+  @Test
+  public void findMatchCountsCandidatesScanned() {
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(TIME_NOW), ZoneOffset.UTC);
+    MatchingPool matchingPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    matchingPool.add(getParticipant("Person A"));
+    matchingPool.add(getParticipant("Person B"));
+    long scannedBefore = Metrics.shared().getCount(Metrics.CANDIDATES_SCANNED);
+    long findsBefore = Metrics.shared().getTimerCount(Metrics.FIND_MATCH_LATENCY);
+
+    new FindMatchQuery(clock, matchingPool).findMatch(getParticipant("Person C"));
+
+    assertThat(Metrics.shared().getCount(Metrics.CANDIDATES_SCANNED) - scannedBefore).isEqualTo(2);
+    assertThat(Metrics.shared().getTimerCount(Metrics.FIND_MATCH_LATENCY) - findsBefore)
+        .isEqualTo(1);
+  }
+
+  /** Return unmatched participant available for two hours from now */
+  private static Participant getParticipant(String username) {
+    return new Participant(
+        username,
+        TIME_NOW,
+        TIME_NOW + TimeUnit.HOURS.toMillis(2),
+        DURATION_30_MINUTES,
+        "Software engineer",
+        "Ads",
+        Arrays.asList("Books"),
+        MatchPreference.ANY,
+        /* matchId= */ 0,
+        MatchStatus.UNMATCHED,
+        /* timestamp= */ 0);
+  }
+}
@@ -24,12 +24,15 @@ import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Strings;
+import com.google.sps.data.InputDictionary;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.MatchStatus;
 import com.google.sps.data.Participant;
 import com.google.sps.datastore.ParticipantDatastore;
 import java.time.ZonedDateTime;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import org.junit.After;
 import org.junit.Before;
@@ -56,6 +59,9 @@ public final class ParticipantDatastoreTest {
   // Some usernames
   private static final String PERSON_A = "Person A";
   private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+  private static final String PERSON_D = "Person D";
+  private static final String PERSON_E = "Person E";
 
   // Datastore Key/Property constants
   private static final String KIND_PARTICIPANT = "Participant";
@@ -117,10 +123,7 @@ public final class ParticipantDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entity.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entity.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(
-            ParticipantDatastore.convertStringToList(
-                (String) entity.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entity.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entity.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -180,10 +183,7 @@ public final class ParticipantDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entityA.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entityA.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(
-            ParticipantDatastore.convertStringToList(
-                (String) entityA.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entityA.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entityA.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -202,10 +202,7 @@ public final class ParticipantDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entityB.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entityB.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(
-            ParticipantDatastore.convertStringToList(
-                (String) entityB.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entityB.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entityB.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -253,6 +250,34 @@ public final class ParticipantDatastoreTest {
     assertThat(participantFromUsername.getTimestamp()).isEqualTo(TIMESTAMP_DEFAULT);
   }
 
+  @Test
+  public void valuesOverDictionaryCapReadBackUnchanged() {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    String longRole = Strings.repeat("r", InputDictionary.MAX_VALUE_LENGTH + 1);
+    String longInterest = Strings.repeat("i", InputDictionary.MAX_VALUE_LENGTH + 1);
+    participantDatastore.addParticipant(
+        new Participant(
+            PERSON_A,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DEFAULT,
+            DURATION_DEFAULT,
+            longRole,
+            PRODUCT_AREA_DEFAULT,
+            Arrays.asList(longInterest),
+            MATCH_PREFERENCE_DEFAULT,
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_DEFAULT,
+            TIMESTAMP_DEFAULT));
+
+    Participant participant = participantDatastore.getParticipantFromUsername(PERSON_A);
+
+    assertThat(participant.getRole()).isEqualTo(longRole);
+    assertThat(participant.getInterests()).containsExactly(longInterest);
+    // Only matching treats them as blank
+    assertThat(participant.getNumFilledInputs()).isEqualTo(1);
+  }
+
   @Test
   public void getNonexistentParticipant() {
     // Try to get participant from username that's not in datastore
@@ -301,4 +326,179 @@ public final class ParticipantDatastoreTest {
     Participant participantFromUsername = participantDatastore.getParticipantFromUsername(PERSON_A);
     assertThat(participantFromUsername).isNull();
   }
+
+  /** Return participant with default values and given end time, duration and match status */
+  private static Participant getParticipant(
+      String username, long endTimeAvailable, int duration, MatchStatus matchStatus) {
+    return new Participant(
+        username,
+        START_TIME_AVAILABLE_DEFAULT,
+        endTimeAvailable,
+        duration,
+        ROLE_DEFAULT,
+        PRODUCT_AREA_DEFAULT,
+        INTERESTS_DEFAULT,
+        MATCH_PREFERENCE_DEFAULT,
+        MATCH_ID_DEFAULT,
+        matchStatus,
+        TIMESTAMP_DEFAULT);
+  }
+
+  @Test
+  public void getUnmatchedWithDurationFiltersEndTimeInDatastore() {
+    // Page sizes of 1 so every candidate is read in its own page
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(
+            DatastoreServiceFactory.getDatastoreService(),
+            /* prefetchSize= */ 1,
+            /* fetchChunkSize= */ 1);
+    long minEndTimeAvailable = END_TIME_AVAILABLE_DEFAULT;
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, minEndTimeAvailable + 2, DURATION_DEFAULT, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, minEndTimeAvailable + 1, DURATION_DEFAULT, MatchStatus.UNMATCHED));
+    // Too soon, different duration, and already matched participants are left out
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_C, minEndTimeAvailable, DURATION_DEFAULT, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(
+            PERSON_D, minEndTimeAvailable + 1, DURATION_DEFAULT + 30, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_E, minEndTimeAvailable + 1, DURATION_DEFAULT, MatchStatus.MATCHED));
+
+    List<Participant> participants =
+        participantDatastore.getUnmatchedParticipantsWithDuration(
+            DURATION_DEFAULT, minEndTimeAvailable);
+
+    // Earliest end time first
+    assertThat(participants.stream().map(Participant::getUsername).toArray())
+        .asList()
+        .containsExactly(PERSON_B, PERSON_A)
+        .inOrder();
+  }
+
+  @Test
+  public void iterateUnmatchedWithDurationAcrossPages() {
+    // First page of 1, then pages of 2, so the 4 candidates span 3 pages
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(
+            DatastoreServiceFactory.getDatastoreService(),
+            /* prefetchSize= */ 1,
+            /* fetchChunkSize= */ 2);
+    long minEndTimeAvailable = END_TIME_AVAILABLE_DEFAULT;
+    List<String> usernames = Arrays.asList(PERSON_A, PERSON_B, PERSON_C, PERSON_D);
+    for (int i = 0; i < usernames.size(); i++) {
+      participantDatastore.addParticipant(
+          getParticipant(
+              usernames.get(i),
+              minEndTimeAvailable + i + 1,
+              DURATION_DEFAULT,
+              MatchStatus.UNMATCHED));
+    }
+
+    Iterator<Participant> candidates =
+        participantDatastore
+            .iterateUnmatchedParticipantsWithDuration(DURATION_DEFAULT, minEndTimeAvailable)
+            .iterator();
+
+    for (String username : usernames) {
+      assertThat(candidates.hasNext()).isTrue();
+      assertThat(candidates.next().getUsername()).isEqualTo(username);
+    }
+    assertThat(candidates.hasNext()).isFalse();
+  }
+
+  @Test
+  public void iterateSkipsParticipantRemovedAfterQuery() {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(
+            DatastoreServiceFactory.getDatastoreService(),
+            /* prefetchSize= */ 1,
+            /* fetchChunkSize= */ 1);
+    long minEndTimeAvailable = END_TIME_AVAILABLE_DEFAULT;
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_A, minEndTimeAvailable + 1, DURATION_DEFAULT, MatchStatus.UNMATCHED));
+    participantDatastore.addParticipant(
+        getParticipant(PERSON_B, minEndTimeAvailable + 2, DURATION_DEFAULT, MatchStatus.UNMATCHED));
+
+    Iterator<Participant> candidates =
+        participantDatastore
+            .iterateUnmatchedParticipantsWithDuration(DURATION_DEFAULT, minEndTimeAvailable)
+            .iterator();
+    assertThat(candidates.next().getUsername()).isEqualTo(PERSON_A);
+    // Second page isn't fetched until it's reached
+    participantDatastore.removeParticipant(PERSON_B);
+
+    assertThat(candidates.hasNext()).isFalse();
+  }
+
+  @Test
+  public void migrateLegacyInterests() throws EntityNotFoundException {
+    // Participant written before interests were a list property reads and migrates unchanged
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore participantDatastore = new ParticipantDatastore(datastore);
+    Entity legacyEntity = new Entity(KIND_PARTICIPANT, PERSON_A);
+    legacyEntity.setProperty(PROPERTY_USERNAME, PERSON_A);
+    legacyEntity.setProperty(PROPERTY_START_TIME_AVAILABLE, START_TIME_AVAILABLE_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_END_TIME_AVAILABLE, END_TIME_AVAILABLE_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_DURATION, DURATION_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_ROLE, ROLE_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_PRODUCT_AREA, PRODUCT_AREA_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_INTERESTS, "Books,Travel");
+    legacyEntity.setProperty(PROPERTY_MATCH_PREFERENCE, MATCH_PREFERENCE_DEFAULT.getValue());
+    legacyEntity.setProperty(PROPERTY_MATCH_ID, MATCH_ID_DEFAULT);
+    legacyEntity.setProperty(PROPERTY_MATCH_STATUS, MATCH_STATUS_DEFAULT.getValue());
+    legacyEntity.setProperty(PROPERTY_TIMESTAMP, TIMESTAMP_DEFAULT);
+    datastore.put(legacyEntity);
+
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_A).getInterests())
+        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(participantDatastore.migrateLegacyInterests()).isEqualTo(1);
+    Entity entity = datastore.get(KeyFactory.createKey(KIND_PARTICIPANT, PERSON_A));
+    assertThat(entity.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
+    assertThat(participantDatastore.getParticipantFromUsername(PERSON_A).getInterests())
+        .isEqualTo(INTERESTS_DEFAULT);
+  }
+
+  @Test
+  public void getParticipantsAddedAfterTimestamp() {
+    // Add participant A, then participant B that was matched since
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    Participant participantA =
+        new Participant(
+            PERSON_A,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DEFAULT,
+            DURATION_DEFAULT,
+            ROLE_DEFAULT,
+            PRODUCT_AREA_DEFAULT,
+            INTERESTS_DEFAULT,
+            MATCH_PREFERENCE_DEFAULT,
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_DEFAULT,
+            TIMESTAMP_DEFAULT);
+    Participant participantB =
+        new Participant(
+                PERSON_B,
+                START_TIME_AVAILABLE_DEFAULT,
+                END_TIME_AVAILABLE_DEFAULT,
+                DURATION_DEFAULT,
+                ROLE_DEFAULT,
+                PRODUCT_AREA_DEFAULT,
+                INTERESTS_DEFAULT,
+                MATCH_PREFERENCE_DEFAULT,
+                MATCH_ID_DEFAULT,
+                MATCH_STATUS_DEFAULT,
+                TIMESTAMP_DEFAULT + 1)
+            .foundMatch(/* newMatchId= */ 1);
+    participantDatastore.addParticipant(participantA);
+    participantDatastore.addParticipant(participantB);
+
+    List<Participant> participants =
+        participantDatastore.getParticipantsAddedAfter(TIMESTAMP_DEFAULT);
+
+    assertThat(participants).hasSize(1);
+    assertThat(participants.get(0).toString()).isEqualTo(participantB.toString());
+  }
 }
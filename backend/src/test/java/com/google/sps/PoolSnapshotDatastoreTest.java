@@ -0,0 +1,96 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.datastore.PoolSnapshotDatastore;
+import java.nio.ByteBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class PoolSnapshotDatastoreTest {
+
+  private static final String KIND_SNAPSHOT_CHUNK = "MatchingPoolSnapshotChunk";
+  private static final int CHUNK_SIZE = 4;
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+  private PoolSnapshotDatastore snapshotDatastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    snapshotDatastore = new PoolSnapshotDatastore(datastore, CHUNK_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Return bytes remaining in buffer */
+  private static byte[] getBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  /** Return number of chunk entities in datastore */
+  private int countChunks() {
+    return datastore
+        .prepare(new Query(KIND_SNAPSHOT_CHUNK).setKeysOnly())
+        .countEntities(FetchOptions.Builder.withDefaults());
+  }
+
+  @Test
+  public void noSnapshotSaved() {
+    assertThat(snapshotDatastore.getSnapshot()).isNull();
+  }
+
+  @Test
+  public void snapshotSplitIntoChunksAndJoined() {
+    byte[] snapshot = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+    snapshotDatastore.saveSnapshot(snapshot);
+
+    assertThat(countChunks()).isEqualTo(3);
+    assertThat(getBytes(snapshotDatastore.getSnapshot())).isEqualTo(snapshot);
+  }
+
+  @Test
+  public void replacedSnapshotChunksDeleted() {
+    byte[] newSnapshot = {7, 8};
+    snapshotDatastore.saveSnapshot(new byte[] {1, 2, 3, 4, 5, 6});
+
+    snapshotDatastore.saveSnapshot(newSnapshot);
+
+    assertThat(countChunks()).isEqualTo(1);
+    assertThat(getBytes(snapshotDatastore.getSnapshot())).isEqualTo(newSnapshot);
+  }
+}
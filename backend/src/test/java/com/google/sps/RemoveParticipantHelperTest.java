@@ -14,16 +14,24 @@
 
 package com.google.sps;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
 import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchingPool;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.Test;
@@ -58,6 +66,34 @@ public final class RemoveParticipantHelperTest {
     assertTrue(stringWriter.toString().contains(EXPECTED_RESPONSE));
   }
 
+  @Test
+  public void testDoPost_shouldRemoveParticipantFromPool() throws IOException {
+    MatchingPool matchingPool =
+        new MatchingPool(Clock.systemUTC(), MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+    long nowMillis = System.currentTimeMillis();
+    matchingPool.add(
+        new Participant(
+            USER,
+            nowMillis,
+            nowMillis + TimeUnit.HOURS.toMillis(2),
+            /* duration= */ 30,
+            "Software engineer",
+            "Ads",
+            Arrays.asList("Books"),
+            MatchPreference.ANY,
+            /* matchId= */ 0,
+            MatchStatus.UNMATCHED,
+            nowMillis));
+    when(usernameService.getUsername()).thenReturn(USER);
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    new RemoveParticipantHelper(participantDatastore, usernameService, matchingPool)
+        .doPost(request, response);
+
+    verify(participantDatastore, times(1)).removeParticipant(USER);
+    assertThat(matchingPool.get(USER)).isNull();
+  }
+
   @Test
   public void testDoPost_whenUsernameNotFound_shouldSendError() throws IOException {
     when(usernameService.getUsername()).thenReturn(null);
@@ -1,6 +1,8 @@
 package com.google.sps;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -8,12 +10,15 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.base.Ticker;
 import com.google.sps.data.Match;
 import com.google.sps.data.MatchPreference;
 import com.google.sps.data.MatchStatus;
 import com.google.sps.data.Participant;
+import com.google.sps.datastore.CachingParticipantDatastore;
 import com.google.sps.datastore.MatchDatastore;
 import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchWaiters;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Arrays;
@@ -145,6 +150,44 @@ public class SearchMatchHelperTest {
     verify(response).setStatus(HttpServletResponse.SC_OK, "Participant is expired");
   }
 
+  @Test
+  public void expiredWhileCachedButMatchedIsNotRemoved() throws IOException {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    ParticipantDatastore uncachedDatastore = new ParticipantDatastore(datastore);
+    CachingParticipantDatastore participantDatastore =
+        new CachingParticipantDatastore(
+            datastore,
+            Ticker.systemTicker(),
+            CachingParticipantDatastore.DEFAULT_TTL_MILLIS,
+            CachingParticipantDatastore.DEFAULT_MAX_SIZE);
+    Participant participantA =
+        new Participant(
+            USERNAME_PERSON_A,
+            START_TIME_AVAILABLE_DEFAULT,
+            END_TIME_AVAILABLE_DURATION,
+            DURATION_DEFAULT,
+            ROLE_DEFAULT,
+            PRODUCT_AREA_DEFAULT,
+            INTERESTS_DEFAULT,
+            MATCH_PREFERENCE_DEFAULT,
+            MATCH_ID_DEFAULT,
+            MATCH_STATUS_UNMATCHED,
+            TIMESTAMP_DEFAULT);
+    participantDatastore.addParticipant(participantA);
+    participantDatastore.getParticipantFromUsername(USERNAME_PERSON_A);
+    // Matched on another instance while the unmatched version is cached here
+    uncachedDatastore.addParticipant(participantA.foundMatch(MATCH_ID_DEFAULT));
+    when(matchDatastore.getMatchFromId(MATCH_ID_DEFAULT))
+        .thenReturn(
+            new Match(USERNAME_PERSON_B, USERNAME_PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT));
+
+    searchMatchHelper =
+        new SearchMatchHelper(matchDatastore, participantDatastore, usernameService);
+    searchMatchHelper.doGet(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has a match!");
+  }
+
   @Test
   public void noMatchYet() throws IOException {
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
@@ -200,4 +243,133 @@ public class SearchMatchHelperTest {
 
     verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has a match!");
   }
+
+  /** Return participant A, unmatched and available until the default end time */
+  private static Participant getUnmatchedParticipantA() {
+    return new Participant(
+        USERNAME_PERSON_A,
+        START_TIME_AVAILABLE_DEFAULT,
+        END_TIME_AVAILABLE_DEFAULT,
+        DURATION_DEFAULT,
+        ROLE_DEFAULT,
+        PRODUCT_AREA_DEFAULT,
+        INTERESTS_DEFAULT,
+        MATCH_PREFERENCE_DEFAULT,
+        MATCH_ID_DEFAULT,
+        MATCH_STATUS_UNMATCHED,
+        TIMESTAMP_DEFAULT);
+  }
+
+  @Test
+  public void noMatchYetAfterWaiting() throws IOException {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    participantDatastore.addParticipant(getUnmatchedParticipantA());
+    MatchWaiters matchWaiters = new MatchWaiters();
+
+    searchMatchHelper =
+        new SearchMatchHelper(
+            matchDatastore,
+            participantDatastore,
+            usernameService,
+            matchWaiters,
+            /* maxWaitMillis= */ 10);
+    searchMatchHelper.doGet(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has no match yet");
+    assertThat(matchWaiters.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void foundMatchWhileWaiting() throws Exception {
+    ParticipantDatastore participantDatastore =
+        new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    participantDatastore.addParticipant(getUnmatchedParticipantA());
+    when(matchDatastore.getMatchFromId(MATCH_ID_DEFAULT))
+        .thenReturn(
+            new Match(USERNAME_PERSON_B, USERNAME_PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT));
+    MatchWaiters matchWaiters = new MatchWaiters();
+    // Match is made by another request once A's search is parked
+    Thread matcher =
+        new Thread(
+            () -> {
+              while (matchWaiters.size() == 0) {
+                Thread.yield();
+              }
+              matchWaiters.notifyMatched(USERNAME_PERSON_A, MATCH_ID_DEFAULT);
+            });
+    matcher.start();
+
+    searchMatchHelper =
+        new SearchMatchHelper(
+            matchDatastore,
+            participantDatastore,
+            usernameService,
+            matchWaiters,
+            TimeUnit.MINUTES.toMillis(1));
+    searchMatchHelper.doGet(request, response);
+    matcher.join();
+
+    verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has a match!");
+  }
+
+  @Test
+  public void foundMatchMadeOnAnotherInstanceWhileWaiting() throws Exception {
+    Participant participantA = getUnmatchedParticipantA();
+    // Matched on another instance after A's search is parked, so this instance's waiters never hear
+    // of it and only a datastore recheck sees it
+    ParticipantDatastore participantDatastore = mock(ParticipantDatastore.class);
+    when(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_A))
+        .thenReturn(
+            participantA,
+            new Participant(
+                participantA.getUsername(),
+                participantA.getStartTimeAvailable(),
+                participantA.getEndTimeAvailable(),
+                participantA.getDuration(),
+                participantA.getRole(),
+                participantA.getProductArea(),
+                participantA.getInterests(),
+                participantA.getMatchPreference(),
+                MATCH_ID_DEFAULT,
+                MATCH_STATUS_MATCHED,
+                participantA.getTimestamp()));
+    when(matchDatastore.getMatchFromId(MATCH_ID_DEFAULT))
+        .thenReturn(
+            new Match(USERNAME_PERSON_B, USERNAME_PERSON_A, DURATION_DEFAULT, TIMESTAMP_DEFAULT));
+    MatchWaiters matchWaiters = new MatchWaiters();
+
+    searchMatchHelper =
+        new SearchMatchHelper(
+            matchDatastore,
+            participantDatastore,
+            usernameService,
+            matchWaiters,
+            TimeUnit.MINUTES.toMillis(1),
+            /* recheckMillis= */ 10);
+    long startMillis = System.currentTimeMillis();
+    searchMatchHelper.doGet(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has a match!");
+    assertThat(System.currentTimeMillis() - startMillis).isLessThan(TimeUnit.SECONDS.toMillis(30));
+    assertThat(matchWaiters.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void parkedSearchReadsDatastoreOnceByDefault() throws IOException {
+    when(participantDatastore.getParticipantFromUsername(USERNAME_PERSON_A))
+        .thenReturn(getUnmatchedParticipantA());
+
+    searchMatchHelper =
+        new SearchMatchHelper(
+            matchDatastore,
+            participantDatastore,
+            usernameService,
+            new MatchWaiters(),
+            /* maxWaitMillis= */ 50);
+    searchMatchHelper.doGet(request, response);
+
+    verify(response).setStatus(HttpServletResponse.SC_OK, "Participant has no match yet");
+    verify(participantDatastore, times(1)).getParticipantFromUsername(USERNAME_PERSON_A);
+  }
 }
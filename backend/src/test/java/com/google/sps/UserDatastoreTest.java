@@ -96,8 +96,7 @@ public final class UserDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entity.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entity.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(UserDatastore.convertStringToList((String) entity.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entity.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entity.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -138,8 +137,7 @@ public final class UserDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entityA.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entityA.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(UserDatastore.convertStringToList((String) entityA.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entityA.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entityA.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -149,8 +147,7 @@ public final class UserDatastoreTest {
         .isEqualTo(DURATION_DEFAULT);
     assertThat((String) entityB.getProperty(PROPERTY_ROLE)).isEqualTo(ROLE_DEFAULT);
     assertThat((String) entityB.getProperty(PROPERTY_PRODUCT_AREA)).isEqualTo(PRODUCT_AREA_DEFAULT);
-    assertThat(UserDatastore.convertStringToList((String) entityB.getProperty(PROPERTY_INTERESTS)))
-        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(entityB.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
     assertThat(
             MatchPreference.forIntValue(
                 ((Long) entityB.getProperty(PROPERTY_MATCH_PREFERENCE)).intValue()))
@@ -184,4 +181,51 @@ public final class UserDatastoreTest {
 
     assertThat(userDatastore.getUserFromUsername(PERSON_A)).isNull();
   }
+
+  /** Return user entity saved before interests were a list property */
+  private static Entity getLegacyUserEntity(String username, String interests) {
+    Entity entity = new Entity(KIND_USER, username);
+    entity.setProperty(PROPERTY_USERNAME, username);
+    entity.setProperty(PROPERTY_DURATION, DURATION_DEFAULT);
+    entity.setProperty(PROPERTY_ROLE, ROLE_DEFAULT);
+    entity.setProperty(PROPERTY_PRODUCT_AREA, PRODUCT_AREA_DEFAULT);
+    entity.setProperty(PROPERTY_INTERESTS, interests);
+    entity.setProperty(PROPERTY_MATCH_PREFERENCE, MATCH_PREFERENCE_DEFAULT.getValue());
+    return entity;
+  }
+
+  @Test
+  public void getLegacyUser() {
+    // Users saved before interests were a list property still read as before
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    UserDatastore userDatastore = new UserDatastore(datastore);
+    datastore.put(getLegacyUserEntity(PERSON_A, "Books,Travel"));
+    datastore.put(getLegacyUserEntity(PERSON_B, ""));
+
+    assertThat(userDatastore.getUserFromUsername(PERSON_A).getInterests())
+        .isEqualTo(INTERESTS_DEFAULT);
+    assertThat(userDatastore.getUserFromUsername(PERSON_B).getInterests()).isEmpty();
+  }
+
+  @Test
+  public void migrateLegacyInterests() throws EntityNotFoundException {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    UserDatastore userDatastore = new UserDatastore(datastore);
+    datastore.put(getLegacyUserEntity(PERSON_A, "Books,Travel"));
+    userDatastore.addUser(
+        new User(
+            PERSON_B,
+            DURATION_DEFAULT,
+            ROLE_DEFAULT,
+            PRODUCT_AREA_DEFAULT,
+            INTERESTS_DEFAULT,
+            MATCH_PREFERENCE_DEFAULT));
+
+    int numMigrated = userDatastore.migrateLegacyInterests();
+
+    assertThat(numMigrated).isEqualTo(1);
+    Entity entity = datastore.get(KeyFactory.createKey(KIND_USER, PERSON_A));
+    assertThat(entity.getProperty(PROPERTY_INTERESTS)).isEqualTo(INTERESTS_DEFAULT);
+    assertThat(userDatastore.migrateLegacyInterests()).isEqualTo(0);
+  }
 }
@@ -0,0 +1,114 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.datastore.ParticipantDatastore;
+import com.google.sps.matching.MatchingPool;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class WarmupHelperTest {
+
+  private static final long TIME_NOW = 1_577_905_200_000L;
+  private static final String USERNAME_PERSON_A = "persona";
+
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private ParticipantDatastore participantDatastore;
+  private MatchingPool matchingPool;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(TIME_NOW), ZoneOffset.UTC);
+    participantDatastore = new ParticipantDatastore(DatastoreServiceFactory.getDatastoreService());
+    matchingPool = new MatchingPool(clock, MatchingPool.DEFAULT_MAX_STALENESS_MILLIS);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void warmupLoadsPool() throws IOException {
+    participantDatastore.addParticipant(
+        new Participant(
+            USERNAME_PERSON_A,
+            TIME_NOW,
+            TIME_NOW + TimeUnit.HOURS.toMillis(1),
+            /* duration= */ 30,
+            "Software engineer",
+            "Ads",
+            Arrays.asList("Books"),
+            MatchPreference.ANY,
+            /* matchId= */ 0,
+            MatchStatus.UNMATCHED,
+            TIME_NOW));
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    StringWriter stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    new WarmupHelper(matchingPool, participantDatastore, new GmailFactory())
+        .doGet(mock(HttpServletRequest.class), response);
+
+    assertThat(matchingPool.get(USERNAME_PERSON_A)).isNotNull();
+    assertThat(stringWriter.toString()).contains("1 participants pooled");
+  }
+
+  @Test
+  public void failedPoolLoadDoesNotFailWarmup() throws IOException {
+    ParticipantDatastore failingDatastore =
+        mock(
+            ParticipantDatastore.class,
+            invocation -> {
+              throw new DatastoreFailureException("Datastore unavailable");
+            });
+    HttpServletResponse response = mock(HttpServletResponse.class);
+    StringWriter stringWriter = new StringWriter();
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    new WarmupHelper(matchingPool, failingDatastore, new GmailFactory())
+        .doGet(mock(HttpServletRequest.class), response);
+
+    assertThat(stringWriter.toString()).contains("0 participants pooled");
+  }
+}
@@ -0,0 +1,177 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.MatchPreference;
+import com.google.sps.data.MatchStatus;
+import com.google.sps.data.Participant;
+import com.google.sps.matching.MatchScorer;
+import com.google.sps.matching.WeightedMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class WeightedMatcherTest {
+
+  // Some people that we can use in our tests
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+  private static final String PERSON_D = "Person D";
+
+  // Default parameters unused by the matcher
+  private static final long START_TIME_AVAILABLE_DEFAULT = 0;
+  private static final long END_TIME_AVAILABLE_DEFAULT = 1;
+  private static final int DURATION_DEFAULT = 30;
+  private static final List<String> INTERESTS_BLANK = new ArrayList<String>();
+  private static final long MATCH_ID_DEFAULT = 0;
+  private static final long TIMESTAMP_DEFAULT = 0;
+
+  /** Ticker that never advances, so the budget never runs out */
+  private static final Ticker STOPPED_TICKER =
+      new Ticker() {
+        @Override
+        public long read() {
+          return 0;
+        }
+      };
+
+  private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+  private static Participant getParticipant(String username) {
+    return new Participant(
+        username,
+        START_TIME_AVAILABLE_DEFAULT,
+        END_TIME_AVAILABLE_DEFAULT,
+        DURATION_DEFAULT,
+        /* role= */ "",
+        /* productArea= */ "",
+        INTERESTS_BLANK,
+        MatchPreference.ANY,
+        MATCH_ID_DEFAULT,
+        MatchStatus.UNMATCHED,
+        TIMESTAMP_DEFAULT);
+  }
+
+  /** @return predicate accepting only the given unordered pairs of usernames */
+  private static BiPredicate<Participant, Participant> compatiblePairs(Set<String> pairs) {
+    return (first, second) ->
+        pairs.contains(first.getUsername() + second.getUsername())
+            || pairs.contains(second.getUsername() + first.getUsername());
+  }
+
+  /** @return scorer giving the given unordered pairs of usernames a score, others 0 */
+  private static MatchScorer pairScores(Map<String, Double> scores) {
+    return (first, second) ->
+        scores.getOrDefault(
+            first.getUsername() + second.getUsername(),
+            scores.getOrDefault(second.getUsername() + first.getUsername(), 0.0));
+  }
+
+  @Test
+  public void augmentToPairEveryone() {
+    // Path A - B - C - D where B & C score highest. Greedy alone pairs only B & C
+    List<Participant> participants =
+        Arrays.asList(
+            getParticipant(PERSON_A),
+            getParticipant(PERSON_B),
+            getParticipant(PERSON_C),
+            getParticipant(PERSON_D));
+    WeightedMatcher matcher =
+        new WeightedMatcher(pairScores(ImmutableMap.of(PERSON_B + PERSON_C, 1.0)), STOPPED_TICKER);
+
+    int[] partners =
+        matcher.match(
+            participants,
+            compatiblePairs(
+                ImmutableSet.of(PERSON_A + PERSON_B, PERSON_B + PERSON_C, PERSON_C + PERSON_D)),
+            NO_DEADLINE);
+
+    assertThat(partners).asList().containsExactly(1, 0, 3, 2).inOrder();
+  }
+
+  @Test
+  public void swapToBetterPairs() {
+    // Everyone compatible. A & B and C & D score poorly, A & C and B & D score well
+    List<Participant> participants =
+        Arrays.asList(
+            getParticipant(PERSON_A),
+            getParticipant(PERSON_B),
+            getParticipant(PERSON_C),
+            getParticipant(PERSON_D));
+    WeightedMatcher matcher =
+        new WeightedMatcher(
+            pairScores(
+                ImmutableMap.of(
+                    PERSON_A + PERSON_B, 0.6,
+                    PERSON_A + PERSON_C, 0.5,
+                    PERSON_B + PERSON_D, 0.5)),
+            STOPPED_TICKER);
+
+    int[] partners = matcher.match(participants, (first, second) -> true, NO_DEADLINE);
+
+    assertThat(partners).asList().containsExactly(2, 3, 0, 1).inOrder();
+  }
+
+  @Test
+  public void stopAtDeadline() {
+    List<Participant> participants =
+        Arrays.asList(getParticipant(PERSON_A), getParticipant(PERSON_B));
+    WeightedMatcher matcher = new WeightedMatcher((first, second) -> 0, STOPPED_TICKER);
+
+    int[] partners = matcher.match(participants, (first, second) -> true, /* deadlineNanos= */ 0);
+
+    assertThat(partners)
+        .asList()
+        .containsExactly(WeightedMatcher.UNPAIRED, WeightedMatcher.UNPAIRED)
+        .inOrder();
+  }
+
+  @Test
+  public void pairLeftoversOutsideCandidateWindow() {
+    // Only A & D are compatible, but D is past A's scan window of one participant
+    List<Participant> participants =
+        Arrays.asList(
+            getParticipant(PERSON_A),
+            getParticipant(PERSON_B),
+            getParticipant(PERSON_C),
+            getParticipant(PERSON_D));
+    WeightedMatcher matcher =
+        new WeightedMatcher(
+            (first, second) -> 0,
+            STOPPED_TICKER,
+            /* maxCandidatesPerParticipant= */ 1,
+            /* maxScansPerParticipant= */ 1);
+
+    int[] partners =
+        matcher.match(
+            participants, compatiblePairs(ImmutableSet.of(PERSON_A + PERSON_D)), NO_DEADLINE);
+
+    assertThat(partners[0]).isEqualTo(3);
+    assertThat(partners[3]).isEqualTo(0);
+  }
+}
@@ -57,7 +57,10 @@ export async function fetchMatch() {
  */
 export default function App() {
   const classes = useStyles();
-  const matchDataRefreshRateMilliseconds = 30000;
+  // Server holds each search until a match made on its instance wakes it or it
+  // times out, so pausing between searches only delays seeing a match made on
+  // another instance, and keeps datastore reads down
+  const matchSearchRetryDelayMilliseconds = 5000;
   const defaultPageView = 'form';
   const pageViewKey = 'pageViewState';
 
@@ -74,28 +77,29 @@ export default function App() {
     localStorage.setItem(pageViewKey, currentPage);
   }, [pageViewKey, currentPage]);
 
-  /** Parse servlet response and update page view */
+  /**
+   * Parse servlet response and update page view, searching again while there
+   * is no match yet
+   */
   function parseServletResponseAndUpdateUI() {
     setCurrentPage('loading');
     fetchMatch().then((response) => {
       console.log(response);
       if (response === null) {
         setCurrentPage('error');
-        clearTimeout(timeoutInterval);
       } else if (response.matchStatus === 'true') {
         window.matchUserInfo = response.matchUsername;
         setCurrentPage('match');
-        clearTimeout(timeoutInterval);
       } else if (response.matchStatus === 'expired') {
         window.noMatchDuration = response.duration;
         const endTimeAvailableDate = new Date(response.endTimeAvailable);
         window.noMatchEndTimeAvailable = endTimeAvailableDate.toString();
         setCurrentPage('no-match');
-        clearTimeout(timeoutInterval);
+      } else {
+        setTimeout(parseServletResponseAndUpdateUI,
+            matchSearchRetryDelayMilliseconds);
       }
     });
-    const timeoutInterval = setTimeout(parseServletResponseAndUpdateUI,
-        matchDataRefreshRateMilliseconds);
   }
 
   /** Redirect exit queue request from loading view to exit-queue view */